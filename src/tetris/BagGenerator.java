@@ -0,0 +1,71 @@
+// BagGenerator.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ The "7-bag" generator -- deals every piece exactly once in a
+ shuffled bag, then starts a new bag. Long droughts of one piece
+ cannot happen.
+*/
+public class BagGenerator implements PieceGenerator {
+	private int[] bag;
+	private int remaining;	// pieces still to deal from the current bag
+	private FastRandom random;
+
+	/**
+	 Creates a generator whose bags hold each of pieceCount pieces
+	 once, seeded for a reproducible sequence.
+	*/
+	public BagGenerator(int pieceCount, long seed) {
+		this(pieceCount, new FastRandom(seed));
+	}
+	
+	private BagGenerator(int pieceCount, FastRandom random) {
+		this.random = random;
+		bag = new int[pieceCount];
+		for (int i = 0; i < pieceCount; i++) {
+			bag[i] = i;
+		}
+		remaining = 0;
+	}
+	
+	/**
+	 Deals the next piece, drawing it at random from the pieces left in
+	 the bag -- a shuffle done lazily, one draw at a time.
+	*/
+	public int next() {
+		if (remaining == 0) remaining = bag.length;
+		int i = random.nextInt(remaining);
+		int piece = bag[i];
+		remaining--;
+		bag[i] = bag[remaining];
+		bag[remaining] = piece;
+		return piece;
+	}
+	
+	public void fill(int[] queue, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			queue[i] = next();
+		}
+	}
+	
+	/**
+	 The next piece is one of those left in the bag, or any piece
+	 if a new bag is about to start.
+	*/
+	public void getOdds(double[] odds) {
+		if (remaining == 0) {
+			Arrays.fill(odds, 0, bag.length, 1.0 / bag.length);
+		} else {
+			Arrays.fill(odds, 0, bag.length, 0.0);
+			for (int i = 0; i < remaining; i++) {
+				odds[bag[i]] = 1.0 / remaining;
+			}
+		}
+	}
+	
+	public PieceGenerator split() {
+		return new BagGenerator(bag.length, random.split());
+	}
+}
@@ -0,0 +1,23 @@
+// BatchBrain.java -- the interface for brains that answer many boards at once
+
+package tetris;
+
+public interface BatchBrain extends Brain {
+    /**
+     Finds the best move for each boards[i] and pieces[i], for i in
+     from..to-1, and stores it in moves[i], which must already exist.
+     moves[i].piece is set to null if no play is possible.
+     Each answer is the same as bestMove(boards[i], pieces[i], limitHeight, moves[i])
+     would give; the batch just saves the per-call overhead.
+     The boards should be in the committed state when this is called.
+    */
+    public void bestMoves(Board[] boards, Piece[] pieces, int from, int to,
+            int limitHeight, Brain.Move[] moves);
+    
+    /**
+     Returns true if bestMove() and bestMoves() may be called from several
+     threads at once. Only such brains can be shared by BatchRunner's
+     tasks; a brain that keeps its search state in fields returns false.
+    */
+    public boolean isThreadSafe();
+}
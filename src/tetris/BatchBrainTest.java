@@ -0,0 +1,148 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+
+/*
+ Unit test for the BatchBrain bestMoves() API and BatchRunner.
+ */
+public class BatchBrainTest {
+	private static final int COUNT = 300;
+	
+	private Board[] boards;
+	private Piece[] pieces;
+	private ExecutorService executor;
+	
+	// Snapshots of a game in progress, each with a random piece to play.
+	@Before
+	public void setUp() {
+		boards = TetrisGame.samplePositions(COUNT, 3);
+		pieces = new Piece[COUNT];
+		Piece[] all = Piece.getPieces();
+		FastRandom random = new FastRandom(3);
+		for (int i = 0; i < COUNT; i++) {
+			pieces[i] = all[random.nextInt(all.length)];
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		if (executor != null) executor.shutdownNow();
+	}
+	
+	private Brain.Move[] newMoves() {
+		Brain.Move[] moves = new Brain.Move[COUNT];
+		for (int i = 0; i < COUNT; i++) moves[i] = new Brain.Move();
+		return moves;
+	}
+	
+	// Checks the batch answers against one bestMove() call per board.
+	private void assertSameAsSingle(Brain brain, Brain.Move[] moves, int limitHeight) {
+		for (int i = 0; i < COUNT; i++) {
+			Brain.Move single = brain.bestMove(boards[i], pieces[i], limitHeight, null);
+			if (single == null) {
+				assertNull(moves[i].piece);
+			} else {
+				assertSame(single.piece, moves[i].piece);
+				assertEquals(single.x, moves[i].x);
+				assertEquals(single.y, moves[i].y);
+				assertEquals(single.score, moves[i].score, 0);
+			}
+		}
+	}
+	
+	// A batch gives exactly the single-call answers, and leaves the boards alone.
+	@Test
+	public void testMatchesBestMove() {
+		String before = boards[COUNT-1].toString();
+		DefaultBrain brain = new DefaultBrain();
+		Brain.Move[] moves = newMoves();
+		brain.bestMoves(boards, pieces, 0, COUNT, TetrisGame.HEIGHT, moves);
+		assertSameAsSingle(brain, moves, TetrisGame.HEIGHT);
+		assertEquals(before, boards[COUNT-1].toString());
+	}
+	
+	// A low limit height leaves some boards with no play at all.
+	@Test
+	public void testNoPlay() {
+		WeightedBrain brain = new WeightedBrain();
+		Brain.Move[] moves = newMoves();
+		brain.bestMoves(boards, pieces, 0, COUNT, 6, moves);
+		assertSameAsSingle(brain, moves, 6);
+		int none = 0;
+		for (Brain.Move move: moves) {
+			if (move.piece == null) none++;
+		}
+		assertTrue(none > 0);
+	}
+	
+	// Once warmed up on a thread, a batch allocates nothing. Needs a JVM
+	// that counts allocated bytes per thread, as HotSpot does.
+	@Test
+	public void testAllocatesNothing() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+		long thread = Thread.currentThread().getId();
+
+		assertFalse("sanityCheck() allocates", Board.DEBUG);
+		DefaultBrain brain = new DefaultBrain();
+		Brain.Move[] moves = newMoves();
+		for (int i = 0; i < 20; i++) {
+			brain.bestMoves(boards, pieces, 0, COUNT, TetrisGame.HEIGHT, moves);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 20; i++) {
+			brain.bestMoves(boards, pieces, 0, COUNT, TetrisGame.HEIGHT, moves);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+	}
+	
+	// Only the from..to range is touched.
+	@Test
+	public void testRange() {
+		Brain.Move[] moves = newMoves();
+		new DefaultBrain().bestMoves(boards, pieces, 10, 20, TetrisGame.HEIGHT, moves);
+		assertNull(moves[9].piece);
+		assertNotNull(moves[10].piece);
+		assertNotNull(moves[19].piece);
+		assertNull(moves[20].piece);
+	}
+	
+	// Split across threads, the answers are the same.
+	@Test
+	public void testRunner() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+		DefaultBrain brain = new DefaultBrain();
+		Brain.Move[] moves = newMoves();
+		new BatchRunner(brain, executor, 4).bestMoves(boards, pieces, COUNT, TetrisGame.HEIGHT, moves);
+		assertSameAsSingle(brain, moves, TetrisGame.HEIGHT);
+	}
+	
+	// A brain with per-call state in fields is not shared across threads.
+	@Test(expected = IllegalArgumentException.class)
+	public void testRunnerNotThreadSafe() {
+		executor = Executors.newFixedThreadPool(4);
+		new BatchRunner(new BeamSearchBrain(), executor, 4);
+	}
+	
+	// A searching brain falls back to one bestMove() per board.
+	@Test
+	public void testOneByOne() {
+		ExpectimaxBrain brain = new ExpectimaxBrain(null, Long.MAX_VALUE / 4, 1);
+		Brain.Move[] moves = newMoves();
+		brain.bestMoves(boards, pieces, 0, 50, TetrisGame.HEIGHT, moves);
+		for (int i = 0; i < 50; i++) {
+			Brain.Move single = brain.bestMove(boards[i], pieces[i], TetrisGame.HEIGHT, null);
+			assertSame(single.piece, moves[i].piece);
+			assertEquals(single.x, moves[i].x);
+		}
+	}
+}
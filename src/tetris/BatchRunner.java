@@ -0,0 +1,83 @@
+// BatchRunner.java
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ Spreads a batch of bestMoves() work across threads by splitting it into
+ contiguous chunks, one per task. The brain is shared by the tasks, so it
+ must be safe to call from several threads at once, as DefaultBrain and
+ its rateBoard() subclasses are; see BatchBrain.isThreadSafe().
+*/
+public class BatchRunner {
+	// smallest chunk worth a task of its own
+	private static final int MIN_CHUNK = 16;
+	
+	private BatchBrain brain;
+	private ExecutorService executor;
+	private int chunks;
+
+	/**
+	 Creates a runner that splits each batch into at most the given
+	 number of chunks, run on the executor. Throws IllegalArgumentException
+	 if the brain is not thread-safe.
+	*/
+	public BatchRunner(BatchBrain brain, ExecutorService executor, int chunks) {
+		if (!brain.isThreadSafe()) {
+			throw new IllegalArgumentException(brain.getClass().getSimpleName() + " is not thread-safe");
+		}
+		this.brain = brain;
+		this.executor = executor;
+		this.chunks = chunks;
+	}
+
+	/**
+	 Finds the best moves for boards[0..count-1] in parallel, filling moves.
+	 See BatchBrain.bestMoves() for details. Returns when all are done.
+	*/
+	public void bestMoves(final Board[] boards, final Piece[] pieces, int count,
+			final int limitHeight, final Brain.Move[] moves) throws InterruptedException {
+		int chunkSize = Math.max(MIN_CHUNK, (count + chunks - 1) / chunks);
+		if (chunkSize >= count) {
+			brain.bestMoves(boards, pieces, 0, count, limitHeight, moves);
+			return;
+		}
+		
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int start = 0; start < count; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(count, start + chunkSize);
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() {
+					brain.bestMoves(boards, pieces, from, to, limitHeight, moves);
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> result: results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("batch failed", e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 Answers a batch one board at a time with bestMove(). For brains
+	 that search in their own way and have no faster batch path.
+	*/
+	public static void oneByOne(Brain brain, Board[] boards, Piece[] pieces, int from, int to,
+			int limitHeight, Brain.Move[] moves) {
+		for (int i = from; i < to; i++) {
+			if (brain.bestMove(boards[i], pieces[i], limitHeight, moves[i]) == null) {
+				moves[i].piece = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,244 @@
+// BeamSearchBrain.java
+package tetris;
+
+/**
+ A brain that plans several pieces ahead through the preview queue with
+ a beam search. At each ply it tries every play of that ply's piece on
+ each of the boards kept from the previous ply, and keeps only the
+ beamWidth best results by rateBoard(). The move returned is the first
+ move on the way to the best board at the last ply.
+ 
+ <p>Kept boards are stored as bit rows in two preallocated pools (this
+ ply and the next), so memory is fixed by the beam width and does not
+ grow with depth, and the search allocates nothing. Only boards that
+ make the beam are built; the rest are scored with place/undo on one
+ scratch board. Boards must be at most 64 wide. The pools belong to
+ the instance, so it is not thread-safe.
+*/
+public class BeamSearchBrain extends SearchBrain implements LookaheadBrain {
+	public static final int DEFAULT_BEAM_WIDTH = 16;
+	public static final int DEFAULT_DEPTH = 3;
+	
+	private int beamWidth;
+	private int depth;
+	
+	// preview set by the game for the next bestMove()
+	private Piece[] preview;
+	private int previewCount;
+	
+	// The pools of kept boards: slot i uses rows [i*height, (i+1)*height)
+	private int poolHeight;
+	private long[] pool;
+	private long[] nextPool;
+	private int[] poolRows;		// rows in use per slot
+	private int[] nextPoolRows;
+	private int[] rootOf;		// which first move each slot came from
+	private int[] nextRootOf;
+	private Board scratch;
+	
+	// The best few plays found in the current ply, best first
+	private int found;
+	private int[] candParent;
+	private int[] candX;
+	private int[] candY;
+	private Piece[] candPiece;
+	private double[] candScore;
+	
+	// The first moves, one per slot of the first ply
+	private int[] rootX;
+	private int[] rootY;
+	private Piece[] rootPiece;
+	
+	private long lastNodes;
+	private long lastNanos;
+
+	/**
+	 Creates a brain with the default beam width and depth.
+	*/
+	public BeamSearchBrain() {
+		this(DEFAULT_BEAM_WIDTH, DEFAULT_DEPTH);
+	}
+	
+	/**
+	 Creates a brain keeping beamWidth boards per ply, and looking at most
+	 depth pieces ahead (the current piece plus depth-1 from the preview).
+	*/
+	public BeamSearchBrain(int beamWidth, int depth) {
+		if (beamWidth < 1 || depth < 1) {
+			throw new IllegalArgumentException("beam width and depth must be positive");
+		}
+		this.beamWidth = beamWidth;
+		this.depth = depth;
+		
+		poolRows = new int[beamWidth];
+		nextPoolRows = new int[beamWidth];
+		rootOf = new int[beamWidth];
+		nextRootOf = new int[beamWidth];
+		
+		candParent = new int[beamWidth];
+		candX = new int[beamWidth];
+		candY = new int[beamWidth];
+		candPiece = new Piece[beamWidth];
+		candScore = new double[beamWidth];
+		
+		rootX = new int[beamWidth];
+		rootY = new int[beamWidth];
+		rootPiece = new Piece[beamWidth];
+	}
+	
+	public void setPreview(Piece[] preview, int count) {
+		this.preview = preview;
+		this.previewCount = count;
+	}
+	
+	/**
+	 Returns the number of plays scored in the last bestMove().
+	*/
+	public long getLastNodes() {
+		return lastNodes;
+	}
+	
+	/**
+	 Returns the plays scored per second in the last bestMove().
+	*/
+	public double getNodesPerSecond() {
+		return (lastNanos == 0) ? 0 : lastNodes * 1e9 / lastNanos;
+	}
+	
+	/**
+	 Returns the best first move for the piece, planning through the preview.
+	 See the Brain interface for details.
+	*/
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		long start = System.nanoTime();
+		lastNodes = 0;
+		if (move == null) move = new Brain.Move();
+		ensureCapacity(board);
+		
+		board.commit();
+		int plies = Math.min(depth, 1 + ((preview == null) ? 0 : previewCount));
+		
+		// the first ply starts from the board itself
+		int slots = 1;
+		poolRows[0] = board.getBitRows(pool, 0);
+		rootOf[0] = 0;
+		
+		for (int ply = 0; ply < plies; ply++) {
+			Piece current = (ply == 0) ? piece : preview[ply-1];
+			found = 0;
+			for (int slot = 0; slot < slots; slot++) {
+				scratch.setBitRows(pool, slot * poolHeight, poolRows[slot]);
+				expand(scratch, slot, current, limitHeight);
+			}
+			if (found == 0) {
+				if (ply == 0) slots = 0;	// no play at all
+				break;	// otherwise go with the boards of the last ply
+			}
+			
+			// build the boards that made the beam
+			for (int i = 0; i < found; i++) {
+				int parent = candParent[i];
+				scratch.setBitRows(pool, parent * poolHeight, poolRows[parent]);
+				scratch.place(candPiece[i], candX[i], candY[i]);
+				scratch.clearRows();
+				scratch.commit();
+				nextPoolRows[i] = scratch.getBitRows(nextPool, i * poolHeight);
+				if (ply == 0) {
+					rootX[i] = candX[i];
+					rootY[i] = candY[i];
+					rootPiece[i] = candPiece[i];
+					nextRootOf[i] = i;
+				} else {
+					nextRootOf[i] = rootOf[parent];
+				}
+			}
+			swapPools();
+			slots = found;
+			move.score = candScore[0];
+		}
+		preview = null;
+		lastNanos = System.nanoTime() - start;
+		
+		if (slots == 0) return null;
+		int root = rootOf[0];	// slot 0 holds the best board of the last ply
+		move.x = rootX[root];
+		move.y = rootY[root];
+		move.piece = rootPiece[root];
+		return move;
+	}
+	
+	/**
+	 * Scores every play of the piece on the board like DefaultBrain does,
+	 * adding the good ones to the sorted candidate list.
+	 * @param board the scratch board, holding the parent slot
+	 * @param parent the slot the board came from
+	 */
+	private void expand(Board board, int parent, Piece piece, int limitHeight) {
+		Piece current = piece;
+		final int[] landing = landingScratch(board.getWidth());
+		while (true) {
+			final int yBound = limitHeight - current.getHeight()+1;
+			final int xBound = board.dropHeights(current, landing);
+			
+			for (int x = 0; x<xBound; x++) {
+				int y = landing[x];
+				if (y<yBound) {
+					int result = board.place(current, x, y);
+					if (result <= Board.PLACE_ROW_FILLED) {
+						if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+						lastNodes++;
+						addCandidate(parent, x, y, current, rateBoard(board));
+					}
+					board.undo();
+				}
+			}
+			
+			current = current.fastRotation();
+			if (current == piece) break;
+		}
+	}
+	
+	// insertion into the sorted top-beamWidth candidate list
+	private void addCandidate(int parent, int x, int y, Piece piece, double score) {
+		if (found == beamWidth && score >= candScore[found-1]) return;
+		int i = (found < beamWidth) ? found++ : found-1;
+		while (i > 0 && candScore[i-1] > score) {
+			candParent[i] = candParent[i-1];
+			candX[i] = candX[i-1];
+			candY[i] = candY[i-1];
+			candPiece[i] = candPiece[i-1];
+			candScore[i] = candScore[i-1];
+			i--;
+		}
+		candParent[i] = parent;
+		candX[i] = x;
+		candY[i] = y;
+		candPiece[i] = piece;
+		candScore[i] = score;
+	}
+	
+	private void swapPools() {
+		long[] rows = pool;
+		pool = nextPool;
+		nextPool = rows;
+		int[] counts = poolRows;
+		poolRows = nextPoolRows;
+		nextPoolRows = counts;
+		int[] roots = rootOf;
+		rootOf = nextRootOf;
+		nextRootOf = roots;
+	}
+	
+	/**
+	 * Sizes the pools and scratch board for the board, reusing them when
+	 * the board size has not changed.
+	 */
+	private void ensureCapacity(Board board) {
+		if (scratch == null || scratch.getWidth() != board.getWidth() || scratch.getHeight() != board.getHeight()) {
+			scratch = new Board(board.getWidth(), board.getHeight());
+			poolHeight = board.getHeight();
+			pool = new long[beamWidth * poolHeight];
+			nextPool = new long[beamWidth * poolHeight];
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for BeamSearchBrain and the bit row export it uses.
+ */
+public class BeamSearchBrainTest {
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() throws Exception {
+		pieces = Piece.getPieces();
+	}
+	
+	// Bit rows round trip through a second board.
+	@Test
+	public void testBitRows() {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 8));
+		game.play(40);
+		Board board = game.getBoard();
+		long[] rows = new long[board.getHeight() + 2];
+		int count = board.getBitRows(rows, 2);
+		assertEquals(board.getMaxHeight(), count);
+		
+		Board copy = new Board(board.getWidth(), board.getHeight());
+		copy.place(pieces[Piece.STICK], 9, 0);
+		copy.commit();
+		copy.setBitRows(rows, 2, count);
+		assertEquals(board.toString(), copy.toString());
+		for (int x = 0; x < board.getWidth(); x++) {
+			assertEquals(board.getColumnHeight(x), copy.getColumnHeight(x));
+		}
+		for (int y = 0; y < board.getHeight(); y++) {
+			assertEquals(board.getRowWidth(y), copy.getRowWidth(y));
+		}
+	}
+	
+	// With no preview, a beam of one plays exactly like DefaultBrain.
+	@Test
+	public void testNoPreviewMatchesDefault() {
+		TetrisGame a = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 6));
+		TetrisGame b = new TetrisGame(new BeamSearchBrain(1, 3), new UniformGenerator(7, 6));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(a.step(), b.step());
+			assertEquals(a.getBoard().toString(), b.getBoard().toString());
+		}
+	}
+	
+	// The board passed in is left as it was.
+	@Test
+	public void testBoardUnchanged() {
+		Board board = new Board(10, 24);
+		board.place(pieces[Piece.L2], 3, 0);
+		board.commit();
+		String before = board.toString();
+		
+		BeamSearchBrain brain = new BeamSearchBrain(8, 4);
+		brain.setPreview(new Piece[] {pieces[Piece.S1], pieces[Piece.STICK], pieces[Piece.SQUARE]}, 3);
+		Brain.Move move = brain.bestMove(board, pieces[Piece.PYRAMID], 24, null);
+		assertNotNull(move);
+		assertEquals(before, board.toString());
+		assertTrue(brain.getLastNodes() > 8 * 3);
+		assertTrue(board.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+	}
+	
+	// A beam with a preview plays a long game.
+	@Test
+	public void testPlaysWithPreview() {
+		TetrisGame game = new TetrisGame(new BeamSearchBrain(8, 3), new UniformGenerator(7, 11));
+		game.setPreviewLength(2);
+		game.play(300);
+		assertEquals(300, game.getCount());
+		assertTrue(game.isGameOn());
+	}
+}
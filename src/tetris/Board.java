@@ -3,8 +3,6 @@ package tetris;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Stack;
 import java.util.List;
 
 /**
@@ -23,15 +21,34 @@ public class Board	{
 	private int[] widths;
 	private int[] heights;
 	private int maxHeight;
-	private boolean DEBUG = true;
+	static boolean DEBUG = false;	// full sanityCheck() after every change -- slow
 	boolean committed;
 	boolean firstState = true;
+	private long version;
+	private long versionCount;
 	
 	// backup ivars
 	private boolean[][] xGrid;
 	private int[] xWidths;
 	private int[] xHeights;
 	private int xMaxHeight;
+	private long xVersion;
+	
+	// scratch list of the full rows found by clearRows(), bottom to top
+	private int[] rowsToClear;
+	
+	// savepoint stack, see savepoint(); frames are kept for reuse after release
+	private List<SavedState> savepoints = new ArrayList<SavedState>();
+	private int savepointCount;
+	
+	// One saved copy of the board state
+	private static class SavedState {
+		boolean[][] grid;
+		int[] widths;
+		int[] heights;
+		int maxHeight;
+		long version;
+	}
 	
 	
 	
@@ -54,9 +71,69 @@ public class Board	{
 		xWidths = new int[height];
 		xHeights = new int[width];
 		xMaxHeight = 0;
+		
+		rowsToClear = new int[height];
 	}
-	
-	
+
+
+	/**
+	 Creates a copy of the given board's current grid, widths and heights.
+	 The copy starts out in the committed state, so it is safe to hand
+	 to a brain running on another thread while the original keeps changing.
+	*/
+	public Board(Board other) {
+		this(other.width, other.height);
+		copyFrom(other);
+	}
+
+
+	/**
+	 Makes this board a copy of the other one, which must be the same size,
+	 reusing this board's arrays. Only rows below the two boards' max heights
+	 are touched, so this is much cheaper than building a new board.
+	 The copy is left committed, with nothing to undo.
+	*/
+	public void copyFrom(Board other) {
+		if (other.width != width || other.height != height) {
+			throw new RuntimeException("copyFrom needs boards of the same size");
+		}
+		for (int col = 0; col < width; col++) {
+			System.arraycopy(other.grid[col], 0, grid[col], 0, other.maxHeight);
+			clearColumn(grid[col], other.maxHeight, maxHeight);
+		}
+		System.arraycopy(other.widths, 0, widths, 0, other.maxHeight);
+		if (maxHeight > other.maxHeight) {
+			Arrays.fill(widths, other.maxHeight, maxHeight, 0);
+		}
+		System.arraycopy(other.heights, 0, heights, 0, width);
+		maxHeight = other.maxHeight;
+		committed = true;
+		firstState = true;
+		version = ++versionCount;
+	}
+
+
+	/**
+	 Empties the board in place, e.g. to start a new game on it.
+	 Only rows below the max height are cleared, so this costs about as
+	 much as one undo(). The board is left committed, with nothing to
+	 undo and no savepoints.
+	*/
+	public void reset() {
+		for (int col = 0; col < width; col++) {
+			clearColumn(grid[col], 0, maxHeight);
+		}
+		Arrays.fill(widths, 0, maxHeight, 0);
+		Arrays.fill(heights, 0);
+		maxHeight = 0;
+		savepointCount = 0;
+		committed = true;
+		firstState = true;
+		version = ++versionCount;
+		sanityCheck();
+	}
+
+
 	/**
 	 Returns the width of the board in blocks.
 	*/
@@ -82,6 +159,17 @@ public class Board	{
 	}
 	
 	
+	/**
+	 Returns a number identifying the current grid contents.
+	 Every place() and clearRows() moves the board to a new version,
+	 and undo() goes back to the version it restores, so clients
+	 can cache results computed for a given board state.
+	*/
+	public long getVersion() {
+		return version;
+	}
+	
+	
 	/**
 	 Checks the board for internal consistency -- used
 	 for debugging.
@@ -133,6 +221,77 @@ public class Board	{
 	}
 	
 	
+	/**
+	 Computes dropHeight(piece, x) for every x the piece fits at, 0 to
+	 getWidth()-piece.getWidth(), into ys[0..]. Returns how many that is.
+	 Cheaper than calling dropHeight() per column: the skirt is read once,
+	 and each column height is read once as the piece slides across.
+	*/
+	public int dropHeights(Piece piece, int[] ys) {
+		return dropHeights(piece, ys, 0);
+	}
+	
+	/**
+	 Like dropHeights(piece, ys), but stores the heights from ys[offset].
+	*/
+	public int dropHeights(Piece piece, int[] ys, int offset) {
+		final int[] skirt = piece.getSkirt();
+		final int count = width - skirt.length + 1;
+		if (count <= 0) return 0;
+		
+		// Slide a window over the heights, keeping the columns under the
+		// piece in locals: ys[x] = max over i of heights[x+i] - skirt[i].
+		// The standard pieces are 1 to 4 wide; wider ones take the slow way.
+		switch (skirt.length) {
+		case 1: {
+			final int s0 = skirt[0];
+			for (int x = 0; x < count; x++) {
+				ys[offset+x] = Math.max(0, heights[x] - s0);
+			}
+			break;
+		}
+		case 2: {
+			final int s0 = skirt[0], s1 = skirt[1];
+			int h0 = heights[0];
+			for (int x = 0; x < count; x++) {
+				int h1 = heights[x+1];
+				ys[offset+x] = Math.max(0, Math.max(h0 - s0, h1 - s1));
+				h0 = h1;
+			}
+			break;
+		}
+		case 3: {
+			final int s0 = skirt[0], s1 = skirt[1], s2 = skirt[2];
+			int h0 = heights[0], h1 = heights[1];
+			for (int x = 0; x < count; x++) {
+				int h2 = heights[x+2];
+				ys[offset+x] = Math.max(0, Math.max(Math.max(h0 - s0, h1 - s1), h2 - s2));
+				h0 = h1;
+				h1 = h2;
+			}
+			break;
+		}
+		case 4: {
+			final int s0 = skirt[0], s1 = skirt[1], s2 = skirt[2], s3 = skirt[3];
+			int h0 = heights[0], h1 = heights[1], h2 = heights[2];
+			for (int x = 0; x < count; x++) {
+				int h3 = heights[x+3];
+				ys[offset+x] = Math.max(0, Math.max(Math.max(h0 - s0, h1 - s1), Math.max(h2 - s2, h3 - s3)));
+				h0 = h1;
+				h1 = h2;
+				h2 = h3;
+			}
+			break;
+		}
+		default:
+			for (int x = 0; x < count; x++) {
+				ys[offset+x] = dropHeight(piece, x);
+			}
+		}
+		return count;
+	}
+	
+	
 	/**
 	 Returns the height of the given column --
 	 i.e. the y value of the highest block + 1.
@@ -190,6 +349,7 @@ public class Board	{
 		if (!committed) throw new RuntimeException("place commit problem");
 			
 		backupIvars();
+		version = ++versionCount;
 		int result = PLACE_OK;
 		for (TPoint point: piece.getBody()) {
 			int currX = x + point.x;
@@ -224,6 +384,7 @@ public class Board	{
 		if (committed) {
 			backupIvars();
 		}
+		version = ++versionCount;
 		
 		//first checks for empty array.
 		if (grid.length < 1) {
@@ -231,10 +392,11 @@ public class Board	{
 		}
 		
 		// non-empty array
-		Stack<Integer> rowsToClear = new Stack<Integer>();
-		int rowsCleared = determineRowsToClear(rowsToClear);
-		shiftClearedRows(rowsToClear);
-		findNewHeights();
+		int rowsCleared = determineRowsToClear();
+		if (rowsCleared > 0) {
+			shiftClearedRows(rowsCleared);
+			findNewHeights();
+		}
 		committed = false;
 		
 		sanityCheck();
@@ -252,12 +414,18 @@ public class Board	{
 		if (firstState || committed){
 			return;
 		}
+		// only rows below the larger of the two max heights can differ
 		for (int col = 0; col < width; col++) {
-			System.arraycopy(xGrid[col], 0, grid[col], 0, xGrid[col].length);
+			System.arraycopy(xGrid[col], 0, grid[col], 0, xMaxHeight);
+			clearColumn(grid[col], xMaxHeight, maxHeight);
 		}
 		System.arraycopy(xHeights, 0, heights, 0, xHeights.length);
-		System.arraycopy(xWidths, 0, widths, 0, xWidths.length);
+		System.arraycopy(xWidths, 0, widths, 0, xMaxHeight);
+		if (maxHeight > xMaxHeight) {
+			Arrays.fill(widths, xMaxHeight, maxHeight, 0);
+		}
 		maxHeight = xMaxHeight;
+		version = xVersion;
 		sanityCheck();
 		committed = true;
 	}
@@ -268,7 +436,118 @@ public class Board	{
 	public void commit() {
 		committed = true;
 	}
+	
+	/**
+	 Saves the committed board state, so that rollback() can return to it
+	 after any number of place(), clearRows() and commit() calls.
+	 Savepoints nest: rollback() and releaseSavepoint() act on the most
+	 recent one. This lets a brain search several pieces deep on one
+	 board, where undo() only goes back one move.
+	*/
+	public void savepoint() {
+		if (!committed) throw new RuntimeException("savepoint commit problem");
+		if (savepointCount == savepoints.size()) {
+			SavedState state = new SavedState();
+			state.grid = new boolean[width][height];
+			state.widths = new int[height];
+			state.heights = new int[width];
+			savepoints.add(state);
+		}
+		SavedState state = savepoints.get(savepointCount);
+		savepointCount++;
+		
+		for (int col = 0; col < width; col++) {
+			System.arraycopy(grid[col], 0, state.grid[col], 0, maxHeight);
+		}
+		System.arraycopy(widths, 0, state.widths, 0, maxHeight);
+		System.arraycopy(heights, 0, state.heights, 0, width);
+		state.maxHeight = maxHeight;
+		state.version = version;
+	}
+	
+	/**
+	 Restores the board to the most recent savepoint, in the committed
+	 state. The savepoint is kept, so it can be rolled back to again.
+	*/
+	public void rollback() {
+		if (savepointCount == 0) throw new RuntimeException("rollback without savepoint");
+		SavedState state = savepoints.get(savepointCount-1);
+		
+		for (int col = 0; col < width; col++) {
+			System.arraycopy(state.grid[col], 0, grid[col], 0, state.maxHeight);
+			clearColumn(grid[col], state.maxHeight, maxHeight);
+		}
+		System.arraycopy(state.widths, 0, widths, 0, state.maxHeight);
+		if (maxHeight > state.maxHeight) {
+			Arrays.fill(widths, state.maxHeight, maxHeight, 0);
+		}
+		System.arraycopy(state.heights, 0, heights, 0, width);
+		maxHeight = state.maxHeight;
+		version = state.version;
+		committed = true;
+		sanityCheck();
+	}
+	
+	/**
+	 Discards the most recent savepoint, leaving the board as it is.
+	*/
+	public void releaseSavepoint() {
+		if (savepointCount == 0) throw new RuntimeException("release without savepoint");
+		savepointCount--;
+	}
 
+	/**
+	 Stores the board's rows as bit masks, bit x of rows[offset+y] set if
+	 block (x, y) is filled, for rows 0..getMaxHeight()-1. Returns the
+	 number of rows written, i.e. getMaxHeight(). Only works for boards
+	 up to 64 wide.
+	*/
+	public int getBitRows(long[] rows, int offset) {
+		checkBitRowWidth();
+		for (int row = 0; row < maxHeight; row++) {
+			long bits = 0;
+			for (int col = 0; col < width; col++) {
+				if (grid[col][row]) bits |= 1L << col;
+			}
+			rows[offset+row] = bits;
+		}
+		return maxHeight;
+	}
+	
+	/**
+	 Replaces the board contents with the given bit rows, as written by
+	 getBitRows(); rows above rowCount are empty. Leaves the board in
+	 the committed state, with nothing to undo.
+	*/
+	public void setBitRows(long[] rows, int offset, int rowCount) {
+		checkBitRowWidth();
+		if (rowCount > height) throw new RuntimeException("too many rows for board");
+		for (int col = 0; col < width; col++) {
+			clearColumn(grid[col], 0, maxHeight);
+		}
+		Arrays.fill(widths, 0, maxHeight, 0);
+		Arrays.fill(heights, 0);
+		maxHeight = 0;
+		
+		for (int row = 0; row < rowCount; row++) {
+			long bits = rows[offset+row];
+			if ((bits >>> width) != 0 && width < 64) {
+				throw new RuntimeException("bits set outside board at row " + row);
+			}
+			widths[row] = Long.bitCount(bits);
+			while (bits != 0) {
+				int col = Long.numberOfTrailingZeros(bits);
+				grid[col][row] = true;
+				heights[col] = row+1;
+				bits &= bits - 1;
+			}
+			if (widths[row] > 0) maxHeight = row+1;
+		}
+		committed = true;
+		version = ++versionCount;
+		sanityCheck();
+	}
+	
 	/*
 	 Renders the board state as a big String, suitable for printing.
 	 This is the sort of print-obj-state utility that can help see complex
@@ -290,64 +569,71 @@ public class Board	{
 	}
 
 	/**
-	 * Iterates through the grid and finds which rows are completely filled
-	 * @param rowsToClear Stack containing the rows that are all true and should be cleared
-	 * @return the number of rows that are all true and targeted to be cleared
+	 * Finds which rows are completely filled, using the row widths rather than
+	 * the grid, and only looking below maxHeight.
+	 * Fills rowsToClear with the full rows, bottom to top.
+	 * @return the number of rows that are full and targeted to be cleared
 	 */
-	private int determineRowsToClear(Stack<Integer> rowsToClear) {
+	private int determineRowsToClear() {
 		int rowsCleared = 0;
-		for (int row = 0; row < grid[0].length; row++) {
-			for (int col = 0; col < grid.length; col++) {
-				if (!grid[col][row]) {
-					break;
-				}	
-				else if (col == grid.length-1) {
-					rowsToClear.push(row);
-					rowsCleared += 1;
-				}
+		for (int row = 0; row < maxHeight; row++) {
+			if (isRowFull(row)) {
+				rowsToClear[rowsCleared] = row;
+				rowsCleared += 1;
 			}
 		}
 		return rowsCleared;
 	}
 	
+	private boolean isRowFull(int row) {
+		return widths[row] == width;
+	}
+	
 	/**
-	 * clears the rows that contain all true booleans,
-	 * and shifts rows down accordingly.
-	 * @param rowsToClear the rows that contain all true booleans
+	 * Removes the full rows found by determineRowsToClear() and shifts the rows above
+	 * them down. Each column is compacted with one arraycopy per run of kept rows,
+	 * which the JIT turns into a block move, instead of copying row by row across columns.
+	 * @param rowsCleared the number of entries in rowsToClear
 	 */
-	private void shiftClearedRows(Stack<Integer> rowsToClear) {
-		while (!rowsToClear.empty()) {
-			int startRow = rowsToClear.pop();
-			for (int row = startRow; row < grid[0].length; row++) {
-				if (row >= maxHeight-1) {
-					fillRestOfGridFalse(row);
-					widths[row] = 0;
-					break;
-				} else {
-					for (int col = 0; col < grid.length; col++) {
-						grid[col][row] = grid[col][row+1];
-					}
-					widths[row] = widths[row+1];
-				}
+	private void shiftClearedRows(int rowsCleared) {
+		for (int col = 0; col < width; col++) {
+			boolean[] column = grid[col];
+			int to = rowsToClear[0];
+			for (int i = 0; i < rowsCleared; i++) {
+				int from = rowsToClear[i] + 1;
+				int end = (i+1 < rowsCleared) ? rowsToClear[i+1] : maxHeight;
+				System.arraycopy(column, from, column, to, end - from);
+				to += end - from;
 			}
+			clearColumn(column, to, maxHeight);
 		}
+		
+		// the row widths move down the same way
+		int to = rowsToClear[0];
+		for (int i = 0; i < rowsCleared; i++) {
+			int from = rowsToClear[i] + 1;
+			int end = (i+1 < rowsCleared) ? rowsToClear[i+1] : maxHeight;
+			System.arraycopy(widths, from, widths, to, end - from);
+			to += end - from;
+		}
+		Arrays.fill(widths, to, maxHeight, 0);
 	}
 
 	/**
-	 * resets all the heights to be 0 and then recalculates the heights for each column.
+	 * Recalculates the height of each column after rows are cleared.
+	 * Heights only go down, so each column is scanned down from its old height.
 	 * Also updates maxHeight.
 	 */
 	private void findNewHeights() {
-		Arrays.fill(heights, 0);
 		maxHeight = 0;
 		for (int col = 0; col < heights.length; col++) {
-			int last = -1;
-			for (int row = 0; row < grid[col].length; row++) {
-				if (grid[col][row] == true) {
-					last = row;
-				}
+			boolean[] column = grid[col];
+			int row = heights[col] - 1;
+			while (row >= 0 && !column[row]) {
+				row--;
 			}
-			updateHeights(col, last+1);
+			heights[col] = 0;
+			updateHeights(col, row+1);
 		}
 	}
 	
@@ -366,13 +652,20 @@ public class Board	{
 	}
 
 	/**
-	 * Fills in the grid from the row just above the highest block with falses.
-	 * filling the rest of the grid false only requires changing the row with the previous highest point
-	 * @param row the row above the highest block that is true
+	 * Sets rows start..end-1 of one column to false.
+	 * @param column the column of the grid
+	 * @param start first row to clear
+	 * @param end row after the last one to clear
 	 */
-	private void fillRestOfGridFalse(int row) {
-		for (int col = 0; col < grid.length; col++) {
-			grid[col][row] = false;
+	private void clearColumn(boolean[] column, int start, int end) {
+		if (end > start) {
+			Arrays.fill(column, start, end, false);
+		}
+	}
+	
+	private void checkBitRowWidth() {
+		if (width > 64) {
+			throw new RuntimeException("bit rows need a board at most 64 wide");
 		}
 	}
 	
@@ -420,12 +713,14 @@ public class Board	{
 	private void backupIvars() {
 		committed = false;
 		firstState = false;
+		// rows at or above maxHeight are empty, so they need no backup
 		for (int col = 0; col < width; col++) {
-			System.arraycopy(grid[col], 0, xGrid[col], 0, grid[col].length);
+			System.arraycopy(grid[col], 0, xGrid[col], 0, maxHeight);
 		}
 		System.arraycopy(heights, 0, xHeights, 0, heights.length);
-		System.arraycopy(widths, 0, xWidths, 0, widths.length);
+		System.arraycopy(widths, 0, xWidths, 0, maxHeight);
 		xMaxHeight = maxHeight;
+		xVersion = version;
 	}
 	
 }
@@ -0,0 +1,149 @@
+// BoardArena.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ Many boards of one size in a single preallocated long[], for batch
+ simulations running huge numbers of short games. Each slot holds a
+ board in CompactBoard's layout, one after another, so memory is fixed
+ when the arena is made, starting a game is a slot reset rather than a
+ new Board, and a sweep over all the games walks memory in order.
+
+ <p>Boards are reached through CompactBoard views. A view can be moved
+ from slot to slot with moveView(), so one view per thread is enough to
+ visit every game without allocating:
+ <pre>
+ CompactBoard view = arena.view(0);
+ for (int slot = 0; slot &lt; arena.getSlotCount(); slot++) {
+     arena.moveView(view, slot);
+     ... view.place(), view.clearRows(), view.commit() ...
+ }
+ </pre>
+ Different threads may work on different slots at once.
+
+ <p>A view is a CompactBoard, not a Board, so it cannot be handed to a
+ brain or anything else that takes a Board. To ask a brain for a move,
+ copy the slot into a Board with get() first; set() copies a Board back.
+*/
+public class BoardArena {
+	private final int width;
+	private final int height;
+	private final int slotSize;
+	private final int slots;
+	private final long[] data;
+
+	/**
+	 Creates an arena of the given number of empty boards.
+	*/
+	public BoardArena(int width, int height, int slots) {
+		this.width = width;
+		this.height = height;
+		this.slotSize = CompactBoard.slotSize(width, height);
+		if (slots < 1 || (long) slots * slotSize > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("bad slot count " + slots);
+		}
+		this.slots = slots;
+		data = new long[slots * slotSize];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getSlotCount() {
+		return slots;
+	}
+
+	/**
+	 Returns the bytes the arena's storage takes: 8 a long, plus the
+	 array header.
+	*/
+	public long getBytes() {
+		return 16 + 8L * data.length;
+	}
+
+	/**
+	 Returns a new view of the board in the given slot.
+	*/
+	public CompactBoard view(int slot) {
+		return new CompactBoard(width, height, data, offset(slot));
+	}
+
+	/**
+	 Points a view made by this arena at another slot. The view must be
+	 committed.
+	*/
+	public void moveView(CompactBoard view, int slot) {
+		if (!view.isIn(data)) throw new IllegalArgumentException("view is not of this arena");
+		view.moveTo(offset(slot));
+	}
+
+	/**
+	 Empties the board in the given slot, e.g. to start a new game there.
+	 Only the rows below the board's max height are cleared. Views of the
+	 slot must be moved to it again afterwards.
+	*/
+	public void reset(int slot) {
+		int base = offset(slot);
+		Arrays.fill(data, base, base + maxHeight(base), 0);
+		Arrays.fill(data, base + height, base + slotSize, 0);
+	}
+
+	/**
+	 Makes the board in the given slot a copy of the given Board, writing
+	 its bit rows and column heights straight into the arena. Views of
+	 the slot must be moved to it again afterwards.
+	*/
+	public void set(int slot, Board board) {
+		checkSize(board);
+		reset(slot);
+		int base = offset(slot);
+		board.getBitRows(data, base);
+		int heights = base + height;
+		for (int x = 0; x < width; x++) {
+			data[heights + (x >> 2)] |= (long) board.getColumnHeight(x) << ((x & 3) * 16);
+		}
+	}
+
+	/**
+	 Makes the given Board a copy of the board in the given slot, e.g. to
+	 ask a brain for a move there, reading the bit rows straight out of
+	 the arena. The Board is left committed.
+	*/
+	public void get(int slot, Board board) {
+		checkSize(board);
+		int base = offset(slot);
+		board.setBitRows(data, base, maxHeight(base));
+	}
+
+	/**
+	 * Returns the max height of the board stored at data[base..], from
+	 * its packed column heights.
+	 */
+	private int maxHeight(int base) {
+		int maxHeight = 0;
+		for (int i = base + height; i < base + slotSize; i++) {
+			long packed = data[i];
+			for (; packed != 0; packed >>>= 16) {
+				maxHeight = Math.max(maxHeight, (int) (packed & 0xFFFF));
+			}
+		}
+		return maxHeight;
+	}
+
+	private void checkSize(Board board) {
+		if (board.getWidth() != width || board.getHeight() != height) {
+			throw new IllegalArgumentException("board is not " + width + "x" + height);
+		}
+	}
+
+	private int offset(int slot) {
+		if (slot < 0 || slot >= slots) throw new IndexOutOfBoundsException("slot " + slot);
+		return slot * slotSize;
+	}
+}
@@ -0,0 +1,140 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.*;
+
+/*
+ Unit test for BoardArena and its CompactBoard views.
+ */
+public class BoardArenaTest {
+	private static final int SLOTS = 16;
+
+	// Differential fuzzing of a view against ReferenceBoard, the view
+	// moving between reused slots.
+	@Test
+	public void testFuzz() {
+		new BoardFuzzer(BoardFuzzer.ARENA, 10, 24, 1).run(5000);
+	}
+
+	// Playing every other slot up to its top, through one moving view,
+	// never touches the games in the slots between.
+	@Test
+	public void testSlotsIsolated() {
+		Board[] positions = TetrisGame.samplePositions(SLOTS, 1);
+		BoardArena arena = new BoardArena(10, 24, SLOTS);
+		for (int slot = 0; slot < SLOTS; slot++) arena.set(slot, positions[slot]);
+		Piece[] pieces = Piece.getPieces();
+		FastRandom random = new FastRandom(1);
+		CompactBoard view = arena.view(0);
+
+		for (int slot = 0; slot < SLOTS; slot += 2) {
+			arena.moveView(view, slot);
+			while (true) {
+				Piece piece = pieces[random.nextInt(pieces.length)];
+				int x = random.nextInt(view.getWidth() - piece.getWidth() + 1);
+				int y = view.dropHeight(piece, x);
+				if (y + piece.getHeight() > view.getHeight()) break;
+				view.place(piece, x, y);
+				view.clearRows();
+				view.commit();
+			}
+			assertTrue(view.getMaxHeight() > view.getHeight() - 4);
+		}
+		Board board = new Board(10, 24);
+		for (int slot = 1; slot < SLOTS; slot += 2) {
+			arena.get(slot, board);
+			assertEquals(positions[slot].toString(), board.toString());
+		}
+	}
+
+	@Test
+	public void testSetAndReset() {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 2));
+		game.play(30);
+		BoardArena arena = new BoardArena(10, 24, 3);
+		arena.set(1, game.getBoard());
+		assertEquals(game.getBoard().toString(), arena.view(1).toString());
+		assertEquals(0, arena.view(0).getMaxHeight());
+		assertEquals(0, arena.view(2).getMaxHeight());
+
+		Board copy = new Board(10, 24);
+		arena.view(1).copyTo(copy);
+		assertEquals(game.getBoard().toString(), copy.toString());
+
+		arena.reset(1);
+		assertEquals(new Board(10, 24).toString(), arena.view(1).toString());
+		assertEquals(16 + 8 * 3 * (24 + 3), arena.getBytes());
+	}
+
+	// A slot copied out to a Board gets the brain's move for the game
+	// there, and once warmed up, playing slots that way allocates nothing.
+	// The allocation check needs a JVM that counts allocated bytes per
+	// thread, as HotSpot does.
+	@Test
+	public void testBrainOnSlot() {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 3));
+		game.play(20);
+		BoardArena arena = new BoardArena(10, 24, 2);
+		arena.set(1, game.getBoard());
+
+		Board board = new Board(10, 24);
+		arena.get(1, board);
+		Piece piece = Piece.getPieces()[Piece.L1];
+		DefaultBrain brain = new DefaultBrain();
+		Brain.Move expected = brain.bestMove(game.getBoard(), piece, TetrisGame.HEIGHT, null);
+		Brain.Move move = brain.bestMove(board, piece, TetrisGame.HEIGHT, null);
+		assertSame(expected.piece, move.piece);
+		assertEquals(expected.x, move.x);
+
+		CompactBoard view = arena.view(1);
+		view.place(move.piece, move.x, move.y);
+		view.clearRows();
+		view.commit();
+		board.place(move.piece, move.x, move.y);
+		board.clearRows();
+		board.commit();
+		assertEquals(board.toString(), view.toString());
+
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+		long thread = Thread.currentThread().getId();
+
+		assertFalse("sanityCheck() allocates", Board.DEBUG);
+		Brain.Move scratch = new Brain.Move();
+		FastRandom random = new FastRandom(5);
+		playSlots(arena, board, brain, scratch, random, 2000);
+		long before = threads.getThreadAllocatedBytes(thread);
+		playSlots(arena, board, brain, scratch, random, 2000);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+	}
+
+	// Plays a piece in each slot in turn: copied out, played by the brain,
+	// and copied back, or the slot emptied when its game is over.
+	private static void playSlots(BoardArena arena, Board board, Brain brain, Brain.Move move,
+			FastRandom random, int count) {
+		Piece[] pieces = Piece.getPieces();
+		for (int i = 0; i < count; i++) {
+			int slot = i % arena.getSlotCount();
+			arena.get(slot, board);
+			if (brain.bestMove(board, pieces[random.nextInt(pieces.length)], TetrisGame.HEIGHT, move) == null) {
+				arena.reset(slot);
+				continue;
+			}
+			board.place(move.piece, move.x, move.y);
+			board.clearRows();
+			board.commit();
+			arena.set(slot, board);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForeignView() {
+		new BoardArena(10, 24, 2).moveView(new CompactBoard(10, 24), 1);
+	}
+}
@@ -0,0 +1,71 @@
+// BoardBenchmark.java
+package tetris;
+
+/**
+ Times the Board operations the brains lean on -- place, clearRows
+ and undo -- on boards from 10 to 64 columns wide.
+ Pieces are dropped at random columns, the way a brain tries out
+ placements, and every row fill is cleared. Run with:
+ <pre>
+ java tetris.BoardBenchmark [seconds per width]
+ </pre>
+*/
+public class BoardBenchmark {
+	private static final int[] WIDTHS = {10, 16, 32, 48, 64};
+	private static final int HEIGHT = 24;
+	private static final int LIMIT = HEIGHT - 4;
+
+	public static void main(String[] args) {
+		double seconds = (args.length > 0) ? Double.parseDouble(args[0]) : 2.0;
+		Piece[] pieces = Piece.getPieces();
+		
+		System.out.println("width   placements/sec   rows cleared/sec");
+		for (int width: WIDTHS) {
+			run(width, pieces, seconds / 4, false);	// warm up the JIT
+			run(width, pieces, seconds, true);
+		}
+	}
+
+	/**
+	 * Plays random drops on a board of the given width for the given time.
+	 * Each drop is tried and undone once, like a brain, then played for real.
+	 * @param width the board width
+	 * @param pieces the pieces to drop
+	 * @param seconds how long to run
+	 * @param report whether to print the rates
+	 */
+	private static void run(int width, Piece[] pieces, double seconds, boolean report) {
+		FastRandom random = new FastRandom(width);
+		Board board = new Board(width, HEIGHT);
+		long placements = 0;
+		long rows = 0;
+		long start = System.nanoTime();
+		long end = start + (long) (seconds * 1e9);
+		
+		while (System.nanoTime() < end) {
+			for (int i = 0; i < 1000; i++) {
+				Piece piece = pieces[random.nextInt(pieces.length)];
+				int x = random.nextInt(width - piece.getWidth() + 1);
+				int y = board.dropHeight(piece, x);
+				if (y + piece.getHeight() > LIMIT) {
+					board = new Board(width, HEIGHT);
+					continue;
+				}
+				
+				// try it once, then keep it
+				board.place(piece, x, y);
+				board.clearRows();
+				board.undo();
+				board.place(piece, x, y);
+				rows += board.clearRows();
+				board.commit();
+				placements += 2;
+			}
+		}
+		
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		if (report) {
+			System.out.println(String.format("%5d   %14.0f   %16.0f", width, placements / elapsed, rows / elapsed));
+		}
+	}
+}
@@ -0,0 +1,307 @@
+// BoardCodec.java
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ Packs a board, and optionally the piece falling in it, into a few dozen
+ bytes, reading and writing a ByteBuffer directly. Used wherever boards
+ leave the program: the brain server, datasets and snapshots.
+
+ <p>The layout, all big-endian:
+ <pre>
+ byte   format          FORMAT
+ byte   width           1..64
+ short  height          1..65535, unsigned
+ short  rowCount        the board's max height, unsigned
+ byte   piece           index*4 + rotation, or NO_PIECE
+ byte   pieceX
+ short  pieceY          signed
+ heights[width]         column heights, a byte each, or a short each if height > 255
+ rows[rowCount]         bit rows from the bottom, (width+7)/8 bytes each, low bits first
+ </pre>
+ A 10 x 24 board stacked 6 high takes 10 + 10 + 12 = 32 bytes.
+ The heights repeat what the rows say, so a reader can look at the
+ skyline without unpacking the grid; decode() checks that they agree.
+
+ <p>A codec keeps a scratch row buffer and the piece of the last decode(),
+ so it is not safe to share between threads; give each thread its own.
+*/
+public class BoardCodec {
+	public static final int FORMAT = 1;
+	public static final int NO_PIECE = 0xFF;
+	public static final int HEADER_SIZE = 10;
+
+	private long[] rows = new long[0];
+
+	// piece state from the last decode()
+	private Piece piece;
+	private int pieceX;
+	private int pieceY;
+
+	/**
+	 Returns the number of bytes encode() will write for the board.
+	*/
+	public static int encodedSize(Board board) {
+		return encodedSize(board.getWidth(), board.getHeight(), board.getMaxHeight());
+	}
+
+	/**
+	 Returns the number of bytes encode() writes for a board of the given
+	 size with rowCount rows up to its top block.
+	*/
+	public static int encodedSize(int width, int height, int rowCount) {
+		int heightBytes = (height > 255) ? 2 : 1;
+		return HEADER_SIZE + width * heightBytes + rowCount * ((width + 7) / 8);
+	}
+
+	/**
+	 Returns the full size of the encoded board whose header starts at the
+	 buffer's position, so a reader of a stream knows how much to read.
+	 Does not move the buffer. Throws IllegalArgumentException if the
+	 header is short or bad.
+	*/
+	public static int recordSize(ByteBuffer buffer) {
+		need(buffer, HEADER_SIZE);
+		return recordSize(buffer, buffer.position());
+	}
+
+	/**
+	 Returns the full size of the encoded board whose header starts at the
+	 given index of the buffer. Throws IllegalArgumentException if the
+	 header is bad.
+	*/
+	public static int recordSize(ByteBuffer buffer, int start) {
+		if (start + HEADER_SIZE > buffer.limit()) throw new IllegalArgumentException("truncated board");
+		if (buffer.get(start) != FORMAT) throw new IllegalArgumentException("unknown format " + buffer.get(start));
+		int width = buffer.get(start + 1) & 0xFF;
+		int height = buffer.getShort(start + 2) & 0xFFFF;
+		int rowCount = buffer.getShort(start + 4) & 0xFFFF;
+		if (width < 1 || width > 64) throw new IllegalArgumentException("bad width " + width);
+		return encodedSize(width, height, rowCount);
+	}
+
+	/**
+	 Returns the width of the encoded board starting at the given index
+	 of the buffer, read in place.
+	*/
+	public static int widthAt(ByteBuffer buffer, int start) {
+		return buffer.get(start + 1) & 0xFF;
+	}
+
+	/**
+	 Returns the height of column x of the encoded board starting at the
+	 given index of the buffer, read in place without decoding the rows.
+	*/
+	public static int columnHeightAt(ByteBuffer buffer, int start, int x) {
+		int height = buffer.getShort(start + 2) & 0xFFFF;
+		if (height > 255) return buffer.getShort(start + HEADER_SIZE + 2 * x) & 0xFFFF;
+		return buffer.get(start + HEADER_SIZE + x) & 0xFF;
+	}
+
+	/**
+	 Returns the piece of the encoded board starting at the given index
+	 of the buffer, or null if it has none, read in place.
+	*/
+	public static Piece pieceAt(ByteBuffer buffer, int start) {
+		int code = buffer.get(start + 6) & 0xFF;
+		if (code == NO_PIECE) return null;
+		return Piece.getPiece(code / 4, code % 4);
+	}
+
+	/**
+	 Returns the piece x of the encoded board starting at the given index
+	 of the buffer, read in place.
+	*/
+	public static int pieceXAt(ByteBuffer buffer, int start) {
+		return buffer.get(start + 7);
+	}
+
+	/**
+	 Returns the piece y of the encoded board starting at the given index
+	 of the buffer, read in place.
+	*/
+	public static int pieceYAt(ByteBuffer buffer, int start) {
+		return buffer.getShort(start + 8);
+	}
+
+	/**
+	 Writes the committed board with no piece at the buffer's position,
+	 advancing it.
+	*/
+	public void encode(Board board, ByteBuffer buffer) {
+		encode(board, null, 0, 0, buffer);
+	}
+
+	/**
+	 Writes the committed board and the piece at (x, y) at the buffer's
+	 position, advancing it. The piece may be null. Only the standard
+	 pieces can be written, and only boards up to 64 wide.
+	*/
+	public void encode(Board board, Piece piece, int x, int y, ByteBuffer buffer) {
+		int width = board.getWidth();
+		int height = board.getHeight();
+		if (height > 0xFFFF) throw new IllegalArgumentException("board too tall to encode");
+		int code = NO_PIECE;
+		if (piece != null) {
+			if (piece.getIndex() < 0) throw new IllegalArgumentException("not a standard piece");
+			code = piece.getIndex() * 4 + piece.getRotation();
+		}
+		if (rows.length < height) rows = new long[height];
+		int rowCount = board.getBitRows(rows, 0);
+
+		buffer.put((byte) FORMAT);
+		buffer.put((byte) width);
+		buffer.putShort((short) height);
+		buffer.putShort((short) rowCount);
+		buffer.put((byte) code);
+		buffer.put((byte) x);
+		buffer.putShort((short) y);
+
+		for (int col = 0; col < width; col++) {
+			int columnHeight = board.getColumnHeight(col);
+			if (height > 255) buffer.putShort((short) columnHeight);
+			else buffer.put((byte) columnHeight);
+		}
+
+		int rowBytes = (width + 7) / 8;
+		for (int row = 0; row < rowCount; row++) {
+			long bits = rows[row];
+			for (int i = 0; i < rowBytes; i++) {
+				buffer.put((byte) bits);
+				bits >>>= 8;
+			}
+		}
+	}
+
+	/**
+	 Reads a board from the buffer's position into a new board,
+	 advancing the buffer. See decode(ByteBuffer, Board).
+	*/
+	public Board decode(ByteBuffer buffer) {
+		return decode(buffer, null);
+	}
+
+	/**
+	 Reads a board from the buffer's position, advancing it, into the
+	 given board if it is the right size, or into a new one if not (or if
+	 board is null). Returns the board, committed. The piece state is kept
+	 for getPiece(), getPieceX() and getPieceY().
+	 Throws IllegalArgumentException if the bytes are not a valid board,
+	 in which case the buffer's position is left where it was.
+	*/
+	public Board decode(ByteBuffer buffer, Board board) {
+		int start = buffer.position();
+		try {
+			return read(buffer, board);
+		} catch (IllegalArgumentException e) {
+			buffer.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Does the work of decode(), throwing IllegalArgumentException on any
+	 * bad or missing bytes.
+	 */
+	private Board read(ByteBuffer buffer, Board board) {
+		need(buffer, HEADER_SIZE);
+		int format = buffer.get();
+		if (format != FORMAT) throw new IllegalArgumentException("unknown format " + format);
+		int width = buffer.get() & 0xFF;
+		int height = buffer.getShort() & 0xFFFF;
+		int rowCount = buffer.getShort() & 0xFFFF;
+		int code = buffer.get() & 0xFF;
+		int x = buffer.get();
+		int y = buffer.getShort();
+		if (width < 1 || width > 64) throw new IllegalArgumentException("bad width " + width);
+		if (height < 1) throw new IllegalArgumentException("bad height " + height);
+		if (rowCount > height) throw new IllegalArgumentException("bad row count " + rowCount);
+		if (code != NO_PIECE && (code / 4 >= Piece.getPieces().length)) {
+			throw new IllegalArgumentException("bad piece " + code);
+		}
+		need(buffer, encodedSize(width, height, rowCount) - HEADER_SIZE);
+
+		Piece decoded = null;
+		if (code != NO_PIECE) {
+			decoded = Piece.getPiece(code / 4, code % 4);
+			if (decoded.getRotation() != code % 4) {
+				throw new IllegalArgumentException("bad rotation " + code % 4);
+			}
+		}
+
+		// the heights are checked against the rows once they are read
+		int heightsAt = buffer.position();
+		buffer.position(heightsAt + width * ((height > 255) ? 2 : 1));
+
+		if (rows.length < rowCount) rows = new long[Math.max(rowCount, height)];
+		int rowBytes = (width + 7) / 8;
+		long outside = (width == 64) ? 0 : -1L << width;
+		for (int row = 0; row < rowCount; row++) {
+			long bits = 0;
+			for (int i = 0; i < rowBytes; i++) {
+				bits |= (buffer.get() & 0xFFL) << (8 * i);
+			}
+			if ((bits & outside) != 0) throw new IllegalArgumentException("block outside board at row " + row);
+			rows[row] = bits;
+		}
+		if (rowCount > 0 && rows[rowCount-1] == 0) {
+			throw new IllegalArgumentException("row count past the top block");
+		}
+
+		int end = buffer.position();
+		buffer.position(heightsAt);
+		for (int col = 0; col < width; col++) {
+			int columnHeight = (height > 255) ? (buffer.getShort() & 0xFFFF) : (buffer.get() & 0xFF);
+			if (columnHeight != columnHeight(col, rowCount)) {
+				throw new IllegalArgumentException("height of column " + col + " does not match");
+			}
+		}
+		buffer.position(end);
+
+		if (board == null || board.getWidth() != width || board.getHeight() != height) {
+			board = new Board(width, height);
+		}
+		board.setBitRows(rows, 0, rowCount);
+		piece = decoded;
+		pieceX = x;
+		pieceY = y;
+		return board;
+	}
+
+	/**
+	 * Returns the height of the column in the decoded rows.
+	 */
+	private int columnHeight(int col, int rowCount) {
+		long bit = 1L << col;
+		for (int row = rowCount-1; row >= 0; row--) {
+			if ((rows[row] & bit) != 0) return row+1;
+		}
+		return 0;
+	}
+
+	private static void need(ByteBuffer buffer, int bytes) {
+		if (buffer.remaining() < bytes) throw new IllegalArgumentException("truncated board");
+	}
+
+	/**
+	 Returns the piece from the last decode(), or null if it had none.
+	*/
+	public Piece getPiece() {
+		return piece;
+	}
+
+	/**
+	 Returns the piece's x from the last decode().
+	*/
+	public int getPieceX() {
+		return pieceX;
+	}
+
+	/**
+	 Returns the piece's y from the last decode().
+	*/
+	public int getPieceY() {
+		return pieceY;
+	}
+}
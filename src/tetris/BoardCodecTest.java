@@ -0,0 +1,206 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+
+/*
+ Unit test for BoardCodec: round trips, the piece state, and a fuzzing
+ pass over random boards and corrupted bytes.
+ */
+public class BoardCodecTest {
+	private BoardCodec codec;
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() {
+		Board.DEBUG = true;	// sanityCheck() on every decoded board
+		codec = new BoardCodec();
+		pieces = Piece.getPieces();
+	}
+
+	@After
+	public void tearDown() {
+		Board.DEBUG = false;
+	}
+
+	/**
+	 * Returns a board of the given size after dropping random pieces in
+	 * random columns until the next one would not fit.
+	 */
+	private Board randomBoard(FastRandom random, int width, int height, int drops) {
+		Board board = new Board(width, height);
+		for (int i = 0; i < drops; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			for (int turns = random.nextInt(4); turns > 0; turns--) {
+				piece = piece.fastRotation();
+			}
+			if (piece.getWidth() > width) continue;
+			int x = random.nextInt(width - piece.getWidth() + 1);
+			int y = board.dropHeight(piece, x);
+			if (y + piece.getHeight() > height) break;
+			board.place(piece, x, y);
+			board.clearRows();
+			board.commit();
+		}
+		return board;
+	}
+
+	private void assertSameBoard(Board expected, Board actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		assertEquals(expected.getMaxHeight(), actual.getMaxHeight());
+		for (int x = 0; x < expected.getWidth(); x++) {
+			assertEquals(expected.getColumnHeight(x), actual.getColumnHeight(x));
+		}
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void testEmpty() {
+		Board board = new Board(10, 24);
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		codec.encode(board, buffer);
+		assertEquals(BoardCodec.HEADER_SIZE + 10, buffer.position());
+		buffer.flip();
+		assertSameBoard(board, codec.decode(buffer));
+		assertNull(codec.getPiece());
+		assertEquals(0, buffer.remaining());
+	}
+
+	// A 10 x 24 board a few rows high fits in a few dozen bytes.
+	@Test
+	public void testSize() {
+		Board board = randomBoard(new FastRandom(1), 10, 24, 12);
+		assertTrue(board.getMaxHeight() > 0);
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		codec.encode(board, buffer);
+		assertEquals(BoardCodec.encodedSize(board), buffer.position());
+		assertEquals(20 + 2 * board.getMaxHeight(), buffer.position());
+		buffer.flip();
+		assertEquals(buffer.limit(), BoardCodec.recordSize(buffer));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void testPiece() {
+		Board board = randomBoard(new FastRandom(2), 10, 24, 8);
+		Piece piece = pieces[Piece.L2].fastRotation().fastRotation();
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		codec.encode(board, piece, 7, 19, buffer);
+		buffer.flip();
+		assertSameBoard(board, codec.decode(buffer));
+		assertSame(piece, codec.getPiece());
+		assertEquals(7, codec.getPieceX());
+		assertEquals(19, codec.getPieceY());
+	}
+
+	// Several boards back to back, decoded into one reused board.
+	@Test
+	public void testStream() {
+		FastRandom random = new FastRandom(3);
+		Board[] boards = new Board[20];
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+		for (int i = 0; i < boards.length; i++) {
+			boards[i] = randomBoard(random, 10, 24, i * 3);
+			codec.encode(boards[i], buffer);
+		}
+		buffer.flip();
+		Board reused = new Board(10, 24);
+		for (int i = 0; i < boards.length; i++) {
+			assertSame(reused, codec.decode(buffer, reused));
+			assertSameBoard(boards[i], reused);
+		}
+		assertEquals(0, buffer.remaining());
+	}
+
+	// Heights over 255 take two bytes per column.
+	@Test
+	public void testTall() {
+		Board board = randomBoard(new FastRandom(4), 5, 300, 1000);
+		assertTrue(board.getMaxHeight() > 255);
+		ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.encodedSize(board));
+		codec.encode(board, buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+		assertSameBoard(board, codec.decode(buffer));
+	}
+
+	// A bad or short record throws and leaves the buffer where it was.
+	@Test
+	public void testBad() {
+		Board board = randomBoard(new FastRandom(5), 10, 24, 10);
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		codec.encode(board, buffer);
+		buffer.flip();
+
+		buffer.limit(buffer.limit() - 1);
+		assertBad(buffer);
+		buffer.limit(buffer.limit() + 1);
+
+		buffer.put(BoardCodec.HEADER_SIZE, (byte) (buffer.get(BoardCodec.HEADER_SIZE) + 1));	// column 0 height
+		assertBad(buffer);
+		buffer.put(BoardCodec.HEADER_SIZE, (byte) (buffer.get(BoardCodec.HEADER_SIZE) - 1));
+
+		buffer.put(buffer.limit() - 1, (byte) 0x80);	// column 15 of a 10 wide board
+		assertBad(buffer);
+	}
+
+	private void assertBad(ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			codec.decode(buffer);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+		assertEquals(start, buffer.position());
+	}
+
+	// Random boards of every width round trip exactly, and corrupted
+	// records either are rejected or decode to a board that is sane
+	// and encodes back to the same bytes.
+	@Test
+	public void testFuzz() {
+		FastRandom random = new FastRandom(6);
+		ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.encodedSize(64, 80, 80));
+		ByteBuffer again = ByteBuffer.allocate(buffer.capacity());
+		int rejected = 0;
+		for (int round = 0; round < 2000; round++) {
+			int width = 1 + random.nextInt(64);
+			int height = 4 + random.nextInt(77);
+			Board board = randomBoard(random, width, height, random.nextInt(4 * height));
+			Piece piece = (random.nextInt(2) == 0) ? null : Piece.getPiece(random.nextInt(7), random.nextInt(4));
+
+			buffer.clear();
+			codec.encode(board, piece, random.nextInt(width), random.nextInt(height), buffer);
+			int size = buffer.position();
+			buffer.flip();
+			assertSameBoard(board, codec.decode(buffer));
+			assertSame(piece, codec.getPiece());
+
+			// flip a few random bits
+			for (int flips = 1 + random.nextInt(3); flips > 0; flips--) {
+				int at = random.nextInt(size);
+				buffer.put(at, (byte) (buffer.get(at) ^ (1 << random.nextInt(8))));
+			}
+			buffer.position(0);
+			Board decoded;
+			try {
+				decoded = codec.decode(buffer);
+			} catch (IllegalArgumentException e) {
+				rejected++;
+				continue;
+			}
+			decoded.sanityCheck();
+			again.clear();
+			codec.encode(decoded, codec.getPiece(), codec.getPieceX(), codec.getPieceY(), again);
+			assertEquals(buffer.position(), again.position());
+			for (int i = 0; i < again.position(); i++) {
+				assertEquals(buffer.get(i), again.get(i));
+			}
+		}
+		assertTrue(rejected > 0);
+	}
+}
@@ -0,0 +1,561 @@
+// BoardFuzzer.java
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ Differential fuzzing of board implementations against ReferenceBoard,
+ the frozen original Board. A fuzzer drives a ReferenceBoard and a board
+ under test through the same random sequence of place(), clearRows(),
+ undo() and commit() calls, and after every call compares their results
+ and their whole state: max height, every column height, every row width
+ and every block. This covers the corners that are easy to get wrong,
+ such as the blocks a PLACE_OUT_BOUNDS or PLACE_BAD place() leaves
+ behind until undo(), and undo() after clearRows().
+
+ <p>Most places are where DefaultBrain's rating would play the piece, so
+ rows fill and clear as in a game; the rest are dropped at random, made
+ just above or below the drop height, where they may collide, or made
+ anywhere, partly off the board. When the board fills up, both are
+ emptied, or loaded with rows that are full but for a well, and play
+ goes on. On the first difference the fuzzer throws a Divergence, whose
+ message has the seed, the step and the calls leading up to it, so the
+ failure can be replayed.
+
+ <p>Run with:
+ <pre>
+ java tetris.BoardFuzzer [steps per run] [seed]
+ </pre>
+ to fuzz Board, ChunkedBoard, CompactBoard and BoardArena views at a few
+ board sizes, one run per implementation and size, in parallel.
+*/
+public class BoardFuzzer {
+	// calls kept for the Divergence message
+	private static final int TRACE = 24;
+
+	private static final int PLACE = 0;
+	private static final int CLEAR = 1;
+	private static final int UNDO = 2;
+	private static final int COMMIT = 3;
+	private static final int RESET = 4;
+	private static final int LOAD = 5;
+	private static final String[] OP_NAMES = {"place", "clearRows", "undo", "commit", "reset", "load"};
+
+	/**
+	 A board being fuzzed, seen through the calls the fuzzer makes.
+	*/
+	public interface Target {
+		public int place(Piece piece, int x, int y);
+		public int clearRows();
+		public void undo();
+		public void commit();
+
+		/**
+		 Empties the committed board, e.g. by making a new one.
+		*/
+		public void reset();
+
+		/**
+		 Makes the committed board a copy of the given Board.
+		*/
+		public void load(Board board);
+
+		public int getMaxHeight();
+		public int getColumnHeight(int x);
+		public int getRowWidth(int y);
+		public boolean getGrid(int x, int y);
+	}
+
+	/**
+	 Makes the boards of one implementation.
+	*/
+	public interface Factory {
+		public String getName();
+		public Target newBoard(int width, int height);
+	}
+
+	/**
+	 Thrown when the board under test differs from the reference.
+	*/
+	public static class Divergence extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public Divergence(String message) {
+			super(message);
+		}
+	}
+
+	private final Factory factory;
+	private final int width;
+	private final int height;
+	private final long seed;
+	private final FastRandom random;
+	private final Piece[] pieces = Piece.getPieces();
+	private ReferenceBoard reference;
+	private final Board loaded;		// the position to load, for both boards
+	private final long[] rows;
+	private final Target target;
+	private boolean committed = true;
+	private boolean failed;		// the last place() failed, so undo() is next
+
+	// the play found by findPlay()
+	private Piece playPiece;
+	private int playX;
+
+	// the last TRACE calls: op, piece, rotation, x, y, result
+	private final int[][] trace = new int[TRACE][6];
+	private long steps;
+
+	// what the fuzzing has covered
+	private long places;
+	private long[] placeResults = new long[4];
+	private long rowsCleared;
+	private long undos;
+	private long resets;
+
+	/**
+	 Creates a fuzzer of boards from the factory of the given size,
+	 playing the sequence of calls given by the seed.
+	*/
+	public BoardFuzzer(Factory factory, int width, int height, long seed) {
+		this.factory = factory;
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		random = new FastRandom(seed);
+		reference = new ReferenceBoard(width, height);
+		loaded = new Board(width, height);
+		rows = new long[height];
+		target = factory.newBoard(width, height);
+	}
+
+	/**
+	 Makes the given number of calls, comparing the boards after each.
+	 Can be called again to carry on.
+	*/
+	public void run(long count) {
+		for (long i = 0; i < count; i++) {
+			step();
+		}
+	}
+
+	/**
+	 * Makes one random call on both boards and compares them.
+	 */
+	private void step() {
+		int[] call = trace[(int) (steps % TRACE)];
+		steps++;
+		call[1] = call[2] = call[3] = call[4] = call[5] = 0;
+		int choice = random.nextInt(100);
+		if (committed && reference.getMaxHeight() > height - 4) {
+			if (width <= 64 && random.nextInt(2) == 0) {
+				// rows full but for a well, so wide boards clear rows too
+				call[0] = LOAD;
+				call[5] = loadWell();
+				reference = new ReferenceBoard(loaded);
+				target.load(loaded);
+			} else {
+				call[0] = RESET;
+				reference = new ReferenceBoard(width, height);
+				target.reset();
+			}
+			resets++;
+		} else if (failed) {
+			// what the caller of a failed place() must do
+			call[0] = UNDO;
+			reference.undo();
+			target.undo();
+			committed = true;
+			failed = false;
+			undos++;
+		} else if (committed && choice < 70) {
+			call[0] = PLACE;
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			int x;
+			int y;
+			int kind = random.nextInt(20);
+			if (kind < 16 && findPlay(piece)) {
+				// where a brain would play it, to fill rows
+				piece = playPiece;
+				x = playX;
+				y = reference.dropHeight(piece, x);
+			} else {
+				for (int r = random.nextInt(4); r > 0; r--) piece = piece.fastRotation();
+				if (kind == 16) {
+					// anywhere, maybe partly off the sides
+					x = random.nextInt(width - piece.getWidth() + 3) - 1;
+					y = random.nextInt(reference.getMaxHeight() + 4) - 1;
+				} else {
+					x = random.nextInt(width - piece.getWidth() + 1);
+					y = reference.dropHeight(piece, x);
+					if (kind >= 18) y += random.nextInt(3) - 1;	// may collide
+				}
+			}
+			call[1] = piece.getIndex();
+			call[2] = piece.getRotation();
+			call[3] = x;
+			call[4] = y;
+			int expected = reference.place(piece, x, y);
+			call[5] = expected;
+			check("place result", expected, target.place(piece, x, y));
+			committed = false;
+			failed = expected >= Board.PLACE_OUT_BOUNDS;
+			places++;
+			placeResults[expected]++;
+		} else if (choice < (committed ? 80 : 45)) {
+			call[0] = CLEAR;
+			int expected = reference.clearRows();
+			call[5] = expected;
+			check("clearRows result", expected, target.clearRows());
+			committed = false;
+			rowsCleared += expected;
+		} else if (choice < (committed ? 90 : 65)) {
+			call[0] = UNDO;
+			reference.undo();
+			target.undo();
+			committed = true;
+			undos++;
+		} else {
+			call[0] = COMMIT;
+			reference.commit();
+			target.commit();
+			committed = true;
+		}
+		compare();
+	}
+
+	/**
+	 * Finds the play of the piece that DefaultBrain's rateBoard() likes
+	 * best, by trying each on the reference with place() and undo(), and
+	 * stores it in playPiece and playX.
+	 * @return false if the piece fits nowhere
+	 */
+	private boolean findPlay(Piece piece) {
+		double bestScore = Double.MAX_VALUE;
+		playPiece = null;
+		Piece current = piece;
+		do {
+			for (int x = 0; x + current.getWidth() <= width; x++) {
+				int y = reference.dropHeight(current, x);
+				if (y + current.getHeight() > height) continue;
+				if (reference.place(current, x, y) == Board.PLACE_ROW_FILLED) reference.clearRows();
+				double score = rate();
+				if (score < bestScore) {
+					bestScore = score;
+					playPiece = current;
+					playX = x;
+				}
+				reference.undo();
+			}
+			current = current.fastRotation();
+		} while (current != piece);
+		return playPiece != null;
+	}
+
+	/**
+	 * DefaultBrain.rateBoard() for the reference, counting the holes as
+	 * the blocks missing under the column heights.
+	 */
+	private double rate() {
+		int sumHeight = 0;
+		for (int x = 0; x < width; x++) {
+			sumHeight += reference.getColumnHeight(x);
+		}
+		int blocks = 0;
+		for (int y = 0; y < reference.getMaxHeight(); y++) {
+			blocks += reference.getRowWidth(y);
+		}
+		return 8 * reference.getMaxHeight() + 40.0 * sumHeight / width + 1.25 * (sumHeight - blocks);
+	}
+
+	/**
+	 * Fills the bottom of the board to load with rows that are full but
+	 * for one column, and now and then one more block, and returns how
+	 * many.
+	 */
+	private int loadWell() {
+		final long full = (width == 64) ? -1L : (1L << width) - 1;
+		int well = random.nextInt(width);
+		int count = 1 + random.nextInt(height / 2);
+		for (int y = 0; y < count; y++) {
+			rows[y] = full & ~(1L << well);
+			if (random.nextInt(4) == 0) rows[y] &= ~(1L << random.nextInt(width));
+		}
+		loaded.reset();
+		loaded.setBitRows(rows, 0, count);
+		return count;
+	}
+
+	/**
+	 * Compares the whole state of the two boards.
+	 */
+	private void compare() {
+		check("max height", reference.getMaxHeight(), target.getMaxHeight());
+		for (int x = 0; x < width; x++) {
+			check("height of column", x, reference.getColumnHeight(x), target.getColumnHeight(x));
+		}
+		for (int y = 0; y < height; y++) {
+			check("width of row", y, reference.getRowWidth(y), target.getRowWidth(y));
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (reference.getGrid(x, y) != target.getGrid(x, y)) {
+					throw divergence("block (" + x + ", " + y + ") is " + target.getGrid(x, y)
+						+ ", expected " + reference.getGrid(x, y));
+				}
+			}
+		}
+	}
+
+	private void check(String what, int expected, int actual) {
+		if (expected != actual) {
+			throw divergence(what + " is " + actual + ", expected " + expected);
+		}
+	}
+
+	private void check(String what, int index, int expected, int actual) {
+		if (expected != actual) {
+			throw divergence(what + " " + index + " is " + actual + ", expected " + expected);
+		}
+	}
+
+	/**
+	 * Makes the Divergence for a difference found at this step.
+	 */
+	private Divergence divergence(String difference) {
+		StringBuilder buff = new StringBuilder();
+		buff.append(factory.getName()).append(' ').append(width).append('x').append(height)
+			.append(" seed ").append(seed).append(" step ").append(steps).append(": ")
+			.append(difference).append("\nlast calls:\n");
+		for (long s = Math.max(0, steps - TRACE); s < steps; s++) {
+			int[] call = trace[(int) (s % TRACE)];
+			buff.append("  ").append(s + 1).append(' ').append(OP_NAMES[call[0]]);
+			if (call[0] == PLACE) {
+				buff.append(" piece ").append(call[1]).append(" rotation ").append(call[2])
+					.append(" at ").append(call[3]).append(", ").append(call[4])
+					.append(" -> ").append(call[5]);
+			} else if (call[0] == CLEAR) {
+				buff.append(" -> ").append(call[5]);
+			} else if (call[0] == LOAD) {
+				buff.append(' ').append(call[5]).append(" rows");
+			}
+			buff.append('\n');
+		}
+		return new Divergence(buff.toString());
+	}
+
+	/**
+	 Returns the number of calls made so far.
+	*/
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 Returns the number of places made.
+	*/
+	public long getPlaces() {
+		return places;
+	}
+
+	/**
+	 Returns the number of places that returned the given PLACE_ code.
+	*/
+	public long getPlaces(int result) {
+		return placeResults[result];
+	}
+
+	/**
+	 Returns the total rows cleared by clearRows().
+	*/
+	public long getRowsCleared() {
+		return rowsCleared;
+	}
+
+	/**
+	 Returns the number of undo() calls.
+	*/
+	public long getUndos() {
+		return undos;
+	}
+
+	/**
+	 Returns how many times the boards filled up and were emptied, or
+	 loaded with rows full but for a well.
+	*/
+	public long getResets() {
+		return resets;
+	}
+
+
+	/**
+	 Board itself, reset in place with Board.reset() and loaded with
+	 copyFrom(), so its optimizations are checked against the original.
+	*/
+	public static final Factory BOARD = new Factory() {
+		public String getName() {
+			return "Board";
+		}
+
+		public Target newBoard(final int width, final int height) {
+			return new Target() {
+				final Board board = new Board(width, height);
+				public int place(Piece piece, int x, int y) { return board.place(piece, x, y); }
+				public int clearRows() { return board.clearRows(); }
+				public void undo() { board.undo(); }
+				public void commit() { board.commit(); }
+				public void reset() { board.reset(); }
+				public void load(Board from) { board.copyFrom(from); }
+				public int getMaxHeight() { return board.getMaxHeight(); }
+				public int getColumnHeight(int x) { return board.getColumnHeight(x); }
+				public int getRowWidth(int y) { return board.getRowWidth(y); }
+				public boolean getGrid(int x, int y) { return board.getGrid(x, y); }
+			};
+		}
+	};
+
+	/**
+	 ChunkedBoard, replaced by a new one when reset or loaded.
+	*/
+	public static final Factory CHUNKED = new Factory() {
+		public String getName() {
+			return "ChunkedBoard";
+		}
+
+		public Target newBoard(final int width, final int height) {
+			return new Target() {
+				ChunkedBoard board = new ChunkedBoard(width, height);
+				public int place(Piece piece, int x, int y) { return board.place(piece, x, y); }
+				public int clearRows() { return board.clearRows(); }
+				public void undo() { board.undo(); }
+				public void commit() { board.commit(); }
+				public void reset() { board = new ChunkedBoard(width, height); }
+				public void load(Board from) { board = new ChunkedBoard(from); }
+				public int getMaxHeight() { return board.getMaxHeight(); }
+				public int getColumnHeight(int x) { return board.getColumnHeight(x); }
+				public int getRowWidth(int y) { return board.getRowWidth(y); }
+				public boolean getGrid(int x, int y) { return board.getGrid(x, y); }
+			};
+		}
+	};
+
+	/**
+	 CompactBoard, replaced by a new one when reset or loaded.
+	*/
+	public static final Factory COMPACT = new Factory() {
+		public String getName() {
+			return "CompactBoard";
+		}
+
+		public Target newBoard(final int width, final int height) {
+			return new Target() {
+				CompactBoard board = new CompactBoard(width, height);
+				public int place(Piece piece, int x, int y) { return board.place(piece, x, y); }
+				public int clearRows() { return board.clearRows(); }
+				public void undo() { board.undo(); }
+				public void commit() { board.commit(); }
+				public void reset() { board = new CompactBoard(width, height); }
+				public void load(Board from) { board = new CompactBoard(from); }
+				public int getMaxHeight() { return board.getMaxHeight(); }
+				public int getColumnHeight(int x) { return board.getColumnHeight(x); }
+				public int getRowWidth(int y) { return board.getRowWidth(y); }
+				public boolean getGrid(int x, int y) { return board.getGrid(x, y); }
+			};
+		}
+	};
+
+	/**
+	 A view into a BoardArena of a few slots. When reset or loaded, the
+	 next slot is emptied with BoardArena.reset() or filled with
+	 BoardArena.set() and the view moved to it, so the slots are reused
+	 and their old contents must not show through.
+	*/
+	public static final Factory ARENA = new Factory() {
+		private static final int SLOTS = 3;
+
+		public String getName() {
+			return "BoardArena";
+		}
+
+		public Target newBoard(final int width, final int height) {
+			return new Target() {
+				final BoardArena arena = new BoardArena(width, height, SLOTS);
+				final CompactBoard board = arena.view(0);
+				int slot;
+				public int place(Piece piece, int x, int y) { return board.place(piece, x, y); }
+				public int clearRows() { return board.clearRows(); }
+				public void undo() { board.undo(); }
+				public void commit() { board.commit(); }
+				public void reset() {
+					slot = (slot + 1) % SLOTS;
+					arena.reset(slot);
+					arena.moveView(board, slot);
+				}
+				public void load(Board from) {
+					slot = (slot + 1) % SLOTS;
+					arena.set(slot, from);
+					arena.moveView(board, slot);
+				}
+				public int getMaxHeight() { return board.getMaxHeight(); }
+				public int getColumnHeight(int x) { return board.getColumnHeight(x); }
+				public int getRowWidth(int y) { return board.getRowWidth(y); }
+				public boolean getGrid(int x, int y) { return board.getGrid(x, y); }
+			};
+		}
+	};
+
+	/**
+	 Every implementation fuzzed by main().
+	*/
+	public static final Factory[] FACTORIES = {BOARD, CHUNKED, COMPACT, ARENA};
+
+	/**
+	 Board sizes fuzzed by main(): standard, the widest a CompactBoard
+	 takes, and tall enough for several ChunkedBoard chunks.
+	*/
+	public static final int[][] SIZES = {{10, 24}, {64, 40}, {6, 100}};
+
+	public static void main(String[] args) throws InterruptedException {
+		final long steps = (args.length > 0) ? Long.parseLong(args[0]) : 1000000;
+		final long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+		System.out.println("steps " + steps + " seed " + seed);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (final Factory factory: FACTORIES) {
+			for (final int[] size: SIZES) {
+				results.add(executor.submit(new Callable<String>() {
+					public String call() {
+						BoardFuzzer fuzzer = new BoardFuzzer(factory, size[0], size[1], seed);
+						long start = System.nanoTime();
+						fuzzer.run(steps);
+						double seconds = (System.nanoTime() - start) / 1e9;
+						return String.format("%-12s %3dx%-3d ok: %d places (%d filled a row, %d out of bounds, %d bad),"
+							+ " %d rows cleared, %d undos, %d resets, %.1f s",
+							factory.getName(), size[0], size[1], fuzzer.getPlaces(),
+							fuzzer.getPlaces(Board.PLACE_ROW_FILLED), fuzzer.getPlaces(Board.PLACE_OUT_BOUNDS),
+							fuzzer.getPlaces(Board.PLACE_BAD), fuzzer.getRowsCleared(), fuzzer.getUndos(),
+							fuzzer.getResets(), seconds);
+					}
+				}));
+			}
+		}
+		boolean failed = false;
+		for (Future<String> result: results) {
+			try {
+				System.out.println(result.get());
+			} catch (ExecutionException e) {
+				System.out.println(e.getCause().getMessage());
+				failed = true;
+			}
+		}
+		executor.shutdown();
+		if (failed) System.exit(1);
+	}
+}
@@ -0,0 +1,142 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for BoardFuzzer: the boards agree with ReferenceBoard, and boards
+ that bend its rules are caught.
+ */
+public class BoardFuzzerTest {
+	private static final int STEPS = 5000;
+
+	@Test
+	public void testBoardsAgree() {
+		for (BoardFuzzer.Factory factory: BoardFuzzer.FACTORIES) {
+			for (int[] size: BoardFuzzer.SIZES) {
+				BoardFuzzer fuzzer = new BoardFuzzer(factory, size[0], size[1], size[0] + size[1]);
+				fuzzer.run(STEPS);
+				assertEquals(STEPS, fuzzer.getSteps());
+			}
+		}
+	}
+
+	// The sequences cover every place() result, row clearing and refills.
+	@Test
+	public void testCoverage() {
+		BoardFuzzer fuzzer = new BoardFuzzer(BoardFuzzer.BOARD, 10, 24, 1);
+		fuzzer.run(4 * STEPS);
+		for (int result = Board.PLACE_OK; result <= Board.PLACE_BAD; result++) {
+			assertTrue(fuzzer.getPlaces(result) > 0);
+		}
+		assertTrue(fuzzer.getRowsCleared() > 0);
+		assertTrue(fuzzer.getUndos() > 0);
+		assertTrue(fuzzer.getResets() > 0);
+	}
+
+	// A board whose undo() does nothing after clearRows().
+	@Test
+	public void testCatchesUndoAfterClear() {
+		BoardFuzzer.Factory broken = new BrokenBoard() {
+			private boolean cleared;
+			public int clearRows() {
+				int rows = super.clearRows();
+				cleared = rows > 0;
+				return rows;
+			}
+			public void undo() {
+				if (!cleared) super.undo();
+				cleared = false;
+			}
+		};
+		assertDiverges(broken, "undo");
+	}
+
+	// A board that rolls a failed place() back straight away, rather than
+	// leaving the blocks placed before the failure until undo().
+	@Test
+	public void testCatchesPartialPlace() {
+		BoardFuzzer.Factory broken = new BrokenBoard() {
+			public int place(Piece piece, int x, int y) {
+				int result = super.place(piece, x, y);
+				if (result >= Board.PLACE_OUT_BOUNDS) {
+					super.undo();
+					super.place(pieces[Piece.STICK], -1, -1);	// uncommitted again, placing nothing
+				}
+				return result;
+			}
+		};
+		assertDiverges(broken, "place");
+	}
+
+	private static void assertDiverges(BoardFuzzer.Factory broken, String lastCall) {
+		BoardFuzzer fuzzer = new BoardFuzzer(broken, 10, 24, 7);
+		try {
+			fuzzer.run(20 * STEPS);
+			fail("no divergence found");
+		} catch (BoardFuzzer.Divergence expected) {
+			String message = expected.getMessage();
+			assertTrue(message, message.startsWith("broken 10x24 seed 7 step " + fuzzer.getSteps()));
+			String[] lines = message.split("\n");
+			assertTrue(message, lines[lines.length - 1].contains(lastCall));
+		}
+	}
+
+	/*
+	 A Board as a fuzzing target, for tests to break in some way.
+	 */
+	private static class BrokenBoard implements BoardFuzzer.Factory, BoardFuzzer.Target {
+		protected Piece[] pieces = Piece.getPieces();
+		private Board board;
+
+		public String getName() {
+			return "broken";
+		}
+
+		public BoardFuzzer.Target newBoard(int width, int height) {
+			board = new Board(width, height);
+			return this;
+		}
+
+		public int place(Piece piece, int x, int y) {
+			return board.place(piece, x, y);
+		}
+
+		public int clearRows() {
+			return board.clearRows();
+		}
+
+		public void undo() {
+			board.undo();
+		}
+
+		public void commit() {
+			board.commit();
+		}
+
+		public void reset() {
+			board.reset();
+		}
+
+		public void load(Board from) {
+			board.copyFrom(from);
+		}
+
+		public int getMaxHeight() {
+			return board.getMaxHeight();
+		}
+
+		public int getColumnHeight(int x) {
+			return board.getColumnHeight(x);
+		}
+
+		public int getRowWidth(int y) {
+			return board.getRowWidth(y);
+		}
+
+		public boolean getGrid(int x, int y) {
+			return board.getGrid(x, y);
+		}
+	}
+}
@@ -7,6 +7,7 @@ import org.junit.*;
 public class BoardTest {
 	Board b, b2;
 	Piece pyr1, pyr2, pyr3, pyr4, s, sRotated, stick;
+	boolean debug;
 
 	// This shows how to build things in setUp() to re-use
 	// across tests.
@@ -16,6 +17,8 @@ public class BoardTest {
 	// ready to be used by tests.
 	@Before
 	public void setUp() throws Exception {
+		debug = Board.DEBUG;
+		Board.DEBUG = true;	// sanityCheck() after every change
 		b = new Board(3, 6);
 		b2 = new Board(3, 6);
 		
@@ -32,6 +35,11 @@ public class BoardTest {
 		b.place(pyr1, 0, 0);
 	}
 	
+	@After
+	public void tearDown() {
+		Board.DEBUG = debug;
+	}
+	
 	// Check the basic width/height/max after the one placement
 	@Test
 	public void testSample1() {
@@ -232,6 +240,112 @@ public class BoardTest {
 		}
 
 		
+		// Test savepoint() and rollback() across several commits.
+		@Test
+		public void testSavepoint() {
+			b.commit();
+			b.savepoint();
+			b.place(pyr2, 1, 1);
+			b.clearRows();
+			b.commit();
+			b.savepoint();
+			b.place(stick, 0, 0);
+			b.commit();
+			assertEquals(4, b.getColumnHeight(0));
+			
+			b.rollback();
+			assertEquals(0, b.getColumnHeight(0));
+			assertEquals(3, b.getMaxHeight());
+			b.releaseSavepoint();
+			
+			b.rollback();
+			assertEquals(1, b.getColumnHeight(0));
+			assertEquals(2, b.getColumnHeight(1));
+			assertEquals(2, b.getMaxHeight());
+			assertEquals(3, b.getRowWidth(0));
+			assertEquals(1, b.getRowWidth(1));
+			assertEquals(0, b.getRowWidth(2));
+			assertEquals(false, b.getGrid(2, 1));
+			b.releaseSavepoint();
+		}
+
+		
+		// Test copyFrom() into a board that already has blocks in it.
+		@Test
+		public void testCopyFrom() {
+			b2.place(stick, 2, 0);
+			b2.commit();
+			b2.place(s, 0, 4);
+			b2.copyFrom(b);
+			assertEquals(1, b2.getColumnHeight(0));
+			assertEquals(2, b2.getColumnHeight(1));
+			assertEquals(1, b2.getColumnHeight(2));
+			assertEquals(2, b2.getMaxHeight());
+			assertEquals(3, b2.getRowWidth(0));
+			assertEquals(1, b2.getRowWidth(1));
+			assertEquals(0, b2.getRowWidth(3));
+			assertEquals(false, b2.getGrid(2, 3));
+			assertEquals(b.toString(), b2.toString());
+			
+			// nothing to undo after a copy
+			b2.undo();
+			assertEquals(b.toString(), b2.toString());
+			assertEquals(Board.PLACE_OK, b2.place(pyr2, 1, 1));
+		}
+
+		
+		// reset() empties a board, even one left uncommitted mid-move.
+		@Test
+		public void testReset() {
+			long version = b.getVersion();
+			b.reset();
+			assertEquals(0, b.getMaxHeight());
+			assertEquals(0, b.getColumnHeight(1));
+			assertEquals(0, b.getRowWidth(0));
+			assertEquals(b2.toString(), b.toString());
+			assertTrue(b.getVersion() != version);
+			
+			// nothing to undo, and ready for a new game
+			b.undo();
+			assertEquals(b2.toString(), b.toString());
+			assertEquals(Board.PLACE_ROW_FILLED, b.place(pyr1, 0, 0));
+			assertEquals(1, b.clearRows());
+			b.commit();
+			assertEquals(2, b.getColumnHeight(1) + b.getMaxHeight());
+		}
+
+		
+		// dropHeights() agrees with dropHeight() for every column, piece and rotation
+		@Test
+		public void testDropHeights() {
+			FastRandom random = new FastRandom(8);
+			Piece[] pieces = Piece.getPieces();
+			int[] ys = new int[70];
+			for (int round = 0; round < 200; round++) {
+				Board board = new Board(1 + random.nextInt(20), 30);
+				for (int i = random.nextInt(20); i > 0; i--) {
+					Piece piece = pieces[random.nextInt(pieces.length)];
+					if (piece.getWidth() > board.getWidth()) continue;
+					int x = random.nextInt(board.getWidth() - piece.getWidth() + 1);
+					int y = board.dropHeight(piece, x);
+					if (y + piece.getHeight() > board.getHeight()) break;
+					board.place(piece, x, y);
+					board.commit();
+				}
+				for (Piece root: pieces) {
+					Piece piece = root;
+					do {
+						int count = board.dropHeights(piece, ys, 3);
+						assertEquals(Math.max(0, board.getWidth() - piece.getWidth() + 1), count);
+						for (int x = 0; x < count; x++) {
+							assertEquals(board.dropHeight(piece, x), ys[3 + x]);
+						}
+						piece = piece.fastRotation();
+					} while (piece != root);
+				}
+			}
+		}
+		
 	// Make  more tests, by putting together longer series of 
 	// place, clearRows, undo, place ... checking a few col/row/max
 	// numbers that the board looks right after the operations.
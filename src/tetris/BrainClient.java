@@ -0,0 +1,140 @@
+// BrainClient.java
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ A brain that asks a BrainServer for its moves, over one connection
+ in either the binary or the JSON protocol. Not safe for use by more
+ than one thread at a time; give each thread its own client.
+ Only works with the standard pieces and boards up to 64 wide.
+*/
+public class BrainClient implements Brain {
+	private Socket socket;
+	private boolean json;
+
+	private DataInputStream in;
+	private DataOutputStream out;
+	private BufferedReader jsonIn;
+	private Writer jsonOut;
+	private Map<String, List<String>> fields = new HashMap<String, List<String>>();
+	private long[] rows = new long[0];
+	private BoardCodec codec = new BoardCodec();
+	private ByteBuffer frame = ByteBuffer.allocate(0);
+
+	/**
+	 Connects to the server on the given loopback port, speaking JSON
+	 if json is true and binary otherwise.
+	*/
+	public BrainClient(int port, boolean json) throws IOException {
+		this.json = json;
+		socket = new Socket("127.0.0.1", port);
+		socket.setTcpNoDelay(true);
+		if (json) {
+			jsonIn = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			jsonOut = new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream()), "UTF-8");
+		} else {
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+	}
+
+	/**
+	 Closes the connection.
+	*/
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	/**
+	 Returns the server's best move, or null if there is no play.
+	 See the Brain interface for details. A failed request throws
+	 RuntimeException.
+	*/
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		board.commit();
+		if (piece.getIndex() < 0) throw new IllegalArgumentException("not a standard piece");
+		if (move == null) move = new Brain.Move();
+		try {
+			boolean found = json
+				? requestJson(board, piece, limitHeight, move)
+				: requestBinary(board, piece, limitHeight, move);
+			return found ? move : null;
+		} catch (IOException e) {
+			throw new RuntimeException("brain server failed", e);
+		}
+	}
+
+	/**
+	 * Makes one binary request, filling in the move.
+	 * @return true if the server found a move
+	 */
+	private boolean requestBinary(Board board, Piece piece, int limitHeight, Brain.Move move) throws IOException {
+		int size = BoardCodec.encodedSize(board) + 2;
+		if (frame.capacity() < size) frame = ByteBuffer.allocate(size);
+		frame.clear();
+		codec.encode(board, piece, 0, 0, frame);
+		frame.putShort((short) limitHeight);
+		out.write(frame.array(), 0, frame.position());
+		out.flush();
+
+		int status = in.readByte();
+		int rotation = in.readByte();
+		move.x = in.readShort();
+		move.y = in.readShort();
+		move.score = in.readDouble();
+		if (status == BrainServer.STATUS_ERROR) throw new RuntimeException("brain server error");
+		move.piece = Piece.getPiece(piece.getIndex(), rotation);
+		return status == BrainServer.STATUS_MOVE;
+	}
+
+	/**
+	 * Makes one JSON request, filling in the move.
+	 * @return true if the server found a move
+	 */
+	private boolean requestJson(Board board, Piece piece, int limitHeight, Brain.Move move) throws IOException {
+		if (rows.length < board.getHeight()) rows = new long[board.getHeight()];
+		int rowCount = board.getBitRows(rows, 0);
+		int index = piece.getIndex();
+		StringBuilder line = new StringBuilder();
+		line.append("{\"piece\":").append(index);
+		line.append(",\"rotation\":").append(piece.getRotation());
+		line.append(",\"width\":").append(board.getWidth());
+		line.append(",\"height\":").append(board.getHeight());
+		line.append(",\"limit\":").append(limitHeight);
+		line.append(",\"rows\":[");
+		for (int i = 0; i < rowCount; i++) {
+			if (i > 0) line.append(',');
+			line.append(rows[i]);
+		}
+		line.append("]}\n");
+		jsonOut.write(line.toString());
+		jsonOut.flush();
+
+		String reply = jsonIn.readLine();
+		if (reply == null) throw new IOException("connection closed");
+		BrainServer.parseJson(reply, fields);
+		if (fields.containsKey("error")) {
+			throw new RuntimeException("brain server error: " + fields.get("error").get(0));
+		}
+		if (!"true".equals(fields.get("found").get(0))) return false;
+		move.x = BrainServer.jsonInt(fields, "x", 0);
+		move.y = BrainServer.jsonInt(fields, "y", 0);
+		move.score = Double.parseDouble(fields.get("score").get(0));
+		move.piece = Piece.getPiece(index, BrainServer.jsonInt(fields, "rotation", 0));
+		return true;
+	}
+}
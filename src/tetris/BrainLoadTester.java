@@ -0,0 +1,114 @@
+// BrainLoadTester.java
+package tetris;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ Load-tests a BrainServer on loopback. Each client thread opens its own
+ connection and sends requests back to back, each for a board from a
+ seeded headless game, and times every round trip. Prints the p50 and
+ p99 latency, the throughput, and how well the server batched.
+
+ <p>Run with:
+ <pre>
+ java tetris.BrainLoadTester [clients] [requests per client] [binary|json] [port]
+ </pre>
+ Without a port it starts its own server with DefaultBrain.
+*/
+public class BrainLoadTester {
+	// distinct boards each client cycles through
+	private static final int BOARDS = 500;
+
+	public static void main(String[] args) throws Exception {
+		int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		final int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		final boolean json = (args.length > 2) && args[2].equals("json");
+
+		BrainServer server = null;
+		final int port;
+		if (args.length > 3) {
+			port = Integer.parseInt(args[3]);
+		} else {
+			server = new BrainServer(new DefaultBrain(), 0);
+			server.start();
+			port = server.getPort();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		Future<?>[] results = new Future<?>[clients];
+		final long[][] latencies = new long[clients][];
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			results[c] = executor.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					latencies[client] = run(port, json, requests, client);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<?> result: results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long[] all = new long[clients * requests];
+		for (int c = 0; c < clients; c++) {
+			System.arraycopy(latencies[c], 0, all, c * requests, requests);
+		}
+		Arrays.sort(all);
+		System.out.println(clients + " clients x " + requests + " requests, " + (json ? "json" : "binary"));
+		System.out.printf("p50 %.1f us, p99 %.1f us, %.0f requests/s%n",
+			percentile(all, 0.50) / 1000.0, percentile(all, 0.99) / 1000.0,
+			all.length / (elapsed / 1e9));
+		if (server != null) {
+			System.out.printf("%.1f requests per batch%n",
+				server.getRequestCount() / (double) server.getBatchCount());
+			server.close();
+		}
+	}
+
+	/**
+	 * Runs one client: a connection, a game's worth of boards, and the
+	 * requests, timed.
+	 * @return the latency of each request in nanoseconds
+	 */
+	private static long[] run(int port, boolean json, int requests, int client) throws IOException {
+		FastRandom random = new FastRandom(client);
+		Board[] boards = TetrisGame.samplePositions(BOARDS, random.nextLong());
+		Piece[] pieces = new Piece[BOARDS];
+		Piece[] all = Piece.getPieces();
+		for (int i = 0; i < BOARDS; i++) {
+			pieces[i] = all[random.nextInt(all.length)];
+		}
+
+		BrainClient brain = new BrainClient(port, json);
+		Brain.Move move = new Brain.Move();
+		int limitHeight = TetrisGame.HEIGHT + TetrisGame.TOP_SPACE;
+		long[] latencies = new long[requests];
+		try {
+			for (int i = 0; i < requests; i++) {
+				long start = System.nanoTime();
+				brain.bestMove(boards[i % BOARDS], pieces[i % BOARDS], limitHeight, move);
+				latencies[i] = System.nanoTime() - start;
+			}
+		} finally {
+			brain.close();
+		}
+		return latencies;
+	}
+
+	private static long percentile(long[] sorted, double fraction) {
+		int i = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+}
@@ -0,0 +1,120 @@
+// BrainPlanner.java
+package tetris;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ Caches a brain's plan for the piece currently in play.
+ A plan is keyed by the board object, its version and the piece
+ (any rotation of it), so a piece falling row by row through an
+ unchanged board is searched only once. The search itself runs on
+ the given executor against a snapshot of the board, so the caller
+ never waits on the brain.
+*/
+public class BrainPlanner {
+	private Brain brain;
+	private ExecutorService executor;
+
+	// key of the cached plan
+	private Board planBoard;
+	private long planVersion;
+	private Piece planPiece;
+	private int planLimit;
+
+	private Future<Brain.Move> plan;
+	private int searchCount;
+
+	/**
+	 Creates a planner that runs the given brain on the given executor.
+	*/
+	public BrainPlanner(Brain brain, ExecutorService executor) {
+		this.brain = brain;
+		this.executor = executor;
+	}
+
+
+	/**
+	 Returns the brain's move for the piece on the given board, or null
+	 if it is still being computed or no play is possible. Starts a new
+	 search only if the board or piece differ from the cached plan.
+	 The board should be in the committed state, without the piece in it.
+	*/
+	public Brain.Move getPlan(Board board, Piece piece, int limitHeight) {
+		if (!isCached(board, piece, limitHeight)) {
+			requestPlan(board, piece, limitHeight);
+		}
+		if (!plan.isDone()) return null;
+		try {
+			return plan.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("brain failed", e.getCause());
+		}
+	}
+
+
+	/**
+	 Discards the cached plan, cancelling it if it is still running.
+	 Called when the piece lands.
+	*/
+	public void invalidate() {
+		if (plan != null) {
+			plan.cancel(true);
+			plan = null;
+		}
+		planBoard = null;
+		planPiece = null;
+	}
+
+
+	/**
+	 Returns how many times the brain has been asked to search.
+	*/
+	public int getSearchCount() {
+		return searchCount;
+	}
+
+
+	private boolean isCached(Board board, Piece piece, int limitHeight) {
+		return plan != null && planBoard == board && planVersion == board.getVersion()
+			&& isSameRotationCycle(planPiece, piece) && planLimit == limitHeight;
+	}
+
+	/**
+	 Returns true if the piece in play is the planned piece or one of its
+	 fast rotations, since the player rotating the falling piece does not
+	 change the best move.
+	*/
+	private boolean isSameRotationCycle(Piece planned, Piece piece) {
+		Piece current = planned;
+		do {
+			if (current == piece) return true;
+			current = current.fastRotation();
+		} while (current != null && current != planned);
+		return false;
+	}
+
+	/**
+	 Submits a search for the piece on a snapshot of the committed board,
+	 replacing any older plan.
+	*/
+	private void requestPlan(Board board, final Piece piece, final int limitHeight) {
+		invalidate();
+		final Board snapshot = new Board(board);
+		planBoard = board;
+		planVersion = board.getVersion();
+		planPiece = piece;
+		planLimit = limitHeight;
+		searchCount++;
+		plan = executor.submit(new Callable<Brain.Move>() {
+			public Brain.Move call() {
+				return brain.bestMove(snapshot, piece, limitHeight, null);
+			}
+		});
+	}
+}
@@ -0,0 +1,95 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+
+/*
+ Unit test for BrainPlanner -- checks that a falling piece is
+ only searched once per board state.
+ */
+public class BrainPlannerTest {
+	private Board board;
+	private Piece[] pieces;
+	private CountingBrain brain;
+	private ExecutorService executor;
+	private BrainPlanner planner;
+
+	// DefaultBrain that counts how many searches it runs.
+	private static class CountingBrain extends DefaultBrain {
+		int calls;
+		public synchronized Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+			calls++;
+			return super.bestMove(board, piece, limitHeight, move);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		board = new Board(10, 24);
+		pieces = Piece.getPieces();
+		brain = new CountingBrain();
+		executor = Executors.newSingleThreadExecutor();
+		planner = new BrainPlanner(brain, executor);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	// Waits for the plan the way the tick loop would, one poll per row.
+	private Brain.Move fall(Piece piece) throws Exception {
+		Brain.Move move = null;
+		int y = board.getHeight() - piece.getHeight();
+		while (y >= board.dropHeight(piece, 4)) {
+			move = planner.getPlan(board, piece, 20);
+			if (move == null) Thread.sleep(1);
+			board.place(piece, 4, y);
+			board.undo();
+			y--;
+		}
+		while (move == null) {
+			move = planner.getPlan(board, piece, 20);
+		}
+		return move;
+	}
+
+	// A piece falling the full board is searched once, not once per row.
+	@Test
+	public void testOneSearchPerPiece() throws Exception {
+		Brain.Move move = fall(pieces[Piece.PYRAMID]);
+		assertNotNull(move);
+		assertEquals(1, planner.getSearchCount());
+		assertEquals(1, brain.calls);
+	}
+
+	// Rotating the falling piece keeps the same plan.
+	@Test
+	public void testRotationKeepsPlan() throws Exception {
+		Piece piece = pieces[Piece.L1];
+		fall(piece);
+		planner.getPlan(board, piece.fastRotation(), 20);
+		planner.getPlan(board, piece.fastRotation().fastRotation(), 20);
+		assertEquals(1, planner.getSearchCount());
+	}
+
+	// Landing the piece changes the board version, so the next piece is planned again.
+	@Test
+	public void testLandingInvalidates() throws Exception {
+		Piece piece = pieces[Piece.SQUARE];
+		Brain.Move move = fall(piece);
+		board.place(move.piece, move.x, move.y);
+		board.clearRows();
+		board.commit();
+		fall(piece);
+		assertEquals(2, planner.getSearchCount());
+
+		planner.invalidate();
+		fall(piece);
+		assertEquals(3, planner.getSearchCount());
+	}
+}
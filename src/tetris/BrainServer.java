@@ -0,0 +1,593 @@
+// BrainServer.java
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ Serves a brain's best move over a loopback socket, so other programs can
+ use it as a bot. Each request is a board, a piece and a limit height,
+ and the answer is the move bestMove() would give.
+
+ <p>Each connection gets its own thread, which decodes requests and hands
+ them to a single dispatcher thread. The dispatcher takes every request
+ waiting at that moment and answers them together, with one bestMoves()
+ call per limit height (split across cores with a BatchRunner when the
+ brain is thread-safe, one board at a time on the dispatcher otherwise),
+ so a burst of concurrent requests costs a few batched calls instead of
+ one call each.
+
+ <p>A connection speaks one of two protocols, chosen by its first byte.
+ If it is '{' the connection speaks JSON, one object per line:
+ <pre>
+ {"piece":3,"rotation":0,"width":10,"height":24,"limit":24,"rows":[511,3]}
+ {"found":true,"x":4,"y":1,"rotation":1,"score":28.5}
+ </pre>
+ where rows are the board's bit rows from the bottom, as from
+ Board.getBitRows(), and piece is an index into Piece.getPieces() turned
+ rotation times by fastRotation(). "limit" defaults to the height.
+ Otherwise the connection speaks binary, big-endian, one frame each way:
+ <pre>
+ request:  the board and piece as written by BoardCodec, short limit
+ response: byte status, byte rotation, short x, short y, double score
+ </pre>
+ A bad binary request gets an ERROR response and the connection is closed.
+
+ <p>Run with:
+ <pre>
+ java tetris.BrainServer [port] [weights file]
+ </pre>
+ to serve DefaultBrain, or a WeightedBrain loaded from the weights file.
+*/
+public class BrainServer {
+	public static final int DEFAULT_PORT = 7423;
+
+	// binary response status
+	public static final int STATUS_MOVE = 0;
+	public static final int STATUS_NO_MOVE = 1;
+	public static final int STATUS_ERROR = 2;
+
+	// most requests answered in one batch
+	public static final int MAX_BATCH = 256;
+	// largest board accepted, to bound what a request can allocate
+	public static final int MAX_HEIGHT = 1024;
+
+	private Brain brain;
+	private BatchRunner runner;
+	private ExecutorService workers;
+	private ServerSocket server;
+	private ExecutorService connections;
+	private Set<Socket> sockets = new HashSet<Socket>();
+	private Thread acceptor;
+	private Thread dispatcher;
+	private LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+	private volatile boolean running;
+
+	// dispatcher statistics
+	private volatile long requestCount;
+	private volatile long batchCount;
+
+	/**
+	 Creates a server for the brain on the given loopback port (0 picks a
+	 free one). Call start() to begin serving.
+	*/
+	public BrainServer(Brain brain, int port) throws IOException {
+		this.brain = brain;
+		server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		ThreadFactory daemons = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "brain-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		connections = Executors.newCachedThreadPool(daemons);
+		if (brain instanceof BatchBrain && ((BatchBrain) brain).isThreadSafe()) {
+			int cores = Runtime.getRuntime().availableProcessors();
+			workers = Executors.newFixedThreadPool(cores, daemons);
+			runner = new BatchRunner((BatchBrain) brain, workers, cores);
+		}
+	}
+
+	/**
+	 Returns the port the server is listening on.
+	*/
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 Returns how many requests have been answered.
+	*/
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 Returns how many batches the requests were answered in.
+	*/
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 Starts accepting connections and answering requests.
+	*/
+	public void start() {
+		running = true;
+		dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "brain-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "brain-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 Stops the server and closes every connection.
+	*/
+	public void close() {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException ignored) {
+		}
+		synchronized (sockets) {
+			for (Socket socket: sockets) {
+				closeQuietly(socket);
+			}
+		}
+		connections.shutdownNow();
+		if (workers != null) workers.shutdownNow();
+		if (dispatcher != null) dispatcher.interrupt();
+	}
+
+
+	/**
+	 A request waiting for the dispatcher. The connection thread that
+	 made it waits on done, then reads the answer from move and found.
+	*/
+	private static class Request {
+		Board board;
+		Piece piece;
+		int limitHeight;
+		Brain.Move move = new Brain.Move();
+		boolean found;
+		boolean failed;
+		CountDownLatch done;
+	}
+
+	/**
+	 * Hands the request to the dispatcher and waits for the answer.
+	 */
+	private void submit(Request request) throws InterruptedException {
+		request.done = new CountDownLatch(1);
+		request.failed = false;
+		queue.put(request);
+		request.done.await();
+	}
+
+	/**
+	 * The dispatcher loop: waits for a request, takes every other request
+	 * already waiting too, and answers them all.
+	 */
+	private void dispatch() {
+		List<Request> batch = new ArrayList<Request>(MAX_BATCH);
+		Board[] boards = new Board[MAX_BATCH];
+		Piece[] pieces = new Piece[MAX_BATCH];
+		Brain.Move[] moves = new Brain.Move[MAX_BATCH];
+		Comparator<Request> byLimit = new Comparator<Request>() {
+			public int compare(Request a, Request b) {
+				return a.limitHeight - b.limitHeight;
+			}
+		};
+
+		while (running) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+			Collections.sort(batch, byLimit);
+
+			// one bestMoves() call per run of requests with the same limit
+			int start = 0;
+			while (start < batch.size()) {
+				int limitHeight = batch.get(start).limitHeight;
+				int count = 0;
+				while (start + count < batch.size() && batch.get(start + count).limitHeight == limitHeight) {
+					Request request = batch.get(start + count);
+					boards[count] = request.board;
+					pieces[count] = request.piece;
+					moves[count] = request.move;
+					count++;
+				}
+				try {
+					answer(boards, pieces, count, limitHeight, moves);
+					for (int i = 0; i < count; i++) {
+						batch.get(start + i).found = (moves[i].piece != null);
+					}
+				} catch (Exception e) {
+					// interrupted by close(), or the brain threw
+					for (int i = 0; i < count; i++) {
+						batch.get(start + i).failed = true;
+					}
+				}
+				start += count;
+			}
+
+			// count before waking the clients, so they see their batch counted
+			requestCount += batch.size();
+			batchCount++;
+			for (Request request: batch) {
+				request.done.countDown();
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Finds the moves for one run of the batch, in parallel if the brain
+	 * is a thread-safe BatchBrain and one at a time otherwise.
+	 */
+	private void answer(Board[] boards, Piece[] pieces, int count, int limitHeight,
+			Brain.Move[] moves) throws InterruptedException {
+		if (runner != null) {
+			runner.bestMoves(boards, pieces, count, limitHeight, moves);
+		} else {
+			BatchRunner.oneByOne(brain, boards, pieces, 0, count, limitHeight, moves);
+		}
+	}
+
+
+	/**
+	 * The acceptor loop: starts a thread for each new connection.
+	 */
+	private void accept() {
+		while (running) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				return;		// closed
+			}
+			synchronized (sockets) {
+				sockets.add(socket);
+			}
+			connections.execute(new Runnable() {
+				public void run() {
+					try {
+						serve(socket);
+					} catch (IOException e) {
+						// the client went away
+					} catch (InterruptedException e) {
+						// shutting down
+					} finally {
+						synchronized (sockets) {
+							sockets.remove(socket);
+						}
+						closeQuietly(socket);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Serves one connection until it closes, in whichever protocol its
+	 * first byte picks.
+	 */
+	private void serve(Socket socket) throws IOException, InterruptedException {
+		socket.setTcpNoDelay(true);
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+		in.mark(1);
+		int first = in.read();
+		if (first < 0) return;
+		in.reset();
+		if (first == '{') {
+			serveJson(in, out);
+		} else {
+			serveBinary(in, out);
+		}
+	}
+
+	/**
+	 * Serves binary frames. The board is reused from one request to the
+	 * next while its size stays the same.
+	 */
+	private void serveBinary(InputStream input, OutputStream output) throws IOException, InterruptedException {
+		DataInputStream in = new DataInputStream(input);
+		DataOutputStream out = new DataOutputStream(output);
+		Request request = new Request();
+		BoardCodec codec = new BoardCodec();
+		ByteBuffer frame = ByteBuffer.allocate(BoardCodec.encodedSize(TetrisGame.WIDTH,
+			TetrisGame.HEIGHT + TetrisGame.TOP_SPACE, TetrisGame.HEIGHT + TetrisGame.TOP_SPACE) + 2);
+		int largest = BoardCodec.encodedSize(64, MAX_HEIGHT, MAX_HEIGHT);
+
+		while (true) {
+			frame.clear();
+			try {
+				in.readFully(frame.array(), 0, BoardCodec.HEADER_SIZE);
+			} catch (EOFException e) {
+				return;
+			}
+			try {
+				// an empty board of any height encodes small, so check the height itself
+				int height = frame.getShort(2) & 0xFFFF;
+				if (height < 1 || height > MAX_HEIGHT) throw new IllegalArgumentException("bad height " + height);
+				int size = BoardCodec.recordSize(frame) + 2;
+				if (size > largest + 2) throw new IllegalArgumentException("board too big");
+				if (frame.capacity() < size) {
+					ByteBuffer bigger = ByteBuffer.allocate(size);
+					bigger.put(frame.array(), 0, BoardCodec.HEADER_SIZE);
+					frame = bigger;
+				}
+				in.readFully(frame.array(), BoardCodec.HEADER_SIZE, size - BoardCodec.HEADER_SIZE);
+				frame.position(0);
+				frame.limit(size);
+				request.board = codec.decode(frame, request.board);
+				request.piece = codec.getPiece();
+				if (request.piece == null) throw new IllegalArgumentException("no piece");
+				request.limitHeight = frame.getShort();
+			} catch (IllegalArgumentException e) {
+				writeBinaryResponse(out, STATUS_ERROR, 0, 0, 0, 0);
+				out.flush();
+				return;
+			}
+			submit(request);
+
+			if (request.failed) {
+				writeBinaryResponse(out, STATUS_ERROR, 0, 0, 0, 0);
+			} else if (!request.found) {
+				writeBinaryResponse(out, STATUS_NO_MOVE, 0, 0, 0, 0);
+			} else {
+				Brain.Move move = request.move;
+				writeBinaryResponse(out, STATUS_MOVE, move.piece.getRotation(), move.x, move.y, move.score);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Serves JSON lines. A bad request gets an error object and the
+	 * connection carries on.
+	 */
+	private void serveJson(InputStream input, OutputStream output) throws IOException, InterruptedException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		Writer out = new OutputStreamWriter(output, "UTF-8");
+		Request request = new Request();
+		Map<String, List<String>> fields = new HashMap<String, List<String>>();
+		long[] rows = new long[0];
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.trim().length() == 0) continue;
+			String reply;
+			try {
+				parseJson(line, fields);
+				int piece = jsonInt(fields, "piece", -1);
+				int rotation = jsonInt(fields, "rotation", 0);
+				int width = jsonInt(fields, "width", TetrisGame.WIDTH);
+				int height = jsonInt(fields, "height", TetrisGame.HEIGHT + TetrisGame.TOP_SPACE);
+				int limitHeight = jsonInt(fields, "limit", height);
+				List<String> rowList = fields.get("rows");
+				int rowCount = (rowList == null) ? 0 : rowList.size();
+				String error = checkRequest(piece, rotation, width, height, rowCount);
+				if (error != null) throw new IllegalArgumentException(error);
+
+				if (rows.length < rowCount) rows = new long[height];
+				for (int i = 0; i < rowCount; i++) {
+					rows[i] = Long.parseLong(rowList.get(i));
+				}
+				request.board = boardFor(request.board, width, height);
+				request.board.setBitRows(rows, 0, rowCount);
+				request.piece = Piece.getPiece(piece, rotation);
+				request.limitHeight = limitHeight;
+				submit(request);
+
+				if (request.failed) {
+					reply = "{\"error\":\"brain failed\"}";
+				} else if (!request.found) {
+					reply = "{\"found\":false}";
+				} else {
+					Brain.Move move = request.move;
+					reply = "{\"found\":true,\"x\":" + move.x + ",\"y\":" + move.y
+						+ ",\"rotation\":" + move.piece.getRotation() + ",\"score\":" + move.score + "}";
+				}
+			} catch (RuntimeException e) {
+				String message = String.valueOf(e.getMessage()).replace('"', '\'').replace('\\', '/');
+				reply = "{\"error\":\"" + message + "\"}";
+			}
+			out.write(reply);
+			out.write('\n');
+			out.flush();
+		}
+	}
+
+	/**
+	 * Returns what is wrong with a request's header, or null if it is fine.
+	 */
+	private static String checkRequest(int piece, int rotation, int width, int height, int rowCount) {
+		if (piece < 0 || piece >= Piece.getPieces().length) return "bad piece " + piece;
+		if (rotation < 0 || rotation > 3) return "bad rotation " + rotation;
+		if (width < 1 || width > 64) return "bad width " + width;
+		if (height < 1 || height > MAX_HEIGHT) return "bad height " + height;
+		if (rowCount < 0 || rowCount > height) return "bad row count " + rowCount;
+		return null;
+	}
+
+	/**
+	 * Returns the board if it is the right size, or a new one if not.
+	 */
+	private static Board boardFor(Board board, int width, int height) {
+		if (board != null && board.getWidth() == width && board.getHeight() == height) return board;
+		return new Board(width, height);
+	}
+
+
+	/**
+	 Writes one binary response frame.
+	*/
+	public static void writeBinaryResponse(DataOutputStream out, int status, int rotation,
+			int x, int y, double score) throws IOException {
+		out.writeByte(status);
+		out.writeByte(rotation);
+		out.writeShort(x);
+		out.writeShort(y);
+		out.writeDouble(score);
+	}
+
+	/**
+	 Parses a flat JSON object whose values are numbers, words (true,
+	 false, null), simple strings or arrays of those, into the map,
+	 each value as its list of tokens. Throws IllegalArgumentException
+	 on anything else. Enough for this protocol, not JSON in general.
+	*/
+	public static void parseJson(String line, Map<String, List<String>> fields) {
+		fields.clear();
+		int[] pos = {skipSpace(line, 0)};
+		expect(line, pos, '{');
+		if (peek(line, pos) == '}') return;
+		while (true) {
+			String key = jsonString(line, pos);
+			expect(line, pos, ':');
+			List<String> values = new ArrayList<String>();
+			if (peek(line, pos) == '[') {
+				next(line, pos);
+				if (peek(line, pos) == ']') {
+					next(line, pos);
+				} else {
+					while (true) {
+						values.add(jsonToken(line, pos));
+						char c = next(line, pos);
+						if (c == ']') break;
+						if (c != ',') throw new IllegalArgumentException("expected , or ] at " + pos[0]);
+					}
+				}
+			} else {
+				values.add(jsonToken(line, pos));
+			}
+			fields.put(key, values);
+			char c = next(line, pos);
+			if (c == '}') break;
+			if (c != ',') throw new IllegalArgumentException("expected , or } at " + pos[0]);
+		}
+	}
+
+	/**
+	 Returns the int value of the field, or the default if it is missing.
+	*/
+	public static int jsonInt(Map<String, List<String>> fields, String key, int missing) {
+		List<String> values = fields.get(key);
+		if (values == null || values.size() != 1) return missing;
+		try {
+			return Integer.parseInt(values.get(0));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad " + key);
+		}
+	}
+
+	private static String jsonToken(String line, int[] pos) {
+		if (peek(line, pos) == '"') return jsonString(line, pos);
+		int start = pos[0];
+		while (pos[0] < line.length() && ",]} \t".indexOf(line.charAt(pos[0])) < 0) {
+			pos[0]++;
+		}
+		if (pos[0] == start) throw new IllegalArgumentException("expected a value at " + start);
+		String token = line.substring(start, pos[0]);
+		pos[0] = skipSpace(line, pos[0]);
+		return token;
+	}
+
+	private static String jsonString(String line, int[] pos) {
+		expect(line, pos, '"');
+		int end = line.indexOf('"', pos[0]);
+		if (end < 0) throw new IllegalArgumentException("unterminated string");
+		String value = line.substring(pos[0], end);
+		if (value.indexOf('\\') >= 0) throw new IllegalArgumentException("escapes not supported");
+		pos[0] = skipSpace(line, end + 1);
+		return value;
+	}
+
+	private static void expect(String line, int[] pos, char c) {
+		if (next(line, pos) != c) throw new IllegalArgumentException("expected " + c + " at " + pos[0]);
+	}
+
+	private static char next(String line, int[] pos) {
+		char c = peek(line, pos);
+		pos[0] = skipSpace(line, pos[0] + 1);
+		return c;
+	}
+
+	private static char peek(String line, int[] pos) {
+		if (pos[0] >= line.length()) throw new IllegalArgumentException("unexpected end of line");
+		return line.charAt(pos[0]);
+	}
+
+	private static int skipSpace(String line, int i) {
+		while (i < line.length() && Character.isWhitespace(line.charAt(i))) i++;
+		return i;
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		Brain brain = (args.length > 1) ? WeightedBrain.load(args[1]) : new DefaultBrain();
+		BrainServer server = new BrainServer(brain, port);
+		server.start();
+		System.out.println("serving " + brain.getClass().getSimpleName() + " on 127.0.0.1:" + server.getPort());
+		while (true) {
+			try {
+				Thread.sleep(Long.MAX_VALUE);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		server.close();
+	}
+}
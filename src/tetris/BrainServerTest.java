@@ -0,0 +1,226 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.*;
+
+/*
+ Unit test for BrainServer and BrainClient, over loopback.
+ */
+public class BrainServerTest {
+	private static final int LIMIT = TetrisGame.HEIGHT + TetrisGame.TOP_SPACE;
+
+	private BrainServer server;
+	private ExecutorService executor;
+	private Board[] boards;
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new BrainServer(new DefaultBrain(), 0);
+		server.start();
+
+		boards = TetrisGame.samplePositions(100, 9);
+		pieces = new Piece[100];
+		Piece[] all = Piece.getPieces();
+		for (int i = 0; i < boards.length; i++) {
+			pieces[i] = all[i % all.length];
+			for (int turns = 0; turns < i % 4; turns++) {
+				pieces[i] = pieces[i].fastRotation();
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+		if (executor != null) executor.shutdownNow();
+	}
+
+	// Checks the client's answers against the brain run locally.
+	private void assertSameAsLocal(Brain client, int from, int to) {
+		DefaultBrain local = new DefaultBrain();
+		for (int i = from; i < to; i++) {
+			Brain.Move expected = local.bestMove(boards[i], pieces[i], LIMIT, null);
+			Brain.Move actual = client.bestMove(boards[i], pieces[i], LIMIT, null);
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.y, actual.y);
+			assertEquals(expected.score, actual.score, 1e-9);
+		}
+	}
+
+	@Test
+	public void testBinary() throws IOException {
+		BrainClient client = new BrainClient(server.getPort(), false);
+		assertSameAsLocal(client, 0, boards.length);
+		client.close();
+	}
+
+	@Test
+	public void testJson() throws IOException {
+		BrainClient client = new BrainClient(server.getPort(), true);
+		assertSameAsLocal(client, 0, boards.length);
+		client.close();
+	}
+
+	// With no room under the limit, there is no move.
+	@Test
+	public void testNoMove() throws IOException {
+		BrainClient client = new BrainClient(server.getPort(), false);
+		Board board = new Board(4, 8);
+		assertNull(client.bestMove(board, Piece.getPieces()[Piece.STICK], 0, null));
+		assertNotNull(client.bestMove(board, Piece.getPieces()[Piece.STICK], 8, null));
+		client.close();
+	}
+
+	// A brain that is not thread-safe is served one board at a time.
+	@Test
+	public void testNotThreadSafe() throws Exception {
+		server.close();
+		server = new BrainServer(new ExpectimaxBrain(null, Long.MAX_VALUE / 4, 1), 0);
+		server.start();
+		executor = Executors.newFixedThreadPool(4);
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int c = 0; c < 4; c++) {
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					ExpectimaxBrain local = new ExpectimaxBrain(null, Long.MAX_VALUE / 4, 1);
+					BrainClient client = new BrainClient(server.getPort(), false);
+					for (int i = 0; i < boards.length; i++) {
+						Brain.Move expected = local.bestMove(boards[i], pieces[i], LIMIT, null);
+						Brain.Move actual = client.bestMove(boards[i], pieces[i], LIMIT, null);
+						assertSame(expected.piece, actual.piece);
+						assertEquals(expected.x, actual.x);
+					}
+					client.close();
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> result: results) {
+			result.get();
+		}
+	}
+
+	// Many clients at once all get the right answers, in fewer batches than requests.
+	@Test
+	public void testConcurrentClients() throws Exception {
+		executor = Executors.newFixedThreadPool(8);
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int c = 0; c < 8; c++) {
+			final boolean json = (c % 2 == 1);
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					BrainClient client = new BrainClient(server.getPort(), json);
+					for (int round = 0; round < 5; round++) {
+						assertSameAsLocal(client, 0, boards.length);
+					}
+					client.close();
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> result: results) {
+			result.get();
+		}
+		assertEquals(8 * 5 * boards.length, server.getRequestCount());
+		assertTrue(server.getBatchCount() <= server.getRequestCount());
+	}
+
+	// A bad binary request gets an error and the connection is closed.
+	@Test
+	public void testBadBinaryRequest() throws IOException {
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		out.writeByte(BoardCodec.FORMAT);	// an empty 10 x 24 board...
+		out.writeByte(10);
+		out.writeShort(24);
+		out.writeShort(0);
+		out.writeByte(BoardCodec.NO_PIECE);	// ...but no piece to play
+		out.writeByte(0);
+		out.writeShort(0);
+		out.write(new byte[10]);
+		out.writeShort(24);
+		out.flush();
+		assertEquals(BrainServer.STATUS_ERROR, in.readByte());
+		in.skipBytes(13);
+		assertEquals(-1, in.read());
+		socket.close();
+	}
+
+	// A board taller than MAX_HEIGHT is refused from its header, however
+	// small it encodes, before the server reads or builds it.
+	@Test
+	public void testTooTallBinaryRequest() throws IOException {
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		out.writeByte(BoardCodec.FORMAT);	// an empty 64 x 65535 board
+		out.writeByte(64);
+		out.writeShort(65535);
+		out.writeShort(0);
+		out.writeByte(Piece.STICK);
+		out.writeByte(0);
+		out.writeShort(0);
+		out.flush();
+		assertEquals(BrainServer.STATUS_ERROR, in.readByte());
+		in.skipBytes(13);
+		assertEquals(-1, in.read());
+		socket.close();
+	}
+
+	// A bad JSON request gets an error object, and the connection carries on.
+	@Test
+	public void testBadJsonRequest() throws IOException {
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		BufferedReader in = new BufferedReader(
+			new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		Map<String, List<String>> fields = new HashMap<String, List<String>>();
+
+		out.write("{\"piece\":1,\"width\":4,\"height\":8,\"rows\":[32]}\n");	// block outside the board
+		out.write("{\"piece\":1,\"width\":4,\"height\":8,\"rows\":[7]}\n");
+		out.flush();
+		BrainServer.parseJson(in.readLine(), fields);
+		assertTrue(fields.containsKey("error"));
+		BrainServer.parseJson(in.readLine(), fields);
+		assertEquals("true", fields.get("found").get(0));
+		socket.close();
+	}
+
+	@Test
+	public void testParseJson() {
+		Map<String, List<String>> fields = new HashMap<String, List<String>>();
+		BrainServer.parseJson(" { \"a\" : 1 , \"b\":[ -2, 3 ],\"c\":[],\"d\":\"hi\" } ", fields);
+		assertEquals(1, BrainServer.jsonInt(fields, "a", 0));
+		assertEquals("-2", fields.get("b").get(0));
+		assertEquals("3", fields.get("b").get(1));
+		assertEquals(0, fields.get("c").size());
+		assertEquals("hi", fields.get("d").get(0));
+		assertEquals(7, BrainServer.jsonInt(fields, "missing", 7));
+		try {
+			BrainServer.parseJson("{\"a\":1", fields);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,442 @@
+// ChunkedBoard.java
+package tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ A Tetris board for very tall or very wide playfields that are mostly
+ empty. It has the same place/clearRows/undo/commit contract as Board,
+ but memory and the cost of each operation follow the occupied area
+ rather than the declared size.
+
+ <p>Rows are stored as bit masks, 64 columns to a long, in chunks of
+ CHUNK_ROWS rows. A chunk is only allocated once a block lands in it,
+ and chunks left wholly above the max height are given back to a pool
+ on commit(). Undo is copy-on-write per chunk: the first change to a
+ chunk after a commit saves a copy of it, and undo() copies back just
+ the chunks that were touched, plus the column heights.
+*/
+public class ChunkedBoard {
+	public static final int CHUNK_SHIFT = 5;
+	public static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+	private int width;
+	private int height;
+	private int words;				// longs per row
+	private Chunk[] chunks;			// null where no block has landed
+	private int[] heights;
+	private int maxHeight;
+	private boolean committed = true;
+	private boolean firstState = true;
+
+	// undo state: the chunks changed since the last commit, and their copies
+	private Chunk[] saved;
+	private boolean[] dirty;
+	private int[] dirtyList;
+	private int dirtyCount;
+	private int[] xHeights;
+	private int xMaxHeight;
+
+	// scratch list of the full rows found by clearRows(), bottom to top
+	private int[] rowsToClear;
+
+	// chunks not in use, kept for reuse
+	private List<Chunk> free = new ArrayList<Chunk>();
+	private int chunksAllocated;
+
+	// CHUNK_ROWS rows of bits, and the number of blocks in each row
+	private static class Chunk {
+		final long[] bits;
+		final int[] widths = new int[CHUNK_ROWS];
+
+		Chunk(int words) {
+			bits = new long[CHUNK_ROWS * words];
+		}
+
+		void copyFrom(Chunk other) {
+			System.arraycopy(other.bits, 0, bits, 0, bits.length);
+			System.arraycopy(other.widths, 0, widths, 0, CHUNK_ROWS);
+		}
+
+		void clear() {
+			Arrays.fill(bits, 0);
+			Arrays.fill(widths, 0);
+		}
+	}
+
+	/**
+	 Creates an empty board of the given width and height in blocks.
+	 Nothing proportional to width*height is allocated.
+	*/
+	public ChunkedBoard(int width, int height) {
+		if (width < 1 || height < 1) throw new IllegalArgumentException("bad board size");
+		this.width = width;
+		this.height = height;
+		words = (width + 63) >>> 6;
+		int chunkCount = (height + CHUNK_MASK) >>> CHUNK_SHIFT;
+		chunks = new Chunk[chunkCount];
+		saved = new Chunk[chunkCount];
+		dirty = new boolean[chunkCount];
+		dirtyList = new int[chunkCount];
+		heights = new int[width];
+		xHeights = new int[width];
+		rowsToClear = new int[height];
+	}
+
+	/**
+	 Creates a copy of the given Board's current grid, in the committed state.
+	*/
+	public ChunkedBoard(Board board) {
+		this(board.getWidth(), board.getHeight());
+		for (int y = 0; y < board.getMaxHeight(); y++) {
+			if (board.getRowWidth(y) == 0) continue;
+			Chunk chunk = writableChunk(y >>> CHUNK_SHIFT);
+			for (int x = 0; x < width; x++) {
+				if (board.getGrid(x, y)) setBit(chunk, x, y);
+			}
+			chunk.widths[y & CHUNK_MASK] = board.getRowWidth(y);
+		}
+		for (int x = 0; x < width; x++) {
+			heights[x] = board.getColumnHeight(x);
+		}
+		maxHeight = board.getMaxHeight();
+		commit();
+	}
+
+	/**
+	 Returns the width of the board in blocks.
+	*/
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 Returns the height of the board in blocks.
+	*/
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 Returns the max column height present in the board, 0 when empty.
+	*/
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 Returns the height of the given column, the y of its top block + 1.
+	*/
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	/**
+	 Returns the number of filled blocks in the given row.
+	*/
+	public int getRowWidth(int y) {
+		Chunk chunk = chunks[y >>> CHUNK_SHIFT];
+		return (chunk == null) ? 0 : chunk.widths[y & CHUNK_MASK];
+	}
+
+	/**
+	 Returns true if the given block is filled. Blocks outside the
+	 width/height area always return true, as in Board.
+	*/
+	public boolean getGrid(int x, int y) {
+		if (x >= width || y >= height) return true;
+		Chunk chunk = chunks[y >>> CHUNK_SHIFT];
+		return chunk != null && getBit(chunk, x, y);
+	}
+
+	/**
+	 Returns the number of chunks holding rows right now, each
+	 CHUNK_ROWS rows of getWidth() bits.
+	*/
+	public int getChunkCount() {
+		int count = 0;
+		for (Chunk chunk: chunks) {
+			if (chunk != null) count++;
+		}
+		return count;
+	}
+
+	/**
+	 Returns the number of chunks ever allocated, in use, saved for undo
+	 or pooled. This is what the board costs in memory.
+	*/
+	public int getAllocatedChunks() {
+		return chunksAllocated;
+	}
+
+	/**
+	 Returns the y where the piece comes to rest dropped straight down at x.
+	*/
+	public int dropHeight(Piece piece, int x) {
+		final int[] skirt = piece.getSkirt();
+		int y = 0;
+		for (int i = 0; i < skirt.length; i++) {
+			int currY = heights[x+i] - skirt[i];
+			if (currY > y) y = currY;
+		}
+		return y;
+	}
+
+	/**
+	 Adds the piece to the board like Board.place(), returning one of
+	 Board's PLACE_ codes. After PLACE_OUT_BOUNDS or PLACE_BAD, undo()
+	 puts the board back.
+	*/
+	public int place(Piece piece, int x, int y) {
+		if (!committed) throw new RuntimeException("place commit problem");
+		beginChange();
+		int result = Board.PLACE_OK;
+		for (TPoint point: piece.getBody()) {
+			int currX = x + point.x;
+			int currY = y + point.y;
+			if (currX >= width || currY >= height || currX < 0 || currY < 0) {
+				result = Board.PLACE_OUT_BOUNDS;
+				break;
+			}
+			Chunk chunk = writableChunk(currY >>> CHUNK_SHIFT);
+			if (getBit(chunk, currX, currY)) {
+				result = Board.PLACE_BAD;
+				break;
+			}
+			setBit(chunk, currX, currY);
+			if (++chunk.widths[currY & CHUNK_MASK] >= width) {
+				result = Board.PLACE_ROW_FILLED;
+			}
+			if (currY + 1 > heights[currX]) heights[currX] = currY + 1;
+			if (currY + 1 > maxHeight) maxHeight = currY + 1;
+		}
+		if (result <= Board.PLACE_ROW_FILLED) sanityCheck();
+		return result;
+	}
+
+	/**
+	 Deletes the full rows, moving the rows above down, and returns how
+	 many were deleted. Only rows from the lowest full one up to the max
+	 height are touched.
+	*/
+	public int clearRows() {
+		if (committed) beginChange();
+		int rowsCleared = 0;
+		for (int y = 0; y < maxHeight; y++) {
+			if (getRowWidth(y) == width) rowsToClear[rowsCleared++] = y;
+		}
+		if (rowsCleared > 0) {
+			int to = rowsToClear[0];
+			for (int from = to + 1, i = 1; from < maxHeight; from++) {
+				if (i < rowsCleared && rowsToClear[i] == from) {
+					i++;
+				} else {
+					copyRow(from, to++);
+				}
+			}
+			for (int y = to; y < maxHeight; y++) {
+				clearRow(y);
+			}
+			findNewHeights();
+		}
+		sanityCheck();
+		return rowsCleared;
+	}
+
+	/**
+	 Reverts the board to its state at the last commit(), like Board.undo().
+	*/
+	public void undo() {
+		if (firstState || committed) return;
+		for (int i = 0; i < dirtyCount; i++) {
+			int index = dirtyList[i];
+			Chunk copy = saved[index];
+			if (copy == null) {
+				// the chunk was empty before
+				release(chunks[index]);
+				chunks[index] = null;
+			} else {
+				// keep the saved copy, recycle the changed one
+				release(chunks[index]);
+				chunks[index] = copy;
+				saved[index] = null;
+			}
+			dirty[index] = false;
+		}
+		dirtyCount = 0;
+		System.arraycopy(xHeights, 0, heights, 0, width);
+		maxHeight = xMaxHeight;
+		committed = true;
+		sanityCheck();
+	}
+
+	/**
+	 Puts the board in the committed state, and gives back the chunks
+	 now wholly above the max height.
+	*/
+	public void commit() {
+		for (int i = 0; i < dirtyCount; i++) {
+			int index = dirtyList[i];
+			if (saved[index] != null) {
+				release(saved[index]);
+				saved[index] = null;
+			}
+			dirty[index] = false;
+		}
+		dirtyCount = 0;
+		for (int index = (maxHeight + CHUNK_MASK) >>> CHUNK_SHIFT; index < chunks.length; index++) {
+			if (chunks[index] != null) {
+				release(chunks[index]);
+				chunks[index] = null;
+			}
+		}
+		committed = true;
+	}
+
+	/**
+	 Checks the row widths, column heights and max height against the
+	 bits, when Board.DEBUG is on. Only allocated chunks are scanned.
+	*/
+	public void sanityCheck() {
+		if (!Board.DEBUG) return;
+		int[] heightsCheck = new int[width];
+		int maxHeightCheck = 0;
+		for (int index = 0; index < chunks.length; index++) {
+			Chunk chunk = chunks[index];
+			if (chunk == null) continue;
+			for (int row = 0; row < CHUNK_ROWS; row++) {
+				int y = (index << CHUNK_SHIFT) + row;
+				int count = 0;
+				for (int w = 0; w < words; w++) {
+					count += Long.bitCount(chunk.bits[row * words + w]);
+				}
+				if (count != chunk.widths[row]) {
+					throw new RuntimeException("widths array is inconsistant at row " + y);
+				}
+				if (count == 0) continue;
+				for (int x = 0; x < width; x++) {
+					if (getBit(chunk, x, y)) heightsCheck[x] = y + 1;
+				}
+				maxHeightCheck = y + 1;
+			}
+		}
+		if (!Arrays.equals(heightsCheck, heights)) {
+			throw new RuntimeException("heights array is inconsistant");
+		}
+		if (maxHeightCheck != maxHeight) {
+			throw new RuntimeException("maxHeight is inconsistant");
+		}
+	}
+
+	/**
+	 Renders the board like Board.toString(), for comparing the two.
+	*/
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height-1; y >= 0; y--) {
+			buff.append('|');
+			for (int x = 0; x < width; x++) {
+				buff.append(getGrid(x, y) ? '+' : ' ');
+			}
+			buff.append("|\n");
+		}
+		for (int x = 0; x < width+2; x++) buff.append('-');
+		return buff.toString();
+	}
+
+	/**
+	 * Starts a change from the committed state: remembers the heights.
+	 * Chunks are saved as they are first written, by writableChunk().
+	 */
+	private void beginChange() {
+		committed = false;
+		firstState = false;
+		System.arraycopy(heights, 0, xHeights, 0, width);
+		xMaxHeight = maxHeight;
+	}
+
+	/**
+	 * Returns the chunk at the index, ready to be written: allocated if
+	 * it was missing, and saved for undo if this is its first change
+	 * since the last commit.
+	 */
+	private Chunk writableChunk(int index) {
+		Chunk chunk = chunks[index];
+		if (!dirty[index]) {
+			dirty[index] = true;
+			dirtyList[dirtyCount++] = index;
+			if (chunk != null) {
+				Chunk copy = obtain();
+				copy.copyFrom(chunk);
+				saved[index] = copy;
+			}
+		}
+		if (chunk == null) {
+			chunk = obtain();
+			chunks[index] = chunk;
+		}
+		return chunk;
+	}
+
+	private void copyRow(int from, int to) {
+		Chunk source = chunks[from >>> CHUNK_SHIFT];
+		Chunk dest = writableChunk(to >>> CHUNK_SHIFT);
+		int fromRow = from & CHUNK_MASK;
+		int toRow = to & CHUNK_MASK;
+		if (source == null) {
+			Arrays.fill(dest.bits, toRow * words, (toRow + 1) * words, 0);
+			dest.widths[toRow] = 0;
+		} else {
+			System.arraycopy(source.bits, fromRow * words, dest.bits, toRow * words, words);
+			dest.widths[toRow] = source.widths[fromRow];
+		}
+	}
+
+	private void clearRow(int y) {
+		if (chunks[y >>> CHUNK_SHIFT] == null) return;
+		Chunk chunk = writableChunk(y >>> CHUNK_SHIFT);
+		int row = y & CHUNK_MASK;
+		Arrays.fill(chunk.bits, row * words, (row + 1) * words, 0);
+		chunk.widths[row] = 0;
+	}
+
+	/**
+	 * Recalculates the column heights after rows are cleared. Heights only
+	 * go down, so each column is scanned down from its old height.
+	 */
+	private void findNewHeights() {
+		maxHeight = 0;
+		for (int x = 0; x < width; x++) {
+			int y = heights[x] - 1;
+			while (y >= 0 && !getGrid(x, y)) {
+				y--;
+			}
+			heights[x] = y + 1;
+			if (y + 1 > maxHeight) maxHeight = y + 1;
+		}
+	}
+
+	private boolean getBit(Chunk chunk, int x, int y) {
+		return (chunk.bits[(y & CHUNK_MASK) * words + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	private void setBit(Chunk chunk, int x, int y) {
+		chunk.bits[(y & CHUNK_MASK) * words + (x >>> 6)] |= 1L << x;
+	}
+
+	private Chunk obtain() {
+		if (free.isEmpty()) {
+			chunksAllocated++;
+			return new Chunk(words);
+		}
+		return free.remove(free.size() - 1);
+	}
+
+	private void release(Chunk chunk) {
+		chunk.clear();
+		free.add(chunk);
+	}
+}
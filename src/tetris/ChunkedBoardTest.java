@@ -0,0 +1,89 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for ChunkedBoard: fuzzed against ReferenceBoard, plus its
+ chunk bookkeeping.
+ */
+public class ChunkedBoardTest {
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() {
+		pieces = Piece.getPieces();
+	}
+
+	// Differential fuzzing against ReferenceBoard. At 70 wide the rows
+	// take two longs, and 100 high spans several chunks.
+	@Test
+	public void testFuzz() {
+		new BoardFuzzer(BoardFuzzer.CHUNKED, 70, 100, 1).run(2000);
+	}
+
+	// Failed plays undo cleanly, including into a chunk not yet allocated.
+	@Test
+	public void testBadPlace() {
+		ChunkedBoard chunked = new ChunkedBoard(4, 100);
+		Piece stick = pieces[Piece.STICK];
+		assertEquals(Board.PLACE_OK, chunked.place(stick, 0, 0));
+		chunked.commit();
+		assertEquals(Board.PLACE_BAD, chunked.place(stick, 0, 3));
+		chunked.undo();
+		assertEquals(Board.PLACE_OUT_BOUNDS, chunked.place(stick, 1, 98));
+		chunked.undo();
+		assertEquals(4, chunked.getMaxHeight());
+		assertEquals(1, chunked.getChunkCount());
+		assertFalse(chunked.getGrid(1, 98));
+	}
+
+	// A tall, mostly empty board only holds the chunks its blocks are in,
+	// and gives them back once rows clear.
+	@Test
+	public void testSparse() {
+		int chunk = ChunkedBoard.CHUNK_ROWS;
+		ChunkedBoard chunked = new ChunkedBoard(8, 4000);
+		assertEquals(0, chunked.getChunkCount());
+		Piece stick = pieces[Piece.STICK];
+		for (int y = 0; y < 3 * chunk; y += 4) {
+			assertEquals(Board.PLACE_OK, chunked.place(stick, 0, y));
+			chunked.commit();
+		}
+		assertEquals(3, chunked.getChunkCount());
+
+		// a stick in every other column clears four rows at a time
+		for (int cleared = 0; cleared < chunk; cleared += 4) {
+			for (int x = 1; x < 8; x++) {
+				chunked.place(stick, x, 0);
+				chunked.clearRows();
+				chunked.commit();
+			}
+		}
+		assertEquals(2 * chunk, chunked.getMaxHeight());
+		assertEquals(2, chunked.getChunkCount());
+		// in use, plus at most one saved copy of each during a change
+		assertTrue(chunked.getAllocatedChunks() <= 6);
+	}
+
+	@Test
+	public void testCopyOfBoard() {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 3));
+		game.play(40);
+		Board board = game.getBoard();
+		ChunkedBoard chunked = new ChunkedBoard(board);
+		assertSame(board, chunked);
+	}
+
+	private static void assertSame(Board board, ChunkedBoard chunked) {
+		assertEquals(board.getMaxHeight(), chunked.getMaxHeight());
+		for (int x = 0; x < board.getWidth(); x++) {
+			assertEquals(board.getColumnHeight(x), chunked.getColumnHeight(x));
+		}
+		for (int y = 0; y < board.getHeight(); y++) {
+			assertEquals(board.getRowWidth(y), chunked.getRowWidth(y));
+		}
+		assertEquals(board.toString(), chunked.toString());
+	}
+}
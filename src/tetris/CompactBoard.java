@@ -0,0 +1,336 @@
+// CompactBoard.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ A Tetris board kept in one long[], for holding very many paused games
+ in memory at once. Boards are at most 64 wide.
+
+ <p>The array holds one long per row, bit x set if block (x, y) is
+ filled -- the same bit rows as Board.getBitRows() -- followed by the
+ column heights packed four to a long, 16 bits each. Row widths are
+ the bit counts of the rows, so they are not stored. A 10x24 board is
+ 27 longs. A CompactBoard can also be a view of one slot of a
+ BoardArena, which keeps many such boards in one array.
+
+ <p>There is no backup copy per board. place() and clearRows() save
+ the board into a backup array kept per thread, so undo() must be
+ called on the thread that made the change, before that thread changes
+ another CompactBoard. Otherwise undo() throws. The game loops and
+ brains only ever have one uncommitted board per thread, so this holds
+ for them.
+*/
+public class CompactBoard {
+	private static final int HEIGHT_BITS = 16;
+	private static final int MAX_HEIGHT = (1 << HEIGHT_BITS) - 1;
+
+	private final int width;
+	private final int height;
+	private final long[] data;		// rows, then packed column heights
+	private int base;				// where this board starts in data
+	private final boolean shared;	// data belongs to a BoardArena
+	private int maxHeight;
+	private boolean committed = true;
+
+	// the backup region of each thread, and which board's state it holds
+	private static class Backup {
+		long[] data = new long[0];
+		CompactBoard owner;
+		int maxHeight;
+	}
+
+	private static final ThreadLocal<Backup> backups = new ThreadLocal<Backup>() {
+		protected Backup initialValue() {
+			return new Backup();
+		}
+	};
+
+	/**
+	 Creates an empty board of the given width and height in blocks.
+	*/
+	public CompactBoard(int width, int height) {
+		if (width < 1 || width > 64 || height < 1 || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("compact boards are 1 to 64 wide and 1 to " + MAX_HEIGHT + " high");
+		}
+		this.width = width;
+		this.height = height;
+		data = new long[slotSize(width, height)];
+		shared = false;
+	}
+
+	/**
+	 Creates a view of the board stored at data[base..], as laid out by
+	 slotSize(). Used by BoardArena.
+	*/
+	CompactBoard(int width, int height, long[] data, int base) {
+		if (width < 1 || width > 64 || height < 1 || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("compact boards are 1 to 64 wide and 1 to " + MAX_HEIGHT + " high");
+		}
+		this.width = width;
+		this.height = height;
+		this.data = data;
+		shared = true;
+		moveTo(base);
+	}
+
+	/**
+	 Returns the longs one board of the given size takes: one per row,
+	 and one per four column heights.
+	*/
+	public static int slotSize(int width, int height) {
+		return height + (width + 3) / 4;
+	}
+
+	/**
+	 Points this view at the board stored at data[base..]. The view must
+	 be committed, since its change could not be undone after the move.
+	*/
+	void moveTo(int base) {
+		if (!committed) throw new RuntimeException("moveTo commit problem");
+		this.base = base;
+		maxHeight = 0;
+		for (int x = 0; x < width; x++) {
+			maxHeight = Math.max(maxHeight, getColumnHeight(x));
+		}
+	}
+
+	/**
+	 Returns true if this board is stored in the given array.
+	*/
+	boolean isIn(long[] array) {
+		return data == array;
+	}
+
+	/**
+	 Creates a copy of the given Board, in the committed state.
+	*/
+	public CompactBoard(Board board) {
+		this(board.getWidth(), board.getHeight());
+		load(board);
+	}
+
+	/**
+	 Copies the Board, which must be the same size, into this empty board.
+	*/
+	void load(Board board) {
+		maxHeight = board.getBitRows(data, base);
+		for (int x = 0; x < width; x++) {
+			setHeight(x, board.getColumnHeight(x));
+		}
+	}
+
+	/**
+	 Makes the given Board, which must be the same size, a copy of this
+	 one, e.g. to resume a paused game. The Board is left committed.
+	*/
+	public void copyTo(Board board) {
+		if (board.getWidth() != width || board.getHeight() != height) {
+			throw new RuntimeException("copyTo needs boards of the same size");
+		}
+		board.setBitRows(data, base, maxHeight);
+	}
+
+	/**
+	 Returns the width of the board in blocks.
+	*/
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 Returns the height of the board in blocks.
+	*/
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 Returns the max column height present in the board, 0 when empty.
+	*/
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 Returns the height of the given column, the y of its top block + 1.
+	*/
+	public int getColumnHeight(int x) {
+		return (int) (data[base + height + (x >> 2)] >>> ((x & 3) * HEIGHT_BITS)) & MAX_HEIGHT;
+	}
+
+	/**
+	 Returns the number of filled blocks in the given row.
+	*/
+	public int getRowWidth(int y) {
+		return Long.bitCount(data[base + y]);
+	}
+
+	/**
+	 Returns true if the given block is filled. Blocks outside the
+	 width/height area always return true, as in Board.
+	*/
+	public boolean getGrid(int x, int y) {
+		if (x >= width || y >= height) return true;
+		return (data[base + y] & (1L << x)) != 0;
+	}
+
+	/**
+	 Returns the y where the piece comes to rest dropped straight down at x.
+	*/
+	public int dropHeight(Piece piece, int x) {
+		final int[] skirt = piece.getSkirt();
+		int y = 0;
+		for (int i = 0; i < skirt.length; i++) {
+			int currY = getColumnHeight(x+i) - skirt[i];
+			if (currY > y) y = currY;
+		}
+		return y;
+	}
+
+	/**
+	 Adds the piece to the board like Board.place(), returning one of
+	 Board's PLACE_ codes. After PLACE_OUT_BOUNDS or PLACE_BAD, undo()
+	 puts the board back.
+	*/
+	public int place(Piece piece, int x, int y) {
+		if (!committed) throw new RuntimeException("place commit problem");
+		backup();
+		final long full = fullRow();
+		int result = Board.PLACE_OK;
+		for (TPoint point: piece.getBody()) {
+			int currX = x + point.x;
+			int currY = y + point.y;
+			if (currX >= width || currY >= height || currX < 0 || currY < 0) {
+				result = Board.PLACE_OUT_BOUNDS;
+				break;
+			}
+			long bit = 1L << currX;
+			int row = base + currY;
+			if ((data[row] & bit) != 0) {
+				result = Board.PLACE_BAD;
+				break;
+			}
+			data[row] |= bit;
+			if (data[row] == full) result = Board.PLACE_ROW_FILLED;
+			if (currY + 1 > getColumnHeight(currX)) setHeight(currX, currY + 1);
+			if (currY + 1 > maxHeight) maxHeight = currY + 1;
+		}
+		return result;
+	}
+
+	/**
+	 Deletes the full rows, moving the rows above down, and returns how
+	 many were deleted.
+	*/
+	public int clearRows() {
+		if (committed) backup();
+		final long full = fullRow();
+		int to = 0;
+		for (int from = 0; from < maxHeight; from++) {
+			long row = data[base + from];
+			if (row != full) data[base + to++] = row;
+		}
+		int rowsCleared = maxHeight - to;
+		if (rowsCleared > 0) {
+			Arrays.fill(data, base + to, base + maxHeight, 0);
+			// heights only go down, so scan each column down from its old height
+			maxHeight = 0;
+			for (int x = 0; x < width; x++) {
+				long bit = 1L << x;
+				int y = Math.min(getColumnHeight(x), to) - 1;
+				while (y >= 0 && (data[base + y] & bit) == 0) {
+					y--;
+				}
+				setHeight(x, y + 1);
+				if (y + 1 > maxHeight) maxHeight = y + 1;
+			}
+		}
+		return rowsCleared;
+	}
+
+	/**
+	 Reverts the board to its state at the last commit(), like Board.undo().
+	 Must be called on the thread that changed the board, before it
+	 changes any other CompactBoard.
+	*/
+	public void undo() {
+		if (committed) return;
+		Backup backup = backups.get();
+		if (backup.owner != this) {
+			throw new RuntimeException("undo lost: the backup is on another thread or was reused");
+		}
+		System.arraycopy(backup.data, 0, data, base, backup.maxHeight);
+		if (maxHeight > backup.maxHeight) {
+			Arrays.fill(data, base + backup.maxHeight, base + maxHeight, 0);
+		}
+		System.arraycopy(backup.data, height, data, base + height, slotSize(width, height) - height);
+		maxHeight = backup.maxHeight;
+		backup.owner = null;
+		committed = true;
+	}
+
+	/**
+	 Puts the board in the committed state.
+	*/
+	public void commit() {
+		if (!committed) {
+			Backup backup = backups.get();
+			if (backup.owner == this) backup.owner = null;
+		}
+		committed = true;
+	}
+
+	/**
+	 Returns the bytes this board's own array takes on a 64-bit JVM with
+	 compressed pointers: a 16 byte header and 8 bytes a long. For a
+	 view into a BoardArena, just the board's 8 bytes a long.
+	*/
+	public long getDataBytes() {
+		int size = slotSize(width, height);
+		return shared ? 8L * size : 16 + 8L * size;
+	}
+
+	/**
+	 Renders the board like Board.toString(), for comparing the two.
+	*/
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height-1; y >= 0; y--) {
+			buff.append('|');
+			for (int x = 0; x < width; x++) {
+				buff.append(getGrid(x, y) ? '+' : ' ');
+			}
+			buff.append("|\n");
+		}
+		for (int x = 0; x < width+2; x++) buff.append('-');
+		return buff.toString();
+	}
+
+	/**
+	 * Saves the rows below maxHeight and the heights into this thread's
+	 * backup region, growing it if needed, and leaves the board uncommitted.
+	 */
+	private void backup() {
+		Backup backup = backups.get();
+		int size = slotSize(width, height);
+		if (backup.data.length < size) {
+			backup.data = new long[Math.max(size, 2 * backup.data.length)];
+		}
+		System.arraycopy(data, base, backup.data, 0, maxHeight);
+		System.arraycopy(data, base + height, backup.data, height, size - height);
+		backup.maxHeight = maxHeight;
+		backup.owner = this;
+		committed = false;
+	}
+
+	private long fullRow() {
+		return (width == 64) ? -1L : (1L << width) - 1;
+	}
+
+	private void setHeight(int x, int h) {
+		int index = base + height + (x >> 2);
+		int shift = (x & 3) * HEIGHT_BITS;
+		data[index] = (data[index] & ~((long) MAX_HEIGHT << shift)) | ((long) h << shift);
+	}
+}
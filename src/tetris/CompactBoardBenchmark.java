@@ -0,0 +1,57 @@
+// CompactBoardBenchmark.java
+package tetris;
+
+/**
+ Measures the heap each paused game takes as a Board and as a
+ CompactBoard, by filling the heap with copies of mid-game boards and
+ comparing the memory in use before and after. Run with:
+ <pre>
+ java tetris.CompactBoardBenchmark [games]
+ </pre>
+*/
+public class CompactBoardBenchmark {
+	private static final int POSITIONS = 64;
+
+	public static void main(String[] args) {
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		Board[] positions = TetrisGame.samplePositions(POSITIONS, 1);
+
+		System.out.println("games " + games);
+		System.out.println("board          bytes/game");
+
+		long before = usedMemory();
+		Board[] boards = new Board[games];
+		for (int i = 0; i < games; i++) {
+			boards[i] = new Board(positions[i % POSITIONS]);
+		}
+		long after = usedMemory();
+		System.out.println(String.format("%-12s   %10.1f", "Board", (after - before) / (double) games));
+		if (boards[games - 1].getMaxHeight() < 0) System.out.print("");	// keep them live
+		boards = null;
+
+		before = usedMemory();
+		CompactBoard[] compacts = new CompactBoard[games];
+		for (int i = 0; i < games; i++) {
+			compacts[i] = new CompactBoard(positions[i % POSITIONS]);
+		}
+		after = usedMemory();
+		System.out.println(String.format("%-12s   %10.1f", "CompactBoard", (after - before) / (double) games));
+		if (compacts[games - 1].getMaxHeight() < 0) System.out.print("");
+	}
+
+	/**
+	 * Returns the heap in use after collecting garbage until it settles.
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) break;
+			used = now;
+		}
+		return used;
+	}
+}
@@ -0,0 +1,78 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for CompactBoard: fuzzed against ReferenceBoard, plus its
+ shared backup and round trips through a Board.
+ */
+public class CompactBoardTest {
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() {
+		pieces = Piece.getPieces();
+	}
+
+	// Differential fuzzing against ReferenceBoard, down to a board only
+	// as wide as the stick.
+	@Test
+	public void testFuzz() {
+		new BoardFuzzer(BoardFuzzer.COMPACT, 4, 8, 1).run(5000);
+		new BoardFuzzer(BoardFuzzer.COMPACT, 64, 40, 2).run(2000);
+	}
+
+	// Boards of different sizes share one thread's backup, one at a time.
+	@Test
+	public void testSharedBackup() {
+		CompactBoard small = new CompactBoard(4, 8);
+		CompactBoard big = new CompactBoard(10, 200);
+		Piece stick = pieces[Piece.STICK];
+		small.place(stick, 0, 0);
+		small.commit();
+		big.place(stick, 3, 0);
+		big.undo();
+		assertEquals(0, big.getMaxHeight());
+		small.place(stick, 1, 0);
+		small.undo();
+		assertEquals(4, small.getMaxHeight());
+		assertEquals(0, small.getColumnHeight(1));
+	}
+
+	// A board that lost its backup to another board will not undo wrongly.
+	@Test(expected = RuntimeException.class)
+	public void testLostBackup() {
+		CompactBoard a = new CompactBoard(4, 8);
+		CompactBoard b = new CompactBoard(4, 8);
+		a.place(pieces[Piece.STICK], 0, 0);
+		b.place(pieces[Piece.STICK], 0, 0);
+		a.undo();
+	}
+
+	// A game paused into a CompactBoard resumes on a Board unchanged.
+	@Test
+	public void testRoundTrip() {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 3));
+		game.play(40);
+		Board board = game.getBoard();
+		CompactBoard compact = new CompactBoard(board);
+		assertSame(board, compact);
+		Board resumed = new Board(board.getWidth(), board.getHeight());
+		compact.copyTo(resumed);
+		assertEquals(board.toString(), resumed.toString());
+		assertEquals(8 * (24 + 3) + 16, new CompactBoard(10, 24).getDataBytes());
+	}
+
+	private static void assertSame(Board board, CompactBoard compact) {
+		assertEquals(board.getMaxHeight(), compact.getMaxHeight());
+		for (int x = 0; x < board.getWidth(); x++) {
+			assertEquals(board.getColumnHeight(x), compact.getColumnHeight(x));
+		}
+		for (int y = 0; y < board.getHeight(); y++) {
+			assertEquals(board.getRowWidth(y), compact.getRowWidth(y));
+		}
+		assertEquals(board.toString(), compact.toString());
+	}
+}
@@ -0,0 +1,172 @@
+// DatasetGenerator.java
+package tetris;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ Fills a DatasetWriter file with positions from headless self-play.
+ Each segment of the file gets its own producer thread, brain and
+ seeded piece stream, and the producer plays games until its segment
+ is full, recording every move the brain makes along with how the
+ game went from there. The same seed and brains give the same file,
+ however the threads are scheduled.
+
+ <p>Run with:
+ <pre>
+ java tetris.DatasetGenerator [file] [megabytes] [threads] [weights file]
+ </pre>
+ to record DefaultBrain, or a WeightedBrain loaded from the weights file.
+*/
+public class DatasetGenerator {
+	public static final int DEFAULT_PIECE_LIMIT = 2000;
+
+	private Brain[] brains;
+	private long seed;
+	private int pieceLimit = DEFAULT_PIECE_LIMIT;
+
+	/**
+	 Creates a generator with one brain per producer, seeded for a
+	 reproducible dataset. Needs as many brains as the file has segments.
+	*/
+	public DatasetGenerator(Brain[] brains, long seed) {
+		this.brains = brains;
+		this.seed = seed;
+	}
+
+	/**
+	 Sets the most pieces a game is played for.
+	*/
+	public void setPieceLimit(int pieceLimit) {
+		this.pieceLimit = pieceLimit;
+	}
+
+	/**
+	 Fills every segment of the writer, running the producers on the
+	 executor. Returns the number of records written.
+	*/
+	public long generate(final DatasetWriter writer, ExecutorService executor) throws InterruptedException {
+		if (brains.length < writer.getSegmentCount()) throw new IllegalArgumentException("need a brain per segment");
+		FastRandom seeds = new FastRandom(seed);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < writer.getSegmentCount(); i++) {
+			final Producer producer = new Producer(brains[i], writer.getSegment(i), seeds.split());
+			results.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					return producer.run();
+				}
+			}));
+		}
+
+		long records = 0;
+		for (Future<Integer> result: results) {
+			try {
+				records += result.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("producer failed", e.getCause());
+			}
+		}
+		return records;
+	}
+
+
+	/**
+	 Plays games into one segment. It sits between the game and the brain,
+	 so it sees the board and piece of every move and the brain's answer.
+	*/
+	private class Producer implements Brain {
+		private Brain brain;
+		private DatasetWriter.Segment segment;
+		private FastRandom random;
+
+		private boolean full;
+		private int offset;		// offset of the record for the move being played, or -1
+
+		// the current game's records, with the score and count before each move
+		private int[] offsets = new int[pieceLimit];
+		private int[] scores = new int[pieceLimit];
+		private int[] counts = new int[pieceLimit];
+
+		Producer(Brain brain, DatasetWriter.Segment segment, FastRandom random) {
+			this.brain = brain;
+			this.segment = segment;
+			this.random = random;
+		}
+
+		/**
+		 * Plays games until the segment is full; the last game is played
+		 * to the end so its records get their outcomes.
+		 * @return the number of records written
+		 */
+		int run() {
+			while (!full) {
+				TetrisGame game = new TetrisGame(this, new UniformGenerator(Piece.getPieces().length, random.nextLong()));
+				int recorded = 0;
+				while (game.getCount() < pieceLimit) {
+					int score = game.getScore();
+					int count = game.getCount();
+					int rows = game.getRowsCleared();
+					offset = -1;
+					boolean on = game.step();
+					if (offset >= 0) {
+						segment.setRowsCleared(offset, game.getRowsCleared() - rows);
+						offsets[recorded] = offset;
+						scores[recorded] = score;
+						counts[recorded] = count;
+						recorded++;
+					}
+					if (!on) break;
+				}
+				for (int i = 0; i < recorded; i++) {
+					segment.setOutcome(offsets[i], game.getScore() - scores[i], game.getCount() - counts[i]);
+				}
+				if (recorded == 0) break;	// nothing fits any more
+			}
+			return segment.getRecordCount();
+		}
+
+		/**
+		 * Asks the real brain, and records its answer if there is room.
+		 */
+		public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+			Brain.Move best = brain.bestMove(board, piece, limitHeight, move);
+			if (best != null && !full) {
+				offset = segment.append(board, best.piece, best.x, best.y, 0);
+				if (offset < 0) full = true;
+			}
+			return best;
+		}
+	}
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String fileName = (args.length > 0) ? args[0] : "positions.dat";
+		int megabytes = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Brain[] brains = new Brain[threads];
+		for (int i = 0; i < threads; i++) {
+			brains[i] = (args.length > 3) ? WeightedBrain.load(args[3]) : new DefaultBrain();
+		}
+		int segmentSize = (int) ((long) megabytes * 1024 * 1024 / threads);
+		DatasetWriter writer = new DatasetWriter(fileName, threads, segmentSize);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		long records;
+		try {
+			records = new DatasetGenerator(brains, 1).generate(writer, executor);
+		} finally {
+			executor.shutdown();
+			writer.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d records in %.1f s, %.0f records/s, to %s%n",
+			records, seconds, records / seconds, fileName);
+	}
+}
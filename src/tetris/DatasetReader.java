@@ -0,0 +1,173 @@
+// DatasetReader.java
+package tetris;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ Reads a dataset written by DatasetWriter, one record at a time, straight
+ out of the memory-mapped file. Nothing is copied until asked for: the
+ piece, move, outcome and column heights are read in place, and the
+ board is only unpacked by getBoard(), into a board the caller reuses.
+
+ <p>Typical use:
+ <pre>
+ DatasetReader reader = new DatasetReader("positions.dat");
+ Board board = null;
+ while (reader.next()) {
+     board = reader.getBoard(board);
+     ... reader.getPiece(), reader.getFutureScore() ...
+ }
+ reader.close();
+ </pre>
+ Not safe to share between threads, but several readers can read one
+ file at once; each can be limited to some of the segments.
+*/
+public class DatasetReader {
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int segmentCount;
+	private int segmentSize;
+	private BoardCodec codec = new BoardCodec();
+
+	// the segment being read and the current record in it
+	private int segment;
+	private int lastSegment;
+	private MappedByteBuffer buffer;
+	private int end;
+	private int record = -1;
+	private int outcome;
+
+	/**
+	 Opens the file to read every segment.
+	*/
+	public DatasetReader(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DatasetWriter.FILE_HEADER);
+		if (header.getInt(0) != DatasetWriter.MAGIC) throw new IOException("not a dataset file");
+		if (header.getInt(4) != DatasetWriter.VERSION) throw new IOException("unknown dataset version");
+		segmentCount = header.getInt(8);
+		segmentSize = header.getInt(12);
+		setSegments(0, segmentCount);
+	}
+
+	/**
+	 Returns the number of segments in the file.
+	*/
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 Restarts reading with only segments from..to-1.
+	*/
+	public void setSegments(int from, int to) {
+		segment = from - 1;
+		lastSegment = to - 1;
+		buffer = null;
+		record = -1;
+	}
+
+	/**
+	 Returns the number of records in the segment, from its header.
+	*/
+	public int getRecordCount(int segment) throws IOException {
+		long start = DatasetWriter.FILE_HEADER + (long) segment * segmentSize;
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, 4).getInt(0);
+	}
+
+	/**
+	 Moves to the next record. Returns false when there are no more.
+	*/
+	public boolean next() throws IOException {
+		if (record >= 0) {
+			record = outcome + DatasetWriter.OUTCOME_SIZE;
+		}
+		while (buffer == null || record >= end) {
+			if (segment >= lastSegment) return false;
+			segment++;
+			long start = DatasetWriter.FILE_HEADER + (long) segment * segmentSize;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentSize);
+			end = DatasetWriter.SEGMENT_HEADER + buffer.getInt(4);
+			record = DatasetWriter.SEGMENT_HEADER;
+		}
+		outcome = record + BoardCodec.recordSize(buffer, record);
+		return true;
+	}
+
+	/**
+	 Unpacks the board before the move into the given board if it is the
+	 right size, or a new one if not, and returns it.
+	*/
+	public Board getBoard(Board board) {
+		buffer.position(record);
+		return codec.decode(buffer, board);
+	}
+
+	/**
+	 Returns the board's width.
+	*/
+	public int getWidth() {
+		return BoardCodec.widthAt(buffer, record);
+	}
+
+	/**
+	 Returns the height of column x of the board, without unpacking it.
+	*/
+	public int getColumnHeight(int x) {
+		return BoardCodec.columnHeightAt(buffer, record, x);
+	}
+
+	/**
+	 Returns the piece as it was played, in the rotation chosen.
+	*/
+	public Piece getPiece() {
+		return BoardCodec.pieceAt(buffer, record);
+	}
+
+	/**
+	 Returns the x the piece was played at.
+	*/
+	public int getX() {
+		return BoardCodec.pieceXAt(buffer, record);
+	}
+
+	/**
+	 Returns the y the piece landed at.
+	*/
+	public int getY() {
+		return BoardCodec.pieceYAt(buffer, record);
+	}
+
+	/**
+	 Returns the rows the move cleared.
+	*/
+	public int getRowsCleared() {
+		return buffer.get(outcome);
+	}
+
+	/**
+	 Returns the score the game went on to make from this position.
+	*/
+	public int getFutureScore() {
+		return buffer.getInt(outcome + 1);
+	}
+
+	/**
+	 Returns the pieces the game went on to play from this position.
+	*/
+	public int getFuturePieces() {
+		return buffer.getInt(outcome + 5);
+	}
+
+	/**
+	 Closes the file.
+	*/
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+}
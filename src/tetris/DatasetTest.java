@@ -0,0 +1,130 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+
+/*
+ Unit test for DatasetWriter, DatasetReader and DatasetGenerator.
+ */
+public class DatasetTest {
+	private static final int SEGMENTS = 3;
+	private static final int SEGMENT_SIZE = 32 * 1024;
+
+	private File file;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("positions", ".dat");
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		file.delete();
+	}
+
+	private long generate(File file) throws Exception {
+		Brain[] brains = new Brain[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) brains[i] = new DefaultBrain();
+		DatasetGenerator generator = new DatasetGenerator(brains, 7);
+		generator.setPieceLimit(300);
+		DatasetWriter writer = new DatasetWriter(file.getPath(), SEGMENTS, SEGMENT_SIZE);
+		long records = generator.generate(writer, executor);
+		writer.close();
+		return records;
+	}
+
+	// Every record replays: the move lands where it says, clears the rows
+	// it says, and the outcomes count down through each game.
+	@Test
+	public void testRecordsReplay() throws Exception {
+		long records = generate(file);
+		assertTrue(records > 1000);
+
+		DatasetReader reader = new DatasetReader(file.getPath());
+		assertEquals(SEGMENTS, reader.getSegmentCount());
+		long total = 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			total += reader.getRecordCount(i);
+		}
+		assertEquals(records, total);
+
+		Board board = null;
+		long read = 0;
+		int lastPieces = 0;
+		int games = 0;
+		while (reader.next()) {
+			read++;
+			board = reader.getBoard(board);
+			for (int x = 0; x < board.getWidth(); x++) {
+				assertEquals(board.getColumnHeight(x), reader.getColumnHeight(x));
+			}
+			Piece piece = reader.getPiece();
+			assertEquals(reader.getY(), board.dropHeight(piece, reader.getX()));
+			assertTrue(board.place(piece, reader.getX(), reader.getY()) <= Board.PLACE_ROW_FILLED);
+			assertEquals(reader.getRowsCleared(), board.clearRows());
+			board.commit();
+
+			// within a game the future pieces count down by one each move
+			int pieces = reader.getFuturePieces();
+			assertTrue(pieces >= 1);
+			if (pieces != lastPieces - 1) games++;
+			lastPieces = pieces;
+			assertTrue(reader.getFutureScore() >= pieces);
+		}
+		assertEquals(records, read);
+		assertTrue(games >= SEGMENTS);
+		reader.close();
+	}
+
+	// The same seed gives the same file, whatever the thread timing.
+	@Test
+	public void testReproducible() throws Exception {
+		File other = File.createTempFile("positions", ".dat");
+		try {
+			generate(file);
+			generate(other);
+			assertTrue(Arrays.equals(readAll(file), readAll(other)));
+		} finally {
+			other.delete();
+		}
+	}
+
+	// Reading can be limited to some segments.
+	@Test
+	public void testSegments() throws Exception {
+		generate(file);
+		DatasetReader reader = new DatasetReader(file.getPath());
+		reader.setSegments(1, 2);
+		int read = 0;
+		while (reader.next()) read++;
+		assertEquals(reader.getRecordCount(1), read);
+		reader.close();
+	}
+
+	private static byte[] readAll(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				int n = in.read(bytes, read, bytes.length - read);
+				if (n < 0) break;
+				read += n;
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+}
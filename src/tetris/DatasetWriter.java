@@ -0,0 +1,164 @@
+// DatasetWriter.java
+package tetris;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ Writes a dataset of positions -- board, piece, the move chosen and how
+ the game went afterwards -- to a fixed-size file through memory-mapped
+ segments. The file is split into equal segments, and each producer
+ thread appends to its own, so producers never contend or lock.
+
+ <p>The file layout, all big-endian:
+ <pre>
+ file header   int MAGIC, int VERSION, int segmentCount, int segmentSize, padded to FILE_HEADER
+ segment[i]    int recordCount, int usedBytes, padded to SEGMENT_HEADER, then the records
+ record        the board, piece and move as a BoardCodec record, with the
+               move's rotation and x, y as the piece state, then
+               byte rowsCleared, int futureScore, int futurePieces
+ </pre>
+ rowsCleared is what the move cleared; futureScore and futurePieces
+ are the points and pieces the game went on to play from the position,
+ counting the move itself, filled in with setOutcome() once the game is over.
+ A segment's header is updated after every record, so a reader sees
+ whole records even if the writer stopped part way.
+*/
+public class DatasetWriter {
+	public static final int MAGIC = 0x54445331;	// "TDS1"
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER = 64;
+	public static final int SEGMENT_HEADER = 16;
+	// bytes after the codec record
+	public static final int OUTCOME_SIZE = 9;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private Segment[] segments;
+
+	/**
+	 Creates (or overwrites) the file with the given number of segments of
+	 segmentSize bytes each, headers included.
+	*/
+	public DatasetWriter(String fileName, int segmentCount, int segmentSize) throws IOException {
+		if (segmentSize <= SEGMENT_HEADER) throw new IllegalArgumentException("segment too small");
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		file.setLength(FILE_HEADER + (long) segmentCount * segmentSize);
+		channel = file.getChannel();
+
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(segmentCount);
+		header.putInt(segmentSize);
+		header.force();
+
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			long start = FILE_HEADER + (long) i * segmentSize;
+			segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+		}
+	}
+
+	/**
+	 Returns the number of segments.
+	*/
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 Returns segment i. Each segment should be used by only one thread.
+	*/
+	public Segment getSegment(int i) {
+		return segments[i];
+	}
+
+	/**
+	 Flushes every segment to disk and closes the file.
+	*/
+	public void close() throws IOException {
+		for (Segment segment: segments) {
+			segment.buffer.force();
+		}
+		channel.close();
+		file.close();
+	}
+
+
+	/**
+	 One producer's part of the file. Records are appended at the end,
+	 and their outcomes can be filled in later by offset.
+	*/
+	public static class Segment {
+		private MappedByteBuffer buffer;
+		private BoardCodec codec = new BoardCodec();
+		private int recordCount;
+
+		private Segment(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+			buffer.position(SEGMENT_HEADER);
+		}
+
+		/**
+		 Returns the number of records appended.
+		*/
+		public int getRecordCount() {
+			return recordCount;
+		}
+
+		/**
+		 Returns the bytes still free for records.
+		*/
+		public int getRemaining() {
+			return buffer.remaining();
+		}
+
+		/**
+		 Appends a position: the committed board before the move, the piece
+		 in the rotation played and where it landed, and the rows the move
+		 cleared. The future score and pieces start at 0.
+		 Returns the record's offset for setOutcome(), or -1 if the segment
+		 is too full to hold it.
+		*/
+		public int append(Board board, Piece piece, int x, int y, int rowsCleared) {
+			if (buffer.remaining() < BoardCodec.encodedSize(board) + OUTCOME_SIZE) return -1;
+			int offset = buffer.position();
+			codec.encode(board, piece, x, y, buffer);
+			buffer.put((byte) rowsCleared);
+			buffer.putInt(0);
+			buffer.putInt(0);
+			recordCount++;
+			buffer.putInt(0, recordCount);
+			buffer.putInt(4, buffer.position() - SEGMENT_HEADER);
+			return offset;
+		}
+
+		/**
+		 Sets the rows cleared by the move of the record at the offset.
+		*/
+		public void setRowsCleared(int offset, int rowsCleared) {
+			buffer.put(outcomeAt(offset), (byte) rowsCleared);
+		}
+
+		/**
+		 Sets the outcome of the record at the offset: the score and
+		 pieces the game went on to play from it, counting its own move.
+		*/
+		public void setOutcome(int offset, int futureScore, int futurePieces) {
+			int at = outcomeAt(offset);
+			buffer.putInt(at + 1, futureScore);
+			buffer.putInt(at + 5, futurePieces);
+		}
+
+		/**
+		 * Returns the offset of the outcome bytes of the record at the offset.
+		 */
+		private int outcomeAt(int offset) {
+			return offset + BoardCodec.recordSize(buffer, offset);
+		}
+	}
+}
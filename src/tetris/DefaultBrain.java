@@ -16,7 +16,16 @@ package tetris;
  brain -- just subclass off DefaultBrain and override rateBoard().
 */
 
-public class DefaultBrain implements Brain {
+public class DefaultBrain implements BatchBrain {
+    // boards handled per pass of bestMoves()
+    private static final int BATCH_BLOCK = 64;
+    
+    // per-thread landing heights of one rotation, see landingScratch()
+    private ThreadLocal<int[]> landing = new ThreadLocal<int[]>();
+    
+    // per-thread landing heights of a whole block of bestMoves()
+    private ThreadLocal<int[]> batchLanding = new ThreadLocal<int[]>();
+    
     /**
      Given a piece and a board, returns a move object that represents
      the best play for that piece, or returns null if no play is possible.
@@ -31,17 +40,19 @@ public class DefaultBrain implements Brain {
         int bestY = 0;
         Piece bestPiece = null;
         Piece current = piece;
+        final int[] landing = landingScratch(board.getWidth());
         
         board.commit();
         
-        // loop through all the rotations
+        // loop through all the rotations -- the cycle holds each distinct
+        // shape once, so no two (rotation, x) plays cover the same cells
         while (true) {
             final int yBound = limitHeight - current.getHeight()+1;
-            final int xBound = board.getWidth() - current.getWidth()+1;
+            final int xBound = board.dropHeights(current, landing);
             
             // For current rotation, try all the possible columns
             for (int x = 0; x<xBound; x++) {
-                int y = board.dropHeight(current, x);
+                int y = landing[x];
                 if (y<yBound) {    // piece does not stick up too far
                     int result = board.place(current, x, y);
                     if (result <= Board.PLACE_ROW_FILLED) {
@@ -76,6 +87,105 @@ public class DefaultBrain implements Brain {
     }
     
     
+    /**
+     Returns this thread's scratch array for Board.dropHeights(), at least
+     width long. Subclasses with their own search loops can use it too,
+     as long as they are done with it before calling bestMove().
+    */
+    protected int[] landingScratch(int width) {
+        int[] ys = landing.get();
+        if (ys == null || ys.length < width) {
+            ys = new int[width];
+            landing.set(ys);
+        }
+        return ys;
+    }
+    
+    
+    /**
+     Returns true: the only per-call state is the per-thread landing
+     scratch arrays, so subclasses that just override rateBoard() are safe too.
+    */
+    public boolean isThreadSafe() {
+        return true;
+    }
+    
+    
+    /**
+     Finds the best move for each board and piece in the batch.
+     See the BatchBrain interface for details.
+     
+     Works through the batch a block of boards at a time: first it computes
+     the landing height of every play on every board of the block into one
+     array with Board.dropHeights(), then it tries the plays that fit.
+     Plays are tried in the same order as bestMove(), so the results match.
+    */
+    public void bestMoves(Board[] boards, Piece[] pieces, int from, int to,
+            int limitHeight, Brain.Move[] moves) {
+        int maxWidth = 0;
+        for (int i = from; i < to; i++) {
+            maxWidth = Math.max(maxWidth, boards[i].getWidth());
+        }
+        int[] landing = batchLanding.get();
+        if (landing == null || landing.length < BATCH_BLOCK * 4 * maxWidth) {    // at most 4 rotations
+            landing = new int[BATCH_BLOCK * 4 * maxWidth];
+            batchLanding.set(landing);
+        }
+        
+        for (int blockStart = from; blockStart < to; blockStart += BATCH_BLOCK) {
+            int blockEnd = Math.min(to, blockStart + BATCH_BLOCK);
+            
+            // pass 1: landing heights for every play of the block
+            int k = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                Board board = boards[i];
+                Piece current = pieces[i];
+                do {
+                    k += board.dropHeights(current, landing, k);
+                    current = current.fastRotation();
+                } while (current != pieces[i]);
+            }
+            
+            // pass 2: place, rate and undo the plays that fit
+            k = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                Board board = boards[i];
+                Brain.Move move = moves[i];
+                double bestScore = 1e20;
+                Piece bestPiece = null;
+                Piece current = pieces[i];
+                
+                board.commit();
+                do {
+                    final int yBound = limitHeight - current.getHeight()+1;
+                    final int xBound = board.getWidth() - current.getWidth()+1;
+                    for (int x = 0; x<xBound; x++) {
+                        int y = landing[k++];
+                        if (y<yBound) {
+                            int result = board.place(current, x, y);
+                            if (result <= Board.PLACE_ROW_FILLED) {
+                                if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                                double score = rateBoard(board);
+                                if (score<bestScore) {
+                                    bestScore = score;
+                                    move.x = x;
+                                    move.y = y;
+                                    bestPiece = current;
+                                }
+                            }
+                            board.undo();
+                        }
+                    }
+                    current = current.fastRotation();
+                } while (current != pieces[i]);
+                
+                move.piece = bestPiece;
+                move.score = bestScore;
+            }
+        }
+    }
+    
+    
     /*
      A simple brain function.
      Given a board, produce a number that rates
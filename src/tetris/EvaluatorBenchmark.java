@@ -0,0 +1,57 @@
+// EvaluatorBenchmark.java
+package tetris;
+
+/**
+ Times rateBoard() for DefaultBrain against EvaluatorBrain models:
+ linear, and perceptrons with 16 and 64 hidden units. The boards are
+ the positions of a DefaultBrain game, so they look like what a brain
+ rates. Run with:
+ <pre>
+ java tetris.EvaluatorBenchmark [seconds per brain]
+ </pre>
+*/
+public class EvaluatorBenchmark {
+	private static final int BOARDS = 256;
+
+	public static void main(String[] args) {
+		double seconds = (args.length > 0) ? Double.parseDouble(args[0]) : 2.0;
+
+		Board[] boards = TetrisGame.samplePositions(BOARDS, 1);
+
+		int width = TetrisGame.WIDTH;
+		String[] names = {"DefaultBrain", "linear", "mlp 16", "mlp 64"};
+		DefaultBrain[] brains = {
+			new DefaultBrain(),
+			EvaluatorBrain.fromWeights(WeightedBrain.DEFAULT_WEIGHTS, width),
+			EvaluatorBrain.random(width, 16, 1),
+			EvaluatorBrain.random(width, 64, 1),
+		};
+
+		System.out.println("brain          evaluations/sec");
+		for (int i = 0; i < brains.length; i++) {
+			run(brains[i], boards, seconds / 4);	// warm up the JIT
+			double rate = run(brains[i], boards, seconds);
+			System.out.println(String.format("%-12s   %15.0f", names[i], rate));
+		}
+	}
+
+	/**
+	 * Rates the boards over and over for the given time.
+	 * @return the evaluations per second
+	 */
+	private static double run(DefaultBrain brain, Board[] boards, double seconds) {
+		long evaluations = 0;
+		double sink = 0;
+		long start = System.nanoTime();
+		long end = start + (long) (seconds * 1e9);
+		while (System.nanoTime() < end) {
+			for (Board board: boards) {
+				sink += brain.rateBoard(board);
+			}
+			evaluations += boards.length;
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		if (sink == 42) System.out.print("");	// keep the results live
+		return evaluations / elapsed;
+	}
+}
@@ -0,0 +1,242 @@
+// EvaluatorBrain.java
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ A DefaultBrain whose rateBoard() is a learned model: either linear, or
+ a small multi-layer perceptron with one ReLU hidden layer. The inputs
+ are the board's features from features(): each column height, then the
+ max height, the holes and the bumpiness, so a model is built for one
+ board width.
+
+ <p>Weights are kept in flat float arrays, each hidden unit's input
+ weights side by side, and rateBoard() allocates nothing: the feature
+ and hidden vectors are per-thread scratch arrays, so the brain can be
+ used from several threads at once like DefaultBrain.
+
+ <p>Models load from and save to a small big-endian binary file:
+ <pre>
+ int MAGIC, int inputs, int hidden,
+ hidden == 0:  float weights[inputs], float bias
+ hidden  > 0:  float w1[hidden*inputs], float b1[hidden], float w2[hidden], float b2
+ </pre>
+*/
+public class EvaluatorBrain extends DefaultBrain {
+	public static final int MAGIC = 0x54455631;	// "TEV1"
+	// features after the column heights: max height, holes, bumpiness
+	public static final int EXTRA_FEATURES = 3;
+
+	private int width;
+	private int inputs;
+	private int hidden;
+	private float[] w1;		// hidden*inputs, or the linear weights
+	private float[] b1;
+	private float[] w2;
+	private float b2;
+
+	private ThreadLocal<float[]> scratch = new ThreadLocal<float[]>() {
+		protected float[] initialValue() {
+			return new float[inputs + hidden];
+		}
+	};
+
+	/**
+	 Creates a linear model for boards of the given width: the weighted
+	 sum of the features plus the bias. Keeps the array.
+	*/
+	public EvaluatorBrain(int width, float[] weights, float bias) {
+		this(width, 0, weights, null, null, bias);
+	}
+
+	/**
+	 Creates a model for boards of the given width with the given number
+	 of hidden units (0 for linear), keeping the arrays:
+	 w1 holds each hidden unit's input weights in turn.
+	*/
+	public EvaluatorBrain(int width, int hidden, float[] w1, float[] b1, float[] w2, float b2) {
+		this.width = width;
+		this.inputs = width + EXTRA_FEATURES;
+		this.hidden = hidden;
+		int layer1 = (hidden == 0) ? inputs : hidden * inputs;
+		if (w1.length != layer1 || (hidden > 0 && (b1.length != hidden || w2.length != hidden))) {
+			throw new IllegalArgumentException("weights do not match " + inputs + " inputs, " + hidden + " hidden");
+		}
+		this.w1 = w1;
+		this.b1 = b1;
+		this.w2 = w2;
+		this.b2 = b2;
+	}
+
+	/**
+	 Returns the linear model equal to a WeightedBrain with the given
+	 weights, for boards of the given width.
+	*/
+	public static EvaluatorBrain fromWeights(double[] weights, int width) {
+		float[] linear = new float[width + EXTRA_FEATURES];
+		for (int x = 0; x < width; x++) {
+			linear[x] = (float) (weights[WeightedBrain.AVG_HEIGHT] / width);
+		}
+		linear[width] = (float) weights[WeightedBrain.MAX_HEIGHT];
+		linear[width + 1] = (float) weights[WeightedBrain.HOLES];
+		linear[width + 2] = (float) weights[WeightedBrain.BUMPINESS];
+		return new EvaluatorBrain(width, linear, 0);
+	}
+
+	/**
+	 Returns a model with small random weights, e.g. as a starting point
+	 for training.
+	*/
+	public static EvaluatorBrain random(int width, int hidden, long seed) {
+		FastRandom random = new FastRandom(seed);
+		int inputs = width + EXTRA_FEATURES;
+		float scale = (float) Math.sqrt(2.0 / inputs);
+		float[] w1 = new float[(hidden == 0) ? inputs : hidden * inputs];
+		for (int i = 0; i < w1.length; i++) {
+			w1[i] = scale * (float) (random.nextDouble() * 2 - 1);
+		}
+		if (hidden == 0) return new EvaluatorBrain(width, w1, 0);
+		float[] w2 = new float[hidden];
+		for (int j = 0; j < hidden; j++) {
+			w2[j] = (float) (random.nextDouble() * 2 - 1);
+		}
+		return new EvaluatorBrain(width, hidden, w1, new float[hidden], w2, 0);
+	}
+
+	/**
+	 Returns the board width the model is for.
+	*/
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 Returns the number of hidden units, 0 for a linear model.
+	*/
+	public int getHidden() {
+		return hidden;
+	}
+
+	/**
+	 Stores the board's features in into[offset..offset+width+EXTRA_FEATURES-1]:
+	 the column heights, then the max height, holes and bumpiness.
+	 Training code should use this so its inputs match rateBoard()'s.
+	*/
+	public static void features(Board board, float[] into, int offset) {
+		final int width = board.getWidth();
+		int holes = 0;
+		int bumpiness = 0;
+		int lastHeight = board.getColumnHeight(0);
+		for (int x = 0; x < width; x++) {
+			final int colHeight = board.getColumnHeight(x);
+			into[offset + x] = colHeight;
+			bumpiness += Math.abs(colHeight - lastHeight);
+			lastHeight = colHeight;
+			for (int y = colHeight - 2; y >= 0; y--) {
+				if (!board.getGrid(x, y)) holes++;
+			}
+		}
+		into[offset + width] = board.getMaxHeight();
+		into[offset + width + 1] = holes;
+		into[offset + width + 2] = bumpiness;
+	}
+
+	/**
+	 Rates the board with the model, lower being better.
+	*/
+	public double rateBoard(Board board) {
+		if (board.getWidth() != width) {
+			throw new IllegalArgumentException("model is for width " + width + ", board is " + board.getWidth());
+		}
+		float[] x = scratch.get();
+		features(board, x, 0);
+		if (hidden == 0) return dot(w1, 0, x, inputs) + b2;
+
+		float out = b2;
+		for (int j = 0; j < hidden; j++) {
+			float sum = b1[j] + dot(w1, j * inputs, x, inputs);
+			if (sum > 0) out += w2[j] * sum;
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the dot product of w[offset..offset+n-1] and x[0..n-1].
+	 * Four running sums, so the adds do not wait on each other.
+	 */
+	private static float dot(float[] w, int offset, float[] x, int n) {
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += w[offset + i] * x[i];
+			s1 += w[offset + i + 1] * x[i + 1];
+			s2 += w[offset + i + 2] * x[i + 2];
+			s3 += w[offset + i + 3] * x[i + 3];
+		}
+		for (; i < n; i++) {
+			s0 += w[offset + i] * x[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 Loads a model from a file written by save().
+	*/
+	public static EvaluatorBrain load(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != MAGIC) throw new IOException("not a model file: " + fileName);
+			int inputs = in.readInt();
+			int hidden = in.readInt();
+			if (inputs <= EXTRA_FEATURES || hidden < 0) throw new IOException("bad model size");
+			int width = inputs - EXTRA_FEATURES;
+			float[] w1 = readFloats(in, (hidden == 0) ? inputs : hidden * inputs);
+			if (hidden == 0) return new EvaluatorBrain(width, w1, in.readFloat());
+			float[] b1 = readFloats(in, hidden);
+			float[] w2 = readFloats(in, hidden);
+			return new EvaluatorBrain(width, hidden, w1, b1, w2, in.readFloat());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 Saves the model to a file that load() can read.
+	*/
+	public void save(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(inputs);
+			out.writeInt(hidden);
+			writeFloats(out, w1);
+			if (hidden > 0) {
+				writeFloats(out, b1);
+				writeFloats(out, w2);
+			}
+			out.writeFloat(b2);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static float[] readFloats(DataInputStream in, int count) throws IOException {
+		float[] values = new float[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readFloat();
+		}
+		return values;
+	}
+
+	private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+		for (float value: values) {
+			out.writeFloat(value);
+		}
+	}
+}
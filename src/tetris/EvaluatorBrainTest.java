@@ -0,0 +1,106 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.*;
+
+/*
+ Unit test for EvaluatorBrain.
+ */
+public class EvaluatorBrainTest {
+	private Board[] boards;
+
+	@Before
+	public void setUp() {
+		boards = TetrisGame.samplePositions(200, 4);
+	}
+
+	// The linear model made from WeightedBrain weights rates boards the
+	// same, to float precision.
+	@Test
+	public void testLinearMatchesWeightedBrain() {
+		double[] weights = {8, 40, 1.25, 2};
+		WeightedBrain weighted = new WeightedBrain(weights);
+		EvaluatorBrain linear = EvaluatorBrain.fromWeights(weights, TetrisGame.WIDTH);
+		for (Board board: boards) {
+			double expected = weighted.rateBoard(board);
+			assertEquals(expected, linear.rateBoard(board), 1e-4 * Math.max(1, expected));
+		}
+	}
+
+	@Test
+	public void testFeatures() {
+		Board board = new Board(4, 6);
+		board.place(Piece.getPieces()[Piece.PYRAMID].fastRotation().fastRotation(), 0, 0);
+		board.commit();
+		// upside-down pyramid: heights 2 2 2 0, holes under columns 0 and 2
+		float[] features = new float[4 + EvaluatorBrain.EXTRA_FEATURES];
+		EvaluatorBrain.features(board, features, 0);
+		assertEquals(2, features[0], 0);
+		assertEquals(2, features[1], 0);
+		assertEquals(2, features[2], 0);
+		assertEquals(0, features[3], 0);
+		assertEquals(2, features[4], 0);	// max height
+		assertEquals(2, features[5], 0);	// holes
+		assertEquals(2, features[6], 0);	// bumpiness
+	}
+
+	// A hand-built perceptron: one unit passes, one is cut off by the ReLU.
+	@Test
+	public void testMlp() {
+		int width = 2;
+		float[] w1 = {
+			1, 0, 0, 0, 0,		// unit 0: height of column 0
+			0, 0, 0, 0, -1,		// unit 1: minus the bumpiness, never positive
+		};
+		float[] b1 = {0.5f, 0};
+		float[] w2 = {3, 100};
+		EvaluatorBrain brain = new EvaluatorBrain(width, 2, w1, b1, w2, 1);
+		Board board = new Board(2, 4);
+		board.place(Piece.getPieces()[Piece.STICK], 0, 0);
+		board.commit();
+		assertEquals(1 + 3 * (4 + 0.5), brain.rateBoard(board), 1e-6);
+	}
+
+	// Models survive a save and load, and play the same.
+	@Test
+	public void testSaveLoad() throws Exception {
+		File file = File.createTempFile("model", ".bin");
+		try {
+			EvaluatorBrain[] models = {
+				EvaluatorBrain.random(TetrisGame.WIDTH, 0, 3),
+				EvaluatorBrain.random(TetrisGame.WIDTH, 8, 3),
+			};
+			for (EvaluatorBrain model: models) {
+				model.save(file.getPath());
+				EvaluatorBrain loaded = EvaluatorBrain.load(file.getPath());
+				assertEquals(model.getHidden(), loaded.getHidden());
+				for (Board board: boards) {
+					assertEquals(model.rateBoard(board), loaded.rateBoard(board), 0);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	// The linear DefaultBrain model plays a whole game like DefaultBrain.
+	@Test
+	public void testPlaysLikeDefaultBrain() {
+		EvaluatorBrain brain = EvaluatorBrain.fromWeights(WeightedBrain.DEFAULT_WEIGHTS, TetrisGame.WIDTH);
+		TetrisGame a = new TetrisGame(brain, new UniformGenerator(7, 5));
+		TetrisGame b = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 5));
+		a.play(300);
+		b.play(300);
+		assertEquals(b.getCount(), a.getCount());
+		assertEquals(b.getRowsCleared(), a.getRowsCleared());
+		assertEquals(b.getBoard().toString(), a.getBoard().toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongWidth() {
+		EvaluatorBrain.random(8, 0, 1).rateBoard(boards[0]);
+	}
+}
@@ -0,0 +1,233 @@
+// ExpectimaxBrain.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ A brain that looks past the current piece. For each way to play the
+ current piece it averages the best reply over every piece that might
+ come next, weighted by the odds the piece generator gives it, and so on
+ for deeper plies (where the odds are taken to be even).
+
+ <p>Searches one ply at a time (iterative deepening) until a per-move
+ time budget runs out, and returns the best move of the deepest search
+ that finished. The one-ply search is DefaultBrain's, so there is always
+ an answer. To keep the 7-way fan-out affordable, only the few best
+ placements by rateBoard() are expanded at each ply, and the board is
+ searched in place using Board savepoints instead of copies.
+ The search state lives in fields, so an instance is not thread-safe.
+*/
+public class ExpectimaxBrain extends SearchBrain {
+	public static final long DEFAULT_BUDGET_NANOS = 20 * 1000000L;	// 20 ms
+	public static final int DEFAULT_MAX_DEPTH = 3;
+
+	// placements expanded per ply, best first by rateBoard()
+	private static final int CANDIDATES = 6;
+	// score for a position where a piece cannot be played at all
+	private static final double LOSS = 1e9;
+
+	private Piece[] pieces;
+	private PieceGenerator generator;
+	private long budgetNanos;
+	private int maxDepth;
+
+	private double[] nextOdds;		// odds of the next piece
+	private double[] evenOdds;		// odds of the pieces after that
+	private long deadline;
+	private boolean timedOut;
+	private int lastDepth;
+	private Brain.Move scratchMove = new Brain.Move();
+
+	// the candidate placements at each ply, best first
+	private int[][] candX;
+	private int[][] candY;
+	private Piece[][] candPiece;
+	private double[][] candScore;
+
+	/**
+	 Creates a brain with even odds for the next piece and the default budget.
+	*/
+	public ExpectimaxBrain() {
+		this(null, DEFAULT_BUDGET_NANOS, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 Creates a brain that takes the next-piece odds from the given generator
+	 (or even odds if it is null), and searches at most maxDepth pieces deep
+	 within budgetNanos per move.
+	*/
+	public ExpectimaxBrain(PieceGenerator generator, long budgetNanos, int maxDepth) {
+		this.generator = generator;
+		this.budgetNanos = budgetNanos;
+		this.maxDepth = maxDepth;
+		pieces = Piece.getPieces();
+		nextOdds = new double[pieces.length];
+		evenOdds = new double[pieces.length];
+		Arrays.fill(evenOdds, 1.0 / pieces.length);
+
+		candX = new int[maxDepth][CANDIDATES];
+		candY = new int[maxDepth][CANDIDATES];
+		candPiece = new Piece[maxDepth][CANDIDATES];
+		candScore = new double[maxDepth][CANDIDATES];
+	}
+
+	/**
+	 Returns the depth of the deepest search that finished in the last bestMove().
+	*/
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	/**
+	 Returns the best move found within the time budget.
+	 See the Brain interface for details.
+	*/
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		deadline = System.nanoTime() + budgetNanos;
+		timedOut = false;
+		if (generator != null) generator.getOdds(nextOdds);
+		else System.arraycopy(evenOdds, 0, nextOdds, 0, nextOdds.length);
+
+		// one ply: the plain greedy search
+		move = super.bestMove(board, piece, limitHeight, move);
+		lastDepth = 1;
+		if (move == null) return null;
+
+		for (int depth = 2; depth <= maxDepth; depth++) {
+			int found = collectCandidates(board, piece, limitHeight, 0);
+			double bestScore = LOSS * 2;
+			int best = -1;
+
+			board.savepoint();
+			for (int i = 0; i < found && !timedOut; i++) {
+				playCandidate(board, 0, i);
+				double score = expectedScore(board, limitHeight, depth-1, nextOdds, 1);
+				board.rollback();
+				if (score < bestScore) {
+					bestScore = score;
+					best = i;
+				}
+			}
+			board.releaseSavepoint();
+
+			if (timedOut || best < 0) break;
+			move.x = candX[0][best];
+			move.y = candY[0][best];
+			move.piece = candPiece[0][best];
+			move.score = bestScore;
+			lastDepth = depth;
+		}
+		return move;
+	}
+
+	/**
+	 * Returns the expected score of a committed board with some pieces still to come:
+	 * the odds-weighted average, over each possible next piece, of its best play.
+	 * @param board the board, committed
+	 * @param limitHeight passed through from bestMove()
+	 * @param unknown how many more pieces to look at
+	 * @param odds the odds of each piece being the next one
+	 * @param ply how many pieces deep this is, for the scratch arrays
+	 * @return the expected score, lower is better
+	 */
+	private double expectedScore(Board board, int limitHeight, int unknown, double[] odds, int ply) {
+		double total = 0;
+		for (int p = 0; p < pieces.length && !timedOut; p++) {
+			if (odds[p] == 0) continue;
+			total += odds[p] * bestScore(board, pieces[p], limitHeight, unknown-1, ply);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the score of the best play of the piece on the board, looking
+	 * the given number of pieces further ahead.
+	 */
+	private double bestScore(Board board, Piece piece, int limitHeight, int unknown, int ply) {
+		if (unknown == 0) {
+			Brain.Move leaf = super.bestMove(board, piece, limitHeight, scratchMove);
+			return (leaf == null) ? LOSS : leaf.score;
+		}
+
+		int found = collectCandidates(board, piece, limitHeight, ply);
+		if (found == 0) return LOSS;
+		double best = LOSS;
+		board.savepoint();
+		for (int i = 0; i < found && !timedOut; i++) {
+			playCandidate(board, ply, i);
+			double score = expectedScore(board, limitHeight, unknown, evenOdds, ply+1);
+			board.rollback();
+			if (score < best) best = score;
+		}
+		board.releaseSavepoint();
+		return best;
+	}
+
+	/**
+	 * Tries every play of the piece like DefaultBrain, keeping the best few
+	 * by rateBoard() in the candidate arrays for the given ply.
+	 * Also notices when the time budget has run out.
+	 * @return the number of candidates found
+	 */
+	private int collectCandidates(Board board, Piece piece, int limitHeight, int ply) {
+		if (System.nanoTime() - deadline > 0) {	// by difference, as the deadline may wrap
+			timedOut = true;
+			return 0;
+		}
+
+		int[] xs = candX[ply];
+		int[] ys = candY[ply];
+		Piece[] ps = candPiece[ply];
+		double[] scores = candScore[ply];
+		int found = 0;
+		Piece current = piece;
+		final int[] landing = landingScratch(board.getWidth());
+
+		board.commit();
+		while (true) {
+			final int yBound = limitHeight - current.getHeight()+1;
+			final int xBound = board.dropHeights(current, landing);
+
+			for (int x = 0; x<xBound; x++) {
+				int y = landing[x];
+				if (y<yBound) {
+					int result = board.place(current, x, y);
+					if (result <= Board.PLACE_ROW_FILLED) {
+						if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+						double score = rateBoard(board);
+
+						// insertion into the sorted top-CANDIDATES list
+						if (found < CANDIDATES || score < scores[found-1]) {
+							int i = (found < CANDIDATES) ? found++ : found-1;
+							while (i > 0 && scores[i-1] > score) {
+								xs[i] = xs[i-1];
+								ys[i] = ys[i-1];
+								ps[i] = ps[i-1];
+								scores[i] = scores[i-1];
+								i--;
+							}
+							xs[i] = x;
+							ys[i] = y;
+							ps[i] = current;
+							scores[i] = score;
+						}
+					}
+					board.undo();
+				}
+			}
+
+			current = current.fastRotation();
+			if (current == piece) break;
+		}
+		return found;
+	}
+
+	/**
+	 * Plays a candidate for real on the board: place, clear and commit.
+	 */
+	private void playCandidate(Board board, int ply, int i) {
+		board.place(candPiece[ply][i], candX[ply][i], candY[ply][i]);
+		board.clearRows();
+		board.commit();
+	}
+}
@@ -0,0 +1,71 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for ExpectimaxBrain.
+ */
+public class ExpectimaxBrainTest {
+	private Piece[] pieces;
+	private Board board;
+
+	@Before
+	public void setUp() throws Exception {
+		pieces = Piece.getPieces();
+		board = new Board(10, 24);
+		// a bumpy start so there are real choices to make
+		board.place(pieces[Piece.L1], 0, 0);
+		board.commit();
+		board.place(pieces[Piece.S1], 4, 0);
+		board.commit();
+	}
+
+	// The search puts the board back exactly as it found it.
+	@Test
+	public void testBoardUnchanged() {
+		String before = board.toString();
+		long version = board.getVersion();
+		ExpectimaxBrain brain = new ExpectimaxBrain(null, 10L * 1000000000L, 3);
+		Brain.Move move = brain.bestMove(board, pieces[Piece.PYRAMID], 24, null);
+		assertNotNull(move);
+		assertEquals(3, brain.getLastDepth());
+		assertEquals(before, board.toString());
+		assertEquals(version, board.getVersion());
+		
+		// the move it returns can be played
+		assertTrue(board.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+	}
+
+	// With no time at all it still answers, with the one-ply move.
+	@Test
+	public void testOutOfTime() {
+		ExpectimaxBrain brain = new ExpectimaxBrain(null, 0, 3);
+		Brain.Move move = brain.bestMove(board, pieces[Piece.STICK], 24, null);
+		Brain.Move greedy = new DefaultBrain().bestMove(board, pieces[Piece.STICK], 24, null);
+		assertEquals(1, brain.getLastDepth());
+		assertEquals(greedy.x, move.x);
+		assertEquals(greedy.y, move.y);
+		assertSame(greedy.piece, move.piece);
+	}
+
+	// A budget so large the deadline wraps past Long.MAX_VALUE is no time limit.
+	@Test
+	public void testUnlimitedBudget() {
+		ExpectimaxBrain brain = new ExpectimaxBrain(null, Long.MAX_VALUE, 2);
+		brain.bestMove(board, pieces[Piece.STICK], 24, null);
+		assertEquals(2, brain.getLastDepth());
+	}
+
+	// It plays a full game within the default budget.
+	@Test
+	public void testPlaysGame() {
+		PieceGenerator generator = new BagGenerator(7, 3);
+		ExpectimaxBrain brain = new ExpectimaxBrain(generator, ExpectimaxBrain.DEFAULT_BUDGET_NANOS, 2);
+		TetrisGame game = new TetrisGame(brain, generator);
+		game.play(100);
+		assertEquals(100, game.getCount());
+		assertTrue(game.isGameOn());
+	}
+}
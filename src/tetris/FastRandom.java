@@ -0,0 +1,83 @@
+// FastRandom.java
+package tetris;
+
+/**
+ A small, fast, non-thread-safe random generator (xoshiro256**),
+ used instead of java.util.Random so that games running on different
+ threads never contend on a shared atomic seed.
+ Seeds are expanded with SplitMix64, and split() derives a new
+ generator whose stream is independent of this one.
+*/
+public class FastRandom {
+	private long s0, s1, s2, s3;
+	
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 Creates a generator whose sequence is fully determined by the seed.
+	*/
+	public FastRandom(long seed) {
+		long x = seed;
+		x += GOLDEN_GAMMA; s0 = mix(x);
+		x += GOLDEN_GAMMA; s1 = mix(x);
+		x += GOLDEN_GAMMA; s2 = mix(x);
+		x += GOLDEN_GAMMA; s3 = mix(x);
+	}
+	
+	/**
+	 Returns the next 64 random bits.
+	*/
+	public long nextLong() {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+	
+	/**
+	 Returns a random int in 0..bound-1, without modulo bias.
+	*/
+	public int nextInt(int bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		// Lemire's multiply-shift with rejection of the biased low range
+		long r = nextLong() >>> 32;
+		long m = r * bound;
+		long low = m & 0xffffffffL;
+		if (low < bound) {
+			long threshold = (0x100000000L - bound) % bound;
+			while (low < threshold) {
+				r = nextLong() >>> 32;
+				m = r * bound;
+				low = m & 0xffffffffL;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+	
+	/**
+	 Returns a random double in [0, 1).
+	*/
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 Returns a new generator seeded from this one's stream.
+	 Advances this generator.
+	*/
+	public FastRandom split() {
+		return new FastRandom(mix(nextLong()));
+	}
+	
+	// SplitMix64 finalizer
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
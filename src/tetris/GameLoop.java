@@ -0,0 +1,233 @@
+// GameLoop.java
+package tetris;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ Runs a game's simulation on its own thread at a fixed timestep,
+ separate from rendering. Every step is due at an exact time on the
+ nanoTime() clock; if the thread falls behind, it plays the missed
+ steps back to back to catch up, up to MAX_CATCH_UP at a time, then
+ skips the rest rather than running ever further behind.
+
+ <p>Input comes in through lock-free queues: post() for the player's
+ moves, from one thread, and invoke() for commands such as starting a
+ game, from any thread. The loop applies all queued input before the
+ steps that are due, the moves drained from an InputQueue in runs of
+ the same move, and after anything has changed calls publish(), where
+ the game hands a snapshot of its state to the renderer. Everything
+ else in the Game is only ever called on the loop thread, so the game
+ state needs no locking.
+*/
+public class GameLoop implements Runnable {
+	public static final int MAX_CATCH_UP = 5;
+	public static final int INPUT_CAPACITY = 64;
+
+	/**
+	 The game a loop runs. All of these are called on the loop thread.
+	*/
+	public interface Game extends InputQueue.Sink {
+		/**
+		 Applies a run of repeat copies of the same input posted with
+		 post(). The game may skip the ones that would change nothing.
+		*/
+		public void input(int verb, int repeat);
+
+		/**
+		 Advances the simulation by one timestep.
+		*/
+		public void step();
+
+		/**
+		 Makes the state after the latest inputs and steps visible to
+		 the renderer.
+		*/
+		public void publish();
+	}
+
+	private final Game game;
+	private final InputQueue inputs = new InputQueue(INPUT_CAPACITY);
+	private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+	private volatile long stepNanos;
+	private volatile boolean running;
+	private volatile Thread thread;
+
+	// counters, written by the loop thread only
+	private volatile long steps;
+	private volatile long skippedSteps;
+
+	/**
+	 Creates a loop stepping the game every stepMillis milliseconds.
+	*/
+	public GameLoop(Game game, double stepMillis) {
+		this.game = game;
+		setStepMillis(stepMillis);
+	}
+
+	/**
+	 Sets the timestep. Takes effect from the next step; a shorter step
+	 brings the next one forward rather than waiting out the old one.
+	*/
+	public void setStepMillis(double stepMillis) {
+		if (stepMillis <= 0) throw new IllegalArgumentException("step must be positive");
+		stepNanos = (long) (stepMillis * 1e6);
+		wake();
+	}
+
+	/**
+	 Returns the timestep in milliseconds.
+	*/
+	public double getStepMillis() {
+		return stepNanos / 1e6;
+	}
+
+	/**
+	 Queues one input for the loop. All inputs must be posted from the
+	 same thread, e.g. the Swing thread. Returns false, dropping the
+	 input, if the loop has fallen INPUT_CAPACITY inputs behind.
+	*/
+	public boolean post(int verb) {
+		boolean queued = inputs.offer(verb);
+		wake();
+		return queued;
+	}
+
+	/**
+	 Returns the queue of posted inputs, for its latency stats.
+	*/
+	public InputQueue getInputs() {
+		return inputs;
+	}
+
+	/**
+	 Queues a command to run on the loop thread, in order with other
+	 commands and before the input posted after it.
+	*/
+	public void invoke(Runnable command) {
+		commands.add(command);
+		wake();
+	}
+
+	/**
+	 Returns true if called on the loop thread.
+	*/
+	public boolean isLoopThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 Returns the number of steps run so far.
+	*/
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 Returns the number of steps dropped because the loop fell more
+	 than MAX_CATCH_UP steps behind.
+	*/
+	public long getSkippedSteps() {
+		return skippedSteps;
+	}
+
+	/**
+	 Starts the loop on a new daemon thread with the given name.
+	*/
+	public synchronized void start(String name) {
+		if (thread != null) throw new IllegalStateException("already started");
+		running = true;
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 Stops the loop and waits for its thread to finish.
+	*/
+	public void stop() throws InterruptedException {
+		Thread loop;
+		synchronized (this) {
+			running = false;
+			loop = thread;
+		}
+		if (loop != null) {
+			LockSupport.unpark(loop);
+			loop.join();
+		}
+	}
+
+	/**
+	 The loop itself; use start() rather than calling this.
+	*/
+	public void run() {
+		long nextStep = System.nanoTime() + stepNanos;
+		while (running) {
+			boolean changed = false;
+			Runnable command;
+			while ((command = commands.poll()) != null) {
+				try {
+					command.run();
+				} catch (RuntimeException e) {
+					report(e);
+				}
+				changed = true;
+			}
+			try {
+				if (inputs.drain(game) > 0) changed = true;
+			} catch (RuntimeException e) {
+				report(e);	// the rest of the inputs run next time round
+				changed = true;
+			}
+
+			final long period = stepNanos;
+			long now = System.nanoTime();
+			if (nextStep - now > period) nextStep = now + period;	// the step got shorter
+			int caughtUp = 0;
+			while (now - nextStep >= 0 && caughtUp < MAX_CATCH_UP) {
+				try {
+					game.step();
+				} catch (RuntimeException e) {
+					report(e);
+				}
+				changed = true;
+				steps++;
+				nextStep += period;
+				caughtUp++;
+			}
+			if (now - nextStep >= 0) {
+				// too far behind to catch up: drop the backlog
+				skippedSteps += (now - nextStep) / period + 1;
+				nextStep = now + period;
+			}
+
+			if (changed) {
+				try {
+					game.publish();
+				} catch (RuntimeException e) {
+					report(e);
+				}
+				inputs.published();
+			}
+
+			long wait = nextStep - System.nanoTime();
+			if (wait > 0 && commands.isEmpty() && inputs.isEmpty()) {
+				LockSupport.parkNanos(this, wait);
+			}
+		}
+	}
+
+	/**
+	 * Reports an exception thrown by the game, like an uncaught one, but
+	 * keeps the loop running, as the Swing event thread does.
+	 */
+	private void report(RuntimeException e) {
+		Thread current = Thread.currentThread();
+		current.getUncaughtExceptionHandler().uncaughtException(current, e);
+	}
+
+	private void wake() {
+		Thread loop = thread;
+		if (loop != null) LockSupport.unpark(loop);
+	}
+}
@@ -0,0 +1,153 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+
+/*
+ Unit test for GameLoop, with a game that records what the loop calls.
+ Timing bounds are loose, since the test machine may be busy.
+ */
+public class GameLoopTest {
+	private static final int STEP = -1;
+
+	private Recorder game;
+	private GameLoop loop;
+
+	// Records inputs, and STEP for each step; can stall a step.
+	private static class Recorder implements GameLoop.Game {
+		final List<Integer> calls = new ArrayList<Integer>();
+		volatile int publishes;
+		volatile long stallMillis;
+
+		public synchronized void input(int verb, int repeat) {
+			for (int i = 0; i < repeat; i++) {
+				calls.add(verb);
+			}
+		}
+
+		public void step() {
+			synchronized (this) {
+				calls.add(STEP);
+			}
+			long stall = stallMillis;
+			if (stall > 0) {
+				stallMillis = 0;
+				try {
+					Thread.sleep(stall);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		public void publish() {
+			publishes++;
+		}
+
+		synchronized List<Integer> calls() {
+			return new ArrayList<Integer>(calls);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		game = new Recorder();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (loop != null) loop.stop();
+	}
+
+	@Test
+	public void testSteps() throws InterruptedException {
+		loop = new GameLoop(game, 5);
+		loop.start("test-loop");
+		Thread.sleep(300);
+		long steps = loop.getSteps();
+		assertTrue("steps " + steps, steps >= 20 && steps <= 61);
+		assertTrue(game.publishes > 0);
+	}
+
+	// Inputs are applied in order, between steps, and published.
+	@Test
+	public void testInputs() throws InterruptedException {
+		loop = new GameLoop(game, 60000);
+		loop.start("test-loop");
+		loop.post(JTetris.LEFT);
+		loop.post(JTetris.ROTATE);
+		loop.post(JTetris.DROP);
+		waitFor(3);
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(JTetris.LEFT);
+		expected.add(JTetris.ROTATE);
+		expected.add(JTetris.DROP);
+		assertEquals(expected, game.calls());
+		assertEquals(0, loop.getSteps());
+		Thread.sleep(50);
+		assertTrue(game.publishes > 0);
+		assertEquals(3, loop.getInputs().getLatencyCount());
+	}
+
+	@Test
+	public void testInvoke() throws InterruptedException {
+		loop = new GameLoop(game, 60000);
+		loop.start("test-loop");
+		final boolean[] onLoop = new boolean[1];
+		loop.invoke(new Runnable() {
+			public void run() {
+				onLoop[0] = loop.isLoopThread();
+				game.input(JTetris.DOWN, 1);
+			}
+		});
+		waitFor(1);
+		assertTrue(onLoop[0]);
+		assertFalse(loop.isLoopThread());
+	}
+
+	// A stalled step is followed by at most MAX_CATCH_UP steps back to
+	// back, and the rest are skipped.
+	@Test
+	public void testCatchUp() throws InterruptedException {
+		loop = new GameLoop(game, 2);
+		game.stallMillis = 200;
+		loop.start("test-loop");
+		Thread.sleep(300);
+		assertTrue(loop.getSkippedSteps() >= 50);
+		assertTrue(loop.getSteps() < 200);
+	}
+
+	// A shorter step takes effect without waiting out the old one.
+	@Test
+	public void testSetStep() throws InterruptedException {
+		loop = new GameLoop(game, 60000);
+		loop.start("test-loop");
+		Thread.sleep(20);
+		loop.setStepMillis(2);
+		assertEquals(2.0, loop.getStepMillis(), 1e-9);
+		Thread.sleep(200);
+		assertTrue(loop.getSteps() > 10);
+	}
+
+	@Test
+	public void testStop() throws InterruptedException {
+		loop = new GameLoop(game, 1);
+		loop.start("test-loop");
+		Thread.sleep(20);
+		loop.stop();
+		long steps = loop.getSteps();
+		Thread.sleep(20);
+		assertEquals(steps, loop.getSteps());
+	}
+
+	private void waitFor(int calls) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (game.calls().size() < calls && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+}
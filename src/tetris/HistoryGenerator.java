@@ -0,0 +1,98 @@
+// HistoryGenerator.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ A history generator in the style of the arcade games -- remembers the
+ last few pieces dealt and rerolls a few times to avoid repeating one
+ of them. Repeats are rare but, unlike a bag, not impossible.
+*/
+public class HistoryGenerator implements PieceGenerator {
+	public static final int DEFAULT_HISTORY = 4;
+	public static final int DEFAULT_TRIES = 4;
+	
+	private int pieceCount;
+	private int[] history;	// circular buffer of recent pieces, -1 if empty
+	private int historyPos;
+	private int tries;
+	private FastRandom random;
+
+	/**
+	 Creates a generator with the default history length and tries.
+	*/
+	public HistoryGenerator(int pieceCount, long seed) {
+		this(pieceCount, DEFAULT_HISTORY, DEFAULT_TRIES, new FastRandom(seed));
+	}
+	
+	/**
+	 Creates a generator that avoids the last historyLength pieces,
+	 rolling at most tries times before accepting a repeat.
+	*/
+	public HistoryGenerator(int pieceCount, int historyLength, int tries, long seed) {
+		this(pieceCount, historyLength, tries, new FastRandom(seed));
+	}
+	
+	private HistoryGenerator(int pieceCount, int historyLength, int tries, FastRandom random) {
+		if (tries < 1) throw new IllegalArgumentException("tries must be at least 1");
+		this.pieceCount = pieceCount;
+		this.tries = tries;
+		this.random = random;
+		history = new int[historyLength];
+		Arrays.fill(history, -1);
+		historyPos = 0;
+	}
+	
+	public int next() {
+		int piece = random.nextInt(pieceCount);
+		for (int roll = 1; roll < tries && inHistory(piece); roll++) {
+			piece = random.nextInt(pieceCount);
+		}
+		if (history.length > 0) {
+			history[historyPos] = piece;
+			historyPos = (historyPos + 1) % history.length;
+		}
+		return piece;
+	}
+	
+	public void fill(int[] queue, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			queue[i] = next();
+		}
+	}
+	
+	/**
+	 A piece not in the history is accepted on any roll that hits it,
+	 while a piece in the history only comes out if every roll lands
+	 in the history and the last one hits it. With m distinct pieces
+	 in the history out of n, that is (1/n) * sum of (m/n)^k for
+	 k < tries, or (1/n) * (m/n)^(tries-1), respectively.
+	*/
+	public void getOdds(double[] odds) {
+		int inHistory = 0;
+		for (int piece = 0; piece < pieceCount; piece++) {
+			if (inHistory(piece)) inHistory++;
+		}
+		double repeat = (double) inHistory / pieceCount;	// chance a roll hits the history
+		double fresh = 0;
+		double power = 1;
+		for (int roll = 0; roll < tries; roll++) {
+			fresh += power;
+			if (roll < tries - 1) power *= repeat;
+		}
+		for (int piece = 0; piece < pieceCount; piece++) {
+			odds[piece] = (inHistory(piece) ? power : fresh) / pieceCount;
+		}
+	}
+	
+	public PieceGenerator split() {
+		return new HistoryGenerator(pieceCount, history.length, tries, random.split());
+	}
+	
+	private boolean inHistory(int piece) {
+		for (int i = 0; i < history.length; i++) {
+			if (history[i] == piece) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,177 @@
+// InputQueue.java
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A bounded queue of player inputs from one producer thread, the Swing
+ thread for the keyboard, to one consumer thread, the game loop. It is
+ a ring buffer with no locks: the producer only writes the tail and
+ the consumer only writes the head.
+
+ <p>The consumer takes everything queued at once with drain(), which
+ hands over runs of the same input as one call with a repeat count, so
+ the game can skip repeats that change nothing, such as more LEFTs
+ against the wall. When the queue is full, further inputs are dropped
+ and counted rather than blocking the Swing thread.
+
+ <p>Each input is stamped with nanoTime() when queued. Once the game
+ has shown the result, the consumer calls published() and the queue
+ adds the time from each input to then into its latency stats.
+*/
+public class InputQueue {
+	/**
+	 Takes the runs of inputs from drain().
+	*/
+	public interface Sink {
+		/**
+		 Applies repeat copies of the same input, queued one after
+		 the other.
+		*/
+		public void input(int verb, int repeat);
+	}
+
+	private final int[] verbs;
+	private final long[] stamps;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();	// next to drain, written by the consumer
+	private final AtomicLong tail = new AtomicLong();	// next to fill, written by the producer
+
+	// written by the producer only
+	private volatile long dropped;
+
+	// inputs drained but not yet published, consumer only
+	private long pendingCount;
+	private long pendingStampSum;
+	private long pendingOldest;
+
+	// written by the consumer only
+	private volatile long runs;
+	private volatile long latencyCount;
+	private volatile long latencyTotal;
+	private volatile long latencyMax;
+
+	/**
+	 Creates a queue holding at least the given number of inputs,
+	 rounded up to a power of two.
+	*/
+	public InputQueue(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("bad capacity " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		verbs = new int[size];
+		stamps = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 Returns how many inputs the queue holds.
+	*/
+	public int getCapacity() {
+		return verbs.length;
+	}
+
+	/**
+	 Queues an input. Only call this from the one producer thread.
+	 Returns false, dropping the input, if the queue is full.
+	*/
+	public boolean offer(int verb) {
+		long t = tail.get();
+		if (t - head.get() == verbs.length) {
+			dropped++;
+			return false;
+		}
+		int index = (int) t & mask;
+		verbs[index] = verb;
+		stamps[index] = System.nanoTime();
+		tail.lazySet(t + 1);	// publishes the slot to the consumer
+		return true;
+	}
+
+	/**
+	 Returns true if there is nothing to drain.
+	*/
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	/**
+	 Hands everything queued so far to the sink, one call per run of
+	 the same input, in order, and returns how many inputs there were.
+	 Only call this from the one consumer thread. If the sink throws,
+	 the runs after the one it threw on stay queued.
+	*/
+	public int drain(Sink sink) {
+		final long start = head.get();
+		final long end = tail.get();
+		long from = start;
+		while (from < end) {
+			final int verb = verbs[(int) from & mask];
+			long to = from;
+			do {
+				long stamp = stamps[(int) to & mask];
+				if (pendingCount == 0) pendingOldest = stamp;
+				pendingCount++;
+				pendingStampSum += stamp;
+				to++;
+			} while (to < end && verbs[(int) to & mask] == verb);
+			head.lazySet(to);	// hands the slots back before the sink runs
+			runs++;
+			sink.input(verb, (int) (to - from));
+			from = to;
+		}
+		return (int) (end - start);
+	}
+
+	/**
+	 Records that the drained inputs are now visible, e.g. the board
+	 showing them was published. Only call this from the consumer.
+	*/
+	public void published() {
+		if (pendingCount == 0) return;
+		long now = System.nanoTime();
+		latencyCount += pendingCount;
+		latencyTotal += pendingCount * now - pendingStampSum;
+		latencyMax = Math.max(latencyMax, now - pendingOldest);
+		pendingCount = 0;
+		pendingStampSum = 0;
+	}
+
+	/**
+	 Returns the number of inputs dropped because the queue was full.
+	*/
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 Returns the number of runs drained, each one call to the sink.
+	*/
+	public long getRuns() {
+		return runs;
+	}
+
+	/**
+	 Returns the number of inputs whose latency has been recorded.
+	*/
+	public long getLatencyCount() {
+		return latencyCount;
+	}
+
+	/**
+	 Returns the mean time from queueing an input to publishing it, in
+	 microseconds.
+	*/
+	public double getMeanLatencyMicros() {
+		long count = latencyCount;
+		return (count == 0) ? 0 : latencyTotal / (count * 1e3);
+	}
+
+	/**
+	 Returns the longest time from queueing an input to publishing it,
+	 in microseconds.
+	*/
+	public double getMaxLatencyMicros() {
+		return latencyMax / 1e3;
+	}
+}
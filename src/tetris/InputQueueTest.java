@@ -0,0 +1,127 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+
+/*
+ Unit test for InputQueue.
+ */
+public class InputQueueTest {
+	private InputQueue queue;
+	private List<int[]> runs;
+	private InputQueue.Sink sink;
+
+	@Before
+	public void setUp() {
+		queue = new InputQueue(8);
+		runs = new ArrayList<int[]>();
+		sink = new InputQueue.Sink() {
+			public void input(int verb, int repeat) {
+				runs.add(new int[] {verb, repeat});
+			}
+		};
+	}
+
+	// Repeats of the same input come out as one run, in order.
+	@Test
+	public void testRuns() {
+		int[] verbs = {JTetris.LEFT, JTetris.LEFT, JTetris.LEFT, JTetris.ROTATE, JTetris.LEFT, JTetris.DROP, JTetris.DROP};
+		for (int verb: verbs) {
+			assertTrue(queue.offer(verb));
+		}
+		assertFalse(queue.isEmpty());
+		assertEquals(verbs.length, queue.drain(sink));
+		assertTrue(queue.isEmpty());
+		int[][] expected = {{JTetris.LEFT, 3}, {JTetris.ROTATE, 1}, {JTetris.LEFT, 1}, {JTetris.DROP, 2}};
+		assertEquals(expected.length, runs.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertArrayEquals(expected[i], runs.get(i));
+		}
+		assertEquals(4, queue.getRuns());
+		assertEquals(0, queue.drain(sink));
+	}
+
+	// A full queue drops inputs rather than blocking, and takes more once drained.
+	@Test
+	public void testBounded() {
+		assertEquals(8, queue.getCapacity());
+		assertEquals(16, new InputQueue(9).getCapacity());
+		for (int i = 0; i < 8; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(JTetris.LEFT));
+		assertEquals(1, queue.getDropped());
+		assertEquals(8, queue.drain(sink));
+		// wraps around the ring
+		for (int i = 0; i < 8; i++) {
+			assertTrue(queue.offer(JTetris.RIGHT));
+		}
+		runs.clear();
+		assertEquals(8, queue.drain(sink));
+		assertArrayEquals(new int[] {JTetris.RIGHT, 8}, runs.get(0));
+	}
+
+	// If the sink throws, the runs after it stay queued.
+	@Test
+	public void testSinkThrows() {
+		queue.offer(JTetris.LEFT);
+		queue.offer(JTetris.RIGHT);
+		try {
+			queue.drain(new InputQueue.Sink() {
+				public void input(int verb, int repeat) {
+					throw new RuntimeException("bad input");
+				}
+			});
+			fail();
+		} catch (RuntimeException expected) {
+		}
+		assertEquals(1, queue.drain(sink));
+		assertArrayEquals(new int[] {JTetris.RIGHT, 1}, runs.get(0));
+	}
+
+	@Test
+	public void testLatency() throws InterruptedException {
+		queue.offer(JTetris.LEFT);
+		queue.offer(JTetris.ROTATE);
+		queue.drain(sink);
+		Thread.sleep(10);
+		queue.published();
+		queue.published();	// nothing new to record
+		assertEquals(2, queue.getLatencyCount());
+		assertTrue(queue.getMeanLatencyMicros() >= 10000);
+		assertTrue(queue.getMaxLatencyMicros() >= queue.getMeanLatencyMicros());
+	}
+
+	// One producer and one consumer thread pass every input through in order.
+	@Test
+	public void testThreads() throws InterruptedException {
+		final int count = 100000;
+		final InputQueue big = new InputQueue(64);
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					while (!big.offer(i)) Thread.yield();
+				}
+			}
+		};
+		producer.start();
+		final int[] next = new int[1];
+		InputQueue.Sink check = new InputQueue.Sink() {
+			public void input(int verb, int repeat) {
+				assertEquals(next[0], verb);
+				assertEquals(1, repeat);
+				next[0]++;
+			}
+		};
+		long deadline = System.currentTimeMillis() + 10000;
+		while (next[0] < count && System.currentTimeMillis() < deadline) {
+			if (big.drain(check) == 0) Thread.yield();
+		}
+		producer.join();
+		assertEquals(count, next[0]);
+	}
+}
@@ -1,6 +1,11 @@
 package tetris;
 
 import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
@@ -17,13 +22,30 @@ public class JBrainTetris extends JTetris{
 	private static String STATUS_TEXT = "Status: ";
 	
 	private static int ADVERSARY_SLIDER_LENGTH = 100;
+	
+	// milliseconds of play per loop step in turbo mode, about one frame
+	private static int TURBO_FRAME_MILLIS = 16;
 		
 	private JCheckBox brainMode;
+	private JCheckBox turboMode;
 	private JSlider adversary;
 	
 	private JLabel status = new JLabel(STATUS_TEXT + OK_TEXT);
 
 	private DefaultBrain brain = new DefaultBrain();
+	private Brain.Move turboMove = new Brain.Move();
+	private Brain.Move adversaryMove = new Brain.Move();
+	
+	// The brain's plan for the current piece is computed once per piece
+	// on this worker, so a slow brain never holds up the game loop.
+	private BrainPlanner planner = new BrainPlanner(brain,
+		Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "brain-planner");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
 
 	JBrainTetris(int pixels) {
 		super(pixels);
@@ -39,6 +61,17 @@ public class JBrainTetris extends JTetris{
 		panel.add(new JLabel("Brain:"));
 		brainMode = new JCheckBox("Brain active"); 
 		panel.add(brainMode);
+		turboMode = new JCheckBox("Turbo");
+		panel.add(turboMode);
+		
+		// turbo mode changes the loop's rate, so keep it in sync with both boxes
+		ActionListener timerSync = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				updateTimer();
+			}
+		};
+		brainMode.addActionListener(timerSync);
+		turboMode.addActionListener(timerSync);
 		
 		// make a little panel, put a JSlider in it. JSlider responds to getValue() 
 		JPanel little = new JPanel();
@@ -57,7 +90,7 @@ public class JBrainTetris extends JTetris{
 	 Called to change the position of the current piece.
 	 Each key press calls this once with the verbs
 	 LEFT RIGHT ROTATE DROP for the user moves,
-	 and the timer calls it with the verb DOWN to move
+	 and the loop calls it with the verb DOWN to move
 	 the piece down one square.
 
 	 Before this is called, the piece is at some location in the board.
@@ -68,20 +101,95 @@ public class JBrainTetris extends JTetris{
 	public void tick(int verb) {
 		if (!gameOn) return;
 		
+		if (verb == DOWN && isTurbo()) {
+			turboTick();
+			return;
+		}
+		
 		if (currentPiece != null) {
 			board.undo();	// remove the piece from its old position
 		}
 		
 		if (verb == DOWN && brainMode.isSelected()) {
-			board.undo();
-			Brain.Move bestMove = brain.bestMove(board, currentPiece, HEIGHT+TOP_SPACE, null);
-			movePieceIfNeeded(bestMove.x,currentX);
-			rotatePieceIfNeeded(bestMove.piece,currentPiece);
+			Brain.Move bestMove = planner.getPlan(board, currentPiece, HEIGHT+TOP_SPACE);
+			if (bestMove != null) {
+				movePieceIfNeeded(bestMove.x,currentX);
+				rotatePieceIfNeeded(bestMove.piece,currentPiece);
+			}
 		}
 		
 		super.tick(verb);
 	}
 	
+	/**
+	 Adds the new piece, then starts the brain planning for it
+	 right away rather than waiting for the first DOWN tick.
+	*/
+	public void addNewPiece() {
+		planner.invalidate();
+		super.addNewPiece();
+		if (gameOn && currentPiece != null && brainMode.isSelected() && !isTurbo()) {
+			board.undo();
+			planner.getPlan(board, currentPiece, HEIGHT+TOP_SPACE);
+			board.place(currentPiece, currentX, currentY);
+		}
+	}
+	
+	/**
+	 Plays pieces straight into the spot the brain picks, with no
+	 falling animation, until the frame budget runs out. Scoring and
+	 game over go through the same landPiece() as a normal landing,
+	 while Swing only gets to repaint once per batch.
+	*/
+	private void turboTick() {
+		long deadline = System.currentTimeMillis() + TURBO_FRAME_MILLIS;
+		while (gameOn && System.currentTimeMillis() < deadline) {
+			board.undo();	// remove the piece from its spawn position
+			
+			Piece piece = currentPiece;
+			int x = currentX;
+			Brain.Move bestMove = brain.bestMove(board, currentPiece, HEIGHT+TOP_SPACE, turboMove);
+			if (bestMove != null) {
+				piece = bestMove.piece;
+				x = bestMove.x;
+			}
+			int y = board.dropHeight(piece, x);
+			
+			int result = board.place(piece, x, y);
+			if (result > Board.PLACE_ROW_FILLED) {
+				board.undo();
+				stopGame();
+				break;
+			}
+			currentPiece = piece;
+			currentX = x;
+			currentY = y;
+			landPiece();
+		}
+		repaint();
+	}
+	
+	/**
+	 Steps the loop once a frame while turbo mode is on, since each
+	 turbo tick does a whole frame's worth of play.
+	*/
+	public void updateTimer() {
+		super.updateTimer();
+		if (isTurbo()) loop.setStepMillis(TURBO_FRAME_MILLIS);
+	}
+	
+	private boolean isTurbo() {
+		return turboMode != null && turboMode.isSelected() && brainMode.isSelected();
+	}
+	
+	/**
+	 Stops the game and discards any plan still being computed.
+	*/
+	public void stopGame() {
+		super.stopGame();
+		planner.invalidate();
+	}
+	
 	/**
 	 Selects the next piece to use using the random generator
 	 set in startGame().
@@ -91,15 +199,15 @@ public class JBrainTetris extends JTetris{
 		Piece piece = null;
 		
 		if (randIndex >= adversary.getValue()) {
-			status.setText(STATUS_TEXT + OK_TEXT);
+			showStatus(OK_TEXT);
 			piece = super.pickNextPiece();
 		} else {
 			// Finds the worst piece with highest best score (worst best score).
-			status.setText(STATUS_TEXT + OK_STAR_TEXT);
+			showStatus(OK_STAR_TEXT);
 			Piece worstPiece = null;
 			double worstScore = 0;
 			for (Piece candidatePiece: pieces) {
-				Brain.Move bestMove = brain.bestMove(board, candidatePiece, HEIGHT+TOP_SPACE, null);
+				Brain.Move bestMove = brain.bestMove(board, candidatePiece, HEIGHT+TOP_SPACE, adversaryMove);
 				if (bestMove.score > worstScore) {
 					worstScore = bestMove.score;
 					worstPiece = candidatePiece;
@@ -111,6 +219,17 @@ public class JBrainTetris extends JTetris{
 		return(piece);
 	}
 	
+	/**
+	 * Shows the given text after the status label, on the Swing thread.
+	 */
+	private void showStatus(final String text) {
+		onSwing(new Runnable() {
+			public void run() {
+				status.setText(STATUS_TEXT + text);
+			}
+		});
+	}
+	
 	private void movePieceIfNeeded(int targetX, int currentX) {
 		if (targetX < currentX) {
 			super.tick(LEFT);
@@ -5,6 +5,7 @@ import java.awt.*;
 import javax.swing.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.awt.event.*;
 import javax.swing.event.*;
 
@@ -30,8 +31,13 @@ import java.awt.Toolkit;
  -The "currentPiece" points to a piece that is
  currently falling, or is null when there is no piece.
  -tick() moves the current piece
- -a timer object calls tick(DOWN) periodically
- -keystrokes call tick() with LEFT, RIGHT, etc.
+ -the game state belongs to a GameLoop thread, which calls
+ tick(DOWN) at a fixed timestep
+ -keystrokes and the start/stop buttons are queued to the loop,
+ which calls tick() with LEFT, RIGHT, etc., skipping repeated
+ keys that would change nothing
+ -after each change the loop publishes a copy of the board, and
+ paintComponent() draws that copy on the Swing thread
  -Board.undo() is used to remove the piece from its
  old position and then Board.place() is used to install
  the piece in its new position.
@@ -78,7 +84,8 @@ public class JTetris extends JComponent {
 	protected boolean gameOn;	// true if we are playing
 	protected int count;		 // how many pieces played so far
 	protected long startTime;	// used to measure elapsed time
-	protected Random random;	 // the random generator for new pieces
+	protected Random random;	 // the random generator for the adversary
+	protected PieceGenerator generator;	// picks the next piece
 	
 	
 	// Controls
@@ -88,12 +95,24 @@ public class JTetris extends JComponent {
 	protected JLabel timeLabel;
 	protected JButton startButton;
 	protected JButton stopButton;
-	protected javax.swing.Timer timer;
+	protected GameLoop loop;
+	private boolean loopStarted;
 	protected JSlider speed;
 	protected JCheckBox testButton;
 	
 	public final int DELAY = 400;	// milliseconds per tick
 	
+	// Boards published by the loop for painting, triple buffered: the
+	// loop fills its own, then swaps it with the ready one; paint swaps
+	// its own with the ready one only when that is newer.
+	private static class PaintFrame {
+		final Board board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		volatile boolean fresh;
+	}
+	private PaintFrame loopFrame = new PaintFrame();
+	private final AtomicReference<PaintFrame> readyFrame = new AtomicReference<PaintFrame>(new PaintFrame());
+	private PaintFrame paintFrame = new PaintFrame();
+	
 	/**
 	 * Creates a new JTetris where each tetris square
 	 * is drawn with the given number of pixels.
@@ -112,9 +131,9 @@ public class JTetris extends JComponent {
 
 
 		/*
-		 Register key handlers that call
-		 tick with the appropriate constant.
-		 e.g. 'j' and '4'  call tick(LEFT)
+		 Register key handlers that queue
+		 the appropriate constant for tick().
+		 e.g. 'j' and '4'  queue LEFT
 		 
 		 I tried doing the arrow keys, but the JSliders
 		 try to use those too, causing problems.
@@ -124,14 +143,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(LEFT);
+					loop.post(LEFT);
 				}
 			}, "left", KeyStroke.getKeyStroke('4'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(LEFT);
+					loop.post(LEFT);
 				}
 			}, "left", KeyStroke.getKeyStroke('j'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -141,14 +160,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(RIGHT);
+					loop.post(RIGHT);
 				}
 			}, "right", KeyStroke.getKeyStroke('6'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(RIGHT);
+					loop.post(RIGHT);
 				}
 			}, "right", KeyStroke.getKeyStroke('l'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -158,14 +177,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(ROTATE);
+					loop.post(ROTATE);
 				}
 			}, "rotate", KeyStroke.getKeyStroke('5'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(ROTATE);
+					loop.post(ROTATE);
 				}
 			}, "rotate", KeyStroke.getKeyStroke('k'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -175,39 +194,59 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(DROP);
+					loop.post(DROP);
 				}
 			}, "drop", KeyStroke.getKeyStroke('0'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 			new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					tick(DROP);
+					loop.post(DROP);
 				}
 			}, "drop", KeyStroke.getKeyStroke('n'), WHEN_IN_FOCUSED_WINDOW
 		);
 		
 		
-		// Create the Timer object and have it send
-		// tick(DOWN) periodically
-		timer = new javax.swing.Timer(DELAY, new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
+		// Create the game loop, which applies the queued keys
+		// and sends tick(DOWN) at a fixed rate -- started by addNotify()
+		loop = new GameLoop(new GameLoop.Game() {
+			public void input(int verb, int repeat) {
+				tick(verb, repeat);
+			}
+			public void step() {
 				tick(DOWN);
 			}
-		});
+			public void publish() {
+				publishFrame();
+			}
+		}, DELAY);
 		
 		requestFocusInWindow(); 
 	}
 	
+	/**
+	 Starts the game loop the first time the component is made
+	 displayable, so it never calls into a subclass that is still being
+	 constructed, or into controls createControlPanel() has yet to make.
+	 Keys and commands queued before then wait for it.
+	*/
+	public void addNotify() {
+		super.addNotify();
+		if (!loopStarted) {
+			loopStarted = true;
+			loop.start("tetris-loop");
+		}
+	}
+	
 
 
 	/**
-	 Sets the internal state and starts the timer
-	 so the game is happening.
+	 Sets the internal state so the game is happening.
+	 Runs on the loop thread; the Start button queues it there.
 	*/
 	public void startGame() {
-		// cheap way to reset the board state
-		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		// empty the board in place, clearing just the rows in use
+		board.reset();
 		
 		// draw the new board state once
 		repaint();
@@ -222,11 +261,15 @@ public class JTetris extends JComponent {
 		
 		if (testMode) random = new Random(0);	// same seq every time
 		else random = new Random(); // diff seq each game
+		generator = createPieceGenerator(testMode ? 0 : random.nextLong());
 		
 		enableButtons();
-		timeLabel.setText(" ");
+		onSwing(new Runnable() {
+			public void run() {
+				timeLabel.setText(" ");
+			}
+		});
 		addNewPiece();
-		timer.start();
 		startTime = System.currentTimeMillis();
 	}
 	
@@ -236,21 +279,38 @@ public class JTetris extends JComponent {
 	 based on the gameOn state.
 	*/
 	protected void enableButtons() {
-		startButton.setEnabled(!gameOn);
-		stopButton.setEnabled(gameOn);
+		final boolean on = gameOn;
+		onSwing(new Runnable() {
+			public void run() {
+				startButton.setEnabled(!on);
+				stopButton.setEnabled(on);
+			}
+		});
 	}
 	
 	/**
-	 Stops the game.
+	 Runs the given update to the Swing controls on the Swing thread:
+	 right away if already there, otherwise queued.
+	*/
+	protected void onSwing(Runnable update) {
+		if (SwingUtilities.isEventDispatchThread()) update.run();
+		else SwingUtilities.invokeLater(update);
+	}
+	
+	/**
+	 Stops the game. Runs on the loop thread; the Stop button
+	 queues it there.
 	*/
 	public void stopGame() {
 		gameOn = false;
 		enableButtons();
-		timer.stop();
 		
-		long delta = (System.currentTimeMillis() - startTime)/10;
-		timeLabel.setText(Double.toString(delta/100.0) + " seconds");
-
+		final long delta = (System.currentTimeMillis() - startTime)/10;
+		onSwing(new Runnable() {
+			public void run() {
+				timeLabel.setText(Double.toString(delta/100.0) + " seconds");
+			}
+		});
 	}
 	
 	
@@ -284,13 +344,23 @@ public class JTetris extends JComponent {
 
 
 	/**
-	 Selects the next piece to use using either the random generator
+	 Creates the piece generator for a new game. The default deals
+	 every piece with equal probability; override to play with a
+	 7-bag or history generator instead.
+	*/
+	protected PieceGenerator createPieceGenerator(long seed) {
+		return new UniformGenerator(pieces.length, seed);
+	}
+
+
+	/**
+	 Selects the next piece to use using either the piece generator
 	 set in startGame() or adversary.
 	*/
 	public Piece pickNextPiece() {
 		int pieceNum;
 		
-		pieceNum = (int) (pieces.length * random.nextDouble());
+		pieceNum = generator.next();
 		
 		Piece piece	 = pieces[pieceNum];
 		
@@ -338,8 +408,14 @@ public class JTetris extends JComponent {
 	 Updates the count/score labels with the latest values.
 	 */
 	protected void updateCounters() {
-		countLabel.setText("Pieces " + count);
-		scoreLabel.setText("Score " + score);
+		final String pieces = "Pieces " + count;
+		final String points = "Score " + score;
+		onSwing(new Runnable() {
+			public void run() {
+				countLabel.setText(pieces);
+				scoreLabel.setText(points);
+			}
+		});
 	}
 	
 	
@@ -408,8 +484,8 @@ public class JTetris extends JComponent {
 	 Called to change the position of the current piece.
 	 Each key press calls this once with the verbs
 	 LEFT RIGHT ROTATE DROP for the user moves,
-	 and the timer calls it with the verb DOWN to move
-	 the piece down one square.
+	 and the loop calls it with the verb DOWN to move
+	 the piece down one square. Always called on the loop thread.
 
 	 Before this is called, the piece is at some location in the board.
 	 This advances the piece to be at its next location.
@@ -452,31 +528,7 @@ public class JTetris extends JComponent {
 		 "landed" position, so we're done with the falling of this piece.
 		*/
 		if (failed && verb==DOWN && !moved) {	// it's landed
-		
-			int cleared = board.clearRows();
-			if (cleared > 0) {
-				// score goes up by 5, 10, 20, 40 for row clearing
-				// clearing 4 gets you a beep!
-				switch (cleared) {
-					case 1: score += 5;	 break;
-					case 2: score += 10;  break;
-					case 3: score += 20;  break;
-					case 4: score += 40; Toolkit.getDefaultToolkit().beep(); break;
-					default: score += 50;  // could happen with non-standard pieces
-				}
-				updateCounters();
-				repaint();	// repaint to show the result of the row clearing
-			}
-			
-			
-			// if the board is too tall, we've lost
-			if (board.getMaxHeight() > board.getHeight() - TOP_SPACE) {
-				stopGame();
-			}
-			// Otherwise add a new piece and keep playing
-			else {
-				addNewPiece();
-			}
+			landPiece();
 		}
 		
 		// Note if the player made a successful non-DOWN move --
@@ -486,6 +538,71 @@ public class JTetris extends JComponent {
 
 
 
+	/**
+	 Calls tick(verb) repeat times, for a run of the same key queued
+	 while the loop was busy, but stops once the repeats change nothing.
+	 A tick() that leaves the piece where it was, say a LEFT against the
+	 wall, will do the same again; and once the piece comes back to where
+	 the first tick left it, say after a full cycle of ROTATEs, each
+	 further cycle would too, so only the part cycle left over is played.
+	*/
+	public void tick(int verb, int repeat) {
+		if (verb == DOWN) {
+			// DOWN can land the piece, so each one counts
+			for (int i = 0; i < repeat; i++) tick(verb);
+			return;
+		}
+		if (repeat <= 0) return;
+		tick(verb);
+		final Piece firstPiece = currentPiece;
+		final int firstX = currentX;
+		final int firstY = currentY;
+		final boolean firstMoved = moved;
+		for (int done = 1; done < repeat && gameOn; done++) {
+			Piece piece = currentPiece;
+			int x = currentX;
+			int y = currentY;
+			boolean wasMoved = moved;
+			tick(verb);
+			if (currentPiece == piece && currentX == x && currentY == y && moved == wasMoved) {
+				break;	// a fixed point
+			}
+			if (currentPiece == firstPiece && currentX == firstX && currentY == firstY && moved == firstMoved) {
+				repeat = done + 1 + (repeat - done - 1) % done;	// a cycle of done ticks
+			}
+		}
+	}
+
+
+
+	/**
+	 Called once the current piece has come to rest in the board.
+	 Clears any filled rows and scores them, then either ends the game
+	 if the board is too tall or adds the next piece.
+	*/
+	protected void landPiece() {
+		int cleared = board.clearRows();
+		if (cleared > 0) {
+			// score goes up by 5, 10, 20, 40 for row clearing
+			// clearing 4 gets you a beep!
+			score += TetrisGame.scoreForRows(cleared);
+			if (cleared == 4) Toolkit.getDefaultToolkit().beep();
+			updateCounters();
+			repaint();	// repaint to show the result of the row clearing
+		}
+		
+		// if the board is too tall, we've lost
+		if (board.getMaxHeight() > board.getHeight() - TOP_SPACE) {
+			stopGame();
+		}
+		// Otherwise add a new piece and keep playing
+		else {
+			addNewPiece();
+		}
+	}
+
+
+
 	/**
 	 Given a piece and a position for the piece, generates
 	 a repaint for the rectangle that just encloses the piece.
@@ -542,12 +659,37 @@ public class JTetris extends JComponent {
 
 
 	/**
-	 Draws the current board with a 1 pixel border
+	 Publishes a copy of the board for paintComponent(), then asks
+	 for a repaint. Called by the loop after the game changes.
+	*/
+	protected void publishFrame() {
+		loopFrame.board.copyFrom(board);
+		loopFrame.fresh = true;
+		loopFrame = readyFrame.getAndSet(loopFrame);
+		repaint();
+	}
+	
+	/**
+	 Returns the newest board published by the loop. Only called on
+	 the Swing thread.
+	*/
+	private Board latestFrame() {
+		if (readyFrame.get().fresh) {
+			paintFrame = readyFrame.getAndSet(paintFrame);
+			paintFrame.fresh = false;
+		}
+		return paintFrame.board;
+	}
+	
+	
+	/**
+	 Draws the latest published board with a 1 pixel border
 	 around the whole thing. Uses the pixel helpers
 	 above to map board coords to pixel coords.
 	 Draws rows that are filled all the way across in green.
 	*/
 	public void paintComponent(Graphics g) {
+		final Board board = latestFrame();
 		
 		// Draw a rect around the whole thing
 		g.drawRect(0, 0, getWidth()-1, getHeight()-1);
@@ -602,12 +744,12 @@ public class JTetris extends JComponent {
 	
 	
 	/**
-	 Updates the timer to reflect the current setting of the 
+	 Updates the loop's timestep to reflect the current setting of the 
 	 speed slider.
 	*/
 	public void updateTimer() {
 		double value = ((double)speed.getValue())/speed.getMaximum();
-		timer.setDelay((int)(DELAY - value*DELAY));
+		loop.setStepMillis(Math.max(1, DELAY - value*DELAY));
 	}
 	
 	
@@ -638,7 +780,11 @@ public class JTetris extends JComponent {
 		panel.add(startButton);
 		startButton.addActionListener( new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				startGame();
+				loop.invoke(new Runnable() {
+					public void run() {
+						startGame();
+					}
+				});
 			}
 		});
 		
@@ -647,7 +793,11 @@ public class JTetris extends JComponent {
 		panel.add(stopButton);
 		stopButton.addActionListener( new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				stopGame();
+				loop.invoke(new Runnable() {
+					public void run() {
+						if (gameOn) stopGame();
+					}
+				});
 			}
 		});
 		
@@ -0,0 +1,16 @@
+// LookaheadBrain.java -- the interface for brains that use a piece preview
+
+package tetris;
+
+/**
+ A brain that can plan with the upcoming pieces, when the game shows
+ a preview of them. The game calls setPreview() before each bestMove().
+*/
+public interface LookaheadBrain extends Brain {
+	/**
+	 Tells the brain the pieces that come after the one passed to the next
+	 bestMove(), soonest first. Only preview[0..count-1] are used. The brain
+	 should not keep the array past the bestMove() call.
+	*/
+	public void setPreview(Piece[] preview, int count);
+}
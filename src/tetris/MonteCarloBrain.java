@@ -0,0 +1,287 @@
+// MonteCarloBrain.java
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ A brain that judges each play of the piece by playing it out. From the
+ board each play leaves, it runs many short rollouts of random pieces,
+ played either greedily (with DefaultBrain) or at random, and rates the
+ board at the end of each. A rollout that loses scores LOSS. The play
+ with the lowest average wins.
+
+ <p>Rollouts run in parallel on a pool of worker threads. Each worker
+ has its own scratch board, random stream and Move, and resets the
+ board with Board.copyFrom(), so a rollout allocates nothing.
+ Work is handed out round-robin across the plays, so they all get about
+ the same number of rollouts when the deadline cuts the search short.
+ The workers are shared by every call, so an instance is not
+ thread-safe: give each calling thread its own.
+*/
+public class MonteCarloBrain extends SearchBrain {
+	public static final int DEFAULT_ROLLOUTS = 32;		// per play
+	public static final int DEFAULT_ROLLOUT_LENGTH = 4;	// pieces per rollout
+	public static final long DEFAULT_BUDGET_NANOS = 50 * 1000000L;	// 50 ms
+
+	// score for a rollout that loses the game
+	private static final double LOSS = 10000;
+
+	private int rollouts = DEFAULT_ROLLOUTS;
+	private int rolloutLength = DEFAULT_ROLLOUT_LENGTH;
+	private long budgetNanos = DEFAULT_BUDGET_NANOS;
+	private boolean greedy = true;
+
+	private Piece[] pieces;
+	private ExecutorService executor;
+	private Worker[] workers;
+
+	// The plays of the current bestMove(), shared read-only with the workers
+	private Board root;
+	private int limitHeight;
+	private int playCount;
+	private int[] playX = new int[0];
+	private int[] playY = new int[0];
+	private Piece[] playPiece = new Piece[0];
+	private AtomicInteger nextItem = new AtomicInteger();
+	private long deadline;
+
+	/**
+	 Creates a brain using one worker per core.
+	*/
+	public MonteCarloBrain() {
+		this(Runtime.getRuntime().availableProcessors(), 1);
+	}
+
+	/**
+	 Creates a brain with the given number of worker threads, seeded
+	 for reproducible rollouts (when run with one thread and no deadline).
+	*/
+	public MonteCarloBrain(int threads, long seed) {
+		pieces = Piece.getPieces();
+		FastRandom seeds = new FastRandom(seed);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(seeds.split());
+		}
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "rollout-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 Sets the number of rollouts per play and the pieces in each rollout.
+	*/
+	public void setRollouts(int rollouts, int rolloutLength) {
+		this.rollouts = rollouts;
+		this.rolloutLength = rolloutLength;
+	}
+
+	/**
+	 Sets the time allowed per move. Rollouts still running at the
+	 deadline are abandoned.
+	*/
+	public void setBudget(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+	/**
+	 Chooses whether rollouts play greedily with DefaultBrain (the default)
+	 or place pieces at random.
+	*/
+	public void setGreedy(boolean greedy) {
+		this.greedy = greedy;
+	}
+
+	/**
+	 Stops the worker threads. The brain cannot be used afterwards.
+	*/
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 Returns the play with the best average rollout score.
+	 See the Brain interface for details.
+	*/
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		deadline = System.nanoTime() + budgetNanos;
+		this.limitHeight = limitHeight;
+		board.commit();
+		if (root == null || root.getWidth() != board.getWidth() || root.getHeight() != board.getHeight()) {
+			root = new Board(board);
+			for (Worker worker: workers) {
+				worker.scratch = new Board(board.getWidth(), board.getHeight());
+			}
+		} else {
+			root.copyFrom(board);
+		}
+		collectPlays(piece);
+		if (playCount == 0) return null;
+
+		// hand out rollouts to the workers
+		for (Worker worker: workers) {
+			worker.reset(playCount);
+		}
+		nextItem.set(0);
+		List<Future<Object>> results = new ArrayList<Future<Object>>(workers.length);
+		for (Worker worker: workers) {
+			results.add(executor.submit(worker));
+		}
+		try {
+			for (Future<Object> result: results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("rollout failed", e.getCause());
+		}
+
+		// pick the best average among the plays that got rollouts
+		if (move == null) move = new Brain.Move();
+		double bestScore = Double.MAX_VALUE;
+		int best = -1;
+		for (int i = 0; i < playCount; i++) {
+			double total = 0;
+			int count = 0;
+			for (Worker worker: workers) {
+				total += worker.totals[i];
+				count += worker.counts[i];
+			}
+			if (count > 0 && total / count < bestScore) {
+				bestScore = total / count;
+				best = i;
+			}
+		}
+		if (best < 0) {
+			// out of time before a single rollout finished
+			return super.bestMove(board, piece, limitHeight, move);
+		}
+		move.x = playX[best];
+		move.y = playY[best];
+		move.piece = playPiece[best];
+		move.score = bestScore;
+		return move;
+	}
+
+	/**
+	 * Lists every legal play of the piece on the root board.
+	 */
+	private void collectPlays(Piece piece) {
+		int most = 4 * root.getWidth();
+		if (playX.length < most) {
+			playX = new int[most];
+			playY = new int[most];
+			playPiece = new Piece[most];
+		}
+		playCount = 0;
+		Piece current = piece;
+		final int[] landing = landingScratch(root.getWidth());
+		while (true) {
+			final int yBound = limitHeight - current.getHeight()+1;
+			final int xBound = root.dropHeights(current, landing);
+			for (int x = 0; x<xBound; x++) {
+				int y = landing[x];
+				if (y<yBound) {
+					int result = root.place(current, x, y);
+					if (result <= Board.PLACE_ROW_FILLED) {
+						playX[playCount] = x;
+						playY[playCount] = y;
+						playPiece[playCount] = current;
+						playCount++;
+					}
+					root.undo();
+				}
+			}
+			current = current.fastRotation();
+			if (current == piece) break;
+		}
+	}
+
+	/**
+	 A rollout worker. Its scratch board, random stream, Move and result
+	 arrays belong to it alone, and are reused for every rollout.
+	*/
+	private class Worker implements Callable<Object> {
+		Board scratch;
+		FastRandom random;
+		Brain.Move move = new Brain.Move();
+		double[] totals = new double[0];
+		int[] counts = new int[0];
+
+		Worker(FastRandom random) {
+			this.random = random;
+		}
+
+		void reset(int plays) {
+			if (totals.length < plays) {
+				totals = new double[plays];
+				counts = new int[plays];
+			}
+			for (int i = 0; i < plays; i++) {
+				totals[i] = 0;
+				counts[i] = 0;
+			}
+		}
+
+		public Object call() {
+			int items = playCount * rollouts;
+			while (System.nanoTime() - deadline < 0) {	// by difference, as the deadline may wrap
+				int item = nextItem.getAndIncrement();
+				if (item >= items) break;
+				int play = item % playCount;
+				totals[play] += rollout(play);
+				counts[play]++;
+			}
+			return null;
+		}
+
+		/**
+		 * Plays the given play and then rolloutLength random pieces on
+		 * the scratch board, and rates where it ends up.
+		 */
+		private double rollout(int play) {
+			scratch.copyFrom(root);
+			scratch.place(playPiece[play], playX[play], playY[play]);
+			scratch.clearRows();
+			scratch.commit();
+
+			// lost once a block is above the limit or in the top spawn space
+			int lossHeight = Math.min(limitHeight, scratch.getHeight() - TetrisGame.TOP_SPACE);
+			for (int i = 0; i < rolloutLength; i++) {
+				if (scratch.getMaxHeight() > lossHeight) return LOSS;
+				Piece piece = pieces[random.nextInt(pieces.length)];
+				if (greedy) {
+					Brain.Move next = MonteCarloBrain.super.bestMove(scratch, piece, limitHeight, move);
+					if (next == null) return LOSS;
+					piece = next.piece;
+					scratch.place(piece, next.x, next.y);
+				} else {
+					for (int turns = random.nextInt(4); turns > 0; turns--) {
+						piece = piece.fastRotation();
+					}
+					int x = random.nextInt(scratch.getWidth() - piece.getWidth() + 1);
+					int y = scratch.dropHeight(piece, x);
+					if (y + piece.getHeight() > limitHeight) return LOSS;
+					scratch.place(piece, x, y);
+				}
+				scratch.clearRows();
+				scratch.commit();
+			}
+			if (scratch.getMaxHeight() > lossHeight) return LOSS;
+			return rateBoard(scratch);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for MonteCarloBrain.
+ */
+public class MonteCarloBrainTest {
+	private Piece[] pieces;
+	private MonteCarloBrain brain;
+
+	@Before
+	public void setUp() throws Exception {
+		pieces = Piece.getPieces();
+		brain = new MonteCarloBrain(2, 1);
+		brain.setRollouts(8, 3);
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		brain.shutdown();
+	}
+
+	// The move is legal and the board passed in is left alone.
+	@Test
+	public void testBoardUnchanged() {
+		Board board = new Board(10, 24);
+		board.place(pieces[Piece.L1], 0, 0);
+		board.commit();
+		String before = board.toString();
+		
+		Brain.Move move = brain.bestMove(board, pieces[Piece.S2], 24, null);
+		assertNotNull(move);
+		assertEquals(before, board.toString());
+		assertTrue(board.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+	}
+	
+	// Random rollouts and an expired deadline both still give a move.
+	@Test
+	public void testRandomAndOutOfTime() {
+		Board board = new Board(10, 24);
+		brain.setGreedy(false);
+		assertNotNull(brain.bestMove(board, pieces[Piece.STICK], 24, null));
+		
+		brain.setBudget(0);
+		Brain.Move move = brain.bestMove(board, pieces[Piece.STICK], 24, null);
+		Brain.Move greedy = new DefaultBrain().bestMove(board, pieces[Piece.STICK], 24, null);
+		assertEquals(greedy.x, move.x);
+		assertSame(greedy.piece, move.piece);
+	}
+	
+	// With the documented limit of 20, a board 18 high still has rollouts
+	// that live, so the play is not rated a loss.
+	@Test
+	public void testLimitHeight() {
+		Board board = new Board(10, 24);
+		for (int y = 0; y < 16; y += 4) {
+			board.place(pieces[Piece.STICK], 0, y);
+			board.commit();
+		}
+		board.place(pieces[Piece.SQUARE], 0, 16);
+		board.commit();
+		assertEquals(18, board.getMaxHeight());
+
+		brain.setBudget(Long.MAX_VALUE / 4);
+		Brain.Move move = brain.bestMove(board, pieces[Piece.STICK], 20, null);
+		assertNotNull(move);
+		assertTrue("score " + move.score, move.score < 1000);
+	}
+
+	// A budget so large the deadline wraps past Long.MAX_VALUE is no time
+	// limit: the rollouts run, the same as with a large budget that fits.
+	@Test
+	public void testUnlimitedBudget() {
+		Board board = new Board(10, 24);
+		board.place(pieces[Piece.L1], 0, 0);
+		board.commit();
+		MonteCarloBrain unlimited = new MonteCarloBrain(1, 7);
+		MonteCarloBrain large = new MonteCarloBrain(1, 7);
+		try {
+			unlimited.setBudget(Long.MAX_VALUE);
+			large.setBudget(Long.MAX_VALUE / 4);
+			Brain.Move expected = large.bestMove(board, pieces[Piece.S2], 24, null);
+			Brain.Move move = unlimited.bestMove(board, pieces[Piece.S2], 24, null);
+			assertEquals(expected.score, move.score, 0);
+			assertEquals(expected.x, move.x);
+			assertSame(expected.piece, move.piece);
+		} finally {
+			unlimited.shutdown();
+			large.shutdown();
+		}
+	}
+
+	// It keeps a game going.
+	@Test
+	public void testPlaysGame() {
+		TetrisGame game = new TetrisGame(brain, new UniformGenerator(7, 4));
+		game.play(60);
+		assertEquals(60, game.getCount());
+	}
+}
@@ -27,6 +27,8 @@ public class Piece {
 	private int width;
 	private int height;
 	private Piece next; // "next" rotation
+	private int index = -1;	// place in getPieces(), for the standard pieces
+	private int rotation;	// fastRotation() steps from the root piece
 
 	static private Piece[] pieces;	// singleton static array of first rotations
 	
@@ -164,11 +166,12 @@ public class Piece {
 	 until eventually getting back to the first rotation.
 	 (provided code)
 	*/
-	public static Piece[] getPieces() {
+	public static synchronized Piece[] getPieces() {
 		// lazy evaluation -- create static array if needed
+		// (synchronized, so threads starting at once all get the same pieces)
 		if (Piece.pieces==null) {
 			// use makeFastRotations() to compute all the rotations for each piece
-			Piece.pieces = new Piece[] {
+			Piece[] roots = new Piece[] {
 				makeFastRotations(new Piece(STICK_STR)),
 				makeFastRotations(new Piece(L1_STR)),
 				makeFastRotations(new Piece(L2_STR)),
@@ -177,12 +180,50 @@ public class Piece {
 				makeFastRotations(new Piece(SQUARE_STR)),
 				makeFastRotations(new Piece(PYRAMID_STR)),
 			};
+			for (int i = 0; i < roots.length; i++) {
+				Piece current = roots[i];
+				int rotation = 0;
+				do {
+					current.index = i;
+					current.rotation = rotation++;
+					current = current.next;
+				} while (current != roots[i]);
+			}
+			Piece.pieces = roots;
 		}
 		
 		
 		return Piece.pieces;
 	}
 	
+	/**
+	 Returns the standard piece at the given index of getPieces(),
+	 turned the given number of times by fastRotation().
+	*/
+	public static Piece getPiece(int index, int rotation) {
+		Piece piece = getPieces()[index];
+		for (int i = 0; i < rotation; i++) {
+			piece = piece.next;
+		}
+		return piece;
+	}
+	
+	/**
+	 Returns the index in getPieces() of this piece's rotation cycle,
+	 or -1 if it is not one of the standard pieces.
+	*/
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 Returns how many times the root piece in getPieces() is turned by
+	 fastRotation() to reach this one (0 for pieces not from getPieces()).
+	*/
+	public int getRotation() {
+		return rotation;
+	}
+	
 	/**
 	 * For each column of the piece the lowest block index is found and placed into an int array.
 	 * These values make up the skirt, which has a length of the width of the piece.
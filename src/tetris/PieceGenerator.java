@@ -0,0 +1,36 @@
+// PieceGenerator.java -- the interface for piece sequence generators
+
+package tetris;
+
+/**
+ Decides which piece comes next in a game.
+ Pieces are identified by their index in the array passed to the
+ game, normally Piece.getPieces(). Each generator owns its random
+ stream, so separate games never share random state.
+*/
+public interface PieceGenerator {
+	/**
+	 Returns the index of the next piece.
+	*/
+	public int next();
+	
+	/**
+	 Fills queue[offset..offset+count-1] with the next count piece
+	 indexes, in order. Same result as calling next() count times,
+	 just cheaper for building preview queues in bulk.
+	*/
+	public void fill(int[] queue, int offset, int count);
+	
+	/**
+	 Fills odds[i] with the probability that the next call to next()
+	 returns piece i. Lets a brain weigh the pieces it might get next.
+	*/
+	public void getOdds(double[] odds);
+	
+	/**
+	 Returns a new generator of the same kind, with a random stream
+	 that is independent of this one. Used to give each game of a
+	 batch its own reproducible sequence from one seed.
+	*/
+	public PieceGenerator split();
+}
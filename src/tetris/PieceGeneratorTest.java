@@ -0,0 +1,117 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/*
+ Unit test for the piece generators.
+ */
+public class PieceGeneratorTest {
+	private static final int PIECES = 7;
+
+	// The same seed gives the same sequence, for every kind of generator.
+	@Test
+	public void testSeedReproducible() {
+		PieceGenerator[] a = {new UniformGenerator(PIECES, 42), new BagGenerator(PIECES, 42), new HistoryGenerator(PIECES, 42)};
+		PieceGenerator[] b = {new UniformGenerator(PIECES, 42), new BagGenerator(PIECES, 42), new HistoryGenerator(PIECES, 42)};
+		for (int g = 0; g < a.length; g++) {
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(a[g].next(), b[g].next());
+			}
+		}
+	}
+	
+	// fill() deals the same pieces as repeated next().
+	@Test
+	public void testFillMatchesNext() {
+		PieceGenerator a = new HistoryGenerator(PIECES, 7);
+		PieceGenerator b = new HistoryGenerator(PIECES, 7);
+		int[] queue = new int[105];
+		a.fill(queue, 5, 100);
+		for (int i = 5; i < 105; i++) {
+			assertEquals(b.next(), queue[i]);
+		}
+	}
+	
+	// Every bag of 7 holds each piece exactly once.
+	@Test
+	public void testBagDealsEachPieceOnce() {
+		PieceGenerator bag = new BagGenerator(PIECES, 3);
+		for (int round = 0; round < 100; round++) {
+			boolean[] seen = new boolean[PIECES];
+			for (int i = 0; i < PIECES; i++) {
+				int piece = bag.next();
+				assertFalse(seen[piece]);
+				seen[piece] = true;
+			}
+		}
+	}
+	
+	// The uniform generator hits every piece about equally often.
+	@Test
+	public void testUniformDistribution() {
+		PieceGenerator uniform = new UniformGenerator(PIECES, 1);
+		int[] counts = new int[PIECES];
+		int n = 70000;
+		for (int i = 0; i < n; i++) {
+			counts[uniform.next()]++;
+		}
+		for (int i = 0; i < PIECES; i++) {
+			assertEquals(n / PIECES, counts[i], n / PIECES / 10);
+		}
+	}
+	
+	// The history generator rarely repeats the previous piece.
+	@Test
+	public void testHistoryAvoidsRepeats() {
+		PieceGenerator history = new HistoryGenerator(PIECES, 5);
+		int repeats = 0;
+		int last = history.next();
+		for (int i = 0; i < 10000; i++) {
+			int piece = history.next();
+			if (piece == last) repeats++;
+			last = piece;
+		}
+		// a uniform generator would repeat about 1/7 of the time
+		assertTrue(repeats < 10000 / 7 / 4);
+	}
+	
+	// Split streams differ from each other and from the parent.
+	@Test
+	public void testSplitIndependent() {
+		PieceGenerator parent = new UniformGenerator(PIECES, 9);
+		PieceGenerator child1 = parent.split();
+		PieceGenerator child2 = parent.split();
+		int same = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (child1.next() == child2.next()) same++;
+		}
+		assertTrue(same < 1000 / 4);
+		
+		PieceGenerator again = new UniformGenerator(PIECES, 9);
+		assertEquals(child1.getClass(), again.split().getClass());
+	}
+	
+	// The odds always add up to 1 and match what the bag has left.
+	@Test
+	public void testOdds() {
+		PieceGenerator[] generators = {new UniformGenerator(PIECES, 4), new BagGenerator(PIECES, 4), new HistoryGenerator(PIECES, 4)};
+		double[] odds = new double[PIECES];
+		for (PieceGenerator generator: generators) {
+			for (int i = 0; i < 20; i++) {
+				generator.getOdds(odds);
+				double sum = 0;
+				for (double p: odds) sum += p;
+				assertEquals(1.0, sum, 1e-9);
+				generator.next();
+			}
+		}
+		
+		PieceGenerator bag = new BagGenerator(PIECES, 4);
+		int first = bag.next();
+		bag.getOdds(odds);
+		assertEquals(0.0, odds[first], 0);
+		assertEquals(1.0 / (PIECES-1), odds[(first+1) % PIECES], 1e-9);
+	}
+}
@@ -148,4 +148,25 @@ public class PieceTest {
 
 	}
 	
+	// Each rotation cycle stops at the first repeat, so no two rotations of
+	// a piece cover the same cells. The brains rely on this to try each
+	// distinct placement only once.
+	@Test
+	public void testRotationsDistinct() {
+		int[] expected = {2, 4, 4, 2, 2, 1, 4};
+		Piece[] pieces = Piece.getPieces();
+		for (int i = 0; i < pieces.length; i++) {
+			List<Piece> rotations = new ArrayList<Piece>();
+			Piece current = pieces[i];
+			do {
+				for (Piece other: rotations) {
+					assertFalse(current.equals(other));
+				}
+				rotations.add(current);
+				current = current.fastRotation();
+			} while (current != pieces[i]);
+			assertEquals(expected[i], rotations.size());
+		}
+	}
+	
 }
@@ -0,0 +1,26 @@
+// SearchBrain.java
+package tetris;
+
+/**
+ Base class for brains that replace DefaultBrain's bestMove() with a
+ search of their own, keeping rateBoard() and the one-ply search as
+ super.bestMove(). Such a search has no batch path, so bestMoves()
+ answers one board at a time, and it keeps its state in fields, so an
+ instance is not thread-safe and stays out of BatchRunner.
+*/
+public abstract class SearchBrain extends DefaultBrain {
+	/**
+	 Answers each board in turn with bestMove().
+	*/
+	public void bestMoves(Board[] boards, Piece[] pieces, int from, int to,
+			int limitHeight, Brain.Move[] moves) {
+		BatchRunner.oneByOne(this, boards, pieces, from, to, limitHeight, moves);
+	}
+	
+	/**
+	 Returns false: one instance must not be called from two threads at once.
+	*/
+	public boolean isThreadSafe() {
+		return false;
+	}
+}
@@ -0,0 +1,73 @@
+// StatsBenchmark.java
+package tetris;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ Measures what recording statistics costs the game loop: plays the same
+ DefaultBrain games with and without a StatsWriter recording them, in
+ alternating rounds so both see the same machine load, then times the
+ fastest of several StatsScanner passes over the file written. Run with:
+ <pre>
+ java tetris.StatsBenchmark [pieces per round] [rounds]
+ </pre>
+*/
+public class StatsBenchmark {
+	private static final int GAME_PIECES = 1000;
+	private static final int SCANS = 10;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int pieces = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		File file = File.createTempFile("tetris-stats", ".dat");
+		file.deleteOnExit();
+		StatsWriter writer = new StatsWriter(file.getPath(), 16);
+		StatsWriter.Recorder recorder = writer.newRecorder();
+
+		play(pieces / 4, null);	// warm up the JIT
+		play(pieces / 4, recorder);
+
+		long plain = 0;
+		long recorded = 0;
+		for (int round = 0; round < rounds; round++) {
+			plain += play(pieces, null);
+			recorded += play(pieces, recorder);
+		}
+		writer.close();
+
+		long total = (long) pieces * rounds;
+		System.out.println("pieces " + total + " each way");
+		System.out.println(String.format("no stats     %8.0f ns/piece", plain / (double) total));
+		System.out.println(String.format("stats        %8.0f ns/piece", recorded / (double) total));
+		System.out.println(String.format("overhead     %8.2f %%", 100.0 * (recorded - plain) / plain));
+
+		StatsScanner scanner = new StatsScanner(file.getPath());
+		long nanos = Long.MAX_VALUE;
+		for (int i = 0; i < SCANS; i++) {	// the first ones warm up the JIT
+			long start = System.nanoTime();
+			scanner.scan();
+			nanos = Math.min(nanos, System.nanoTime() - start);
+		}
+		System.out.println(String.format("scan         %d pages, %d pieces in %.1f ms, %.0f Mpieces/s",
+			scanner.getPageCount(), scanner.getPieces(), nanos / 1e6, scanner.getPieces() * 1e3 / nanos));
+		scanner.close();
+	}
+
+	/**
+	 * Plays the given number of pieces in games of up to GAME_PIECES,
+	 * recording them if recorder isn't null.
+	 * @return the nanoseconds taken
+	 */
+	private static long play(int pieces, StatsWriter.Recorder recorder) {
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 1));
+		game.setStats(recorder);
+		long start = System.nanoTime();
+		for (int played = 0; played < pieces; played++) {
+			if (!game.step() || game.getCount() == GAME_PIECES) game.restart();
+		}
+		game.restart();
+		return System.nanoTime() - start;
+	}
+}
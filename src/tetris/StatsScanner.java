@@ -0,0 +1,341 @@
+// StatsScanner.java
+package tetris;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ Aggregates a statistics file written by StatsWriter, straight out of
+ the memory-mapped file. Each page is read a column at a time, each
+ column one run of fixed-width values copied out in bulk and summed in
+ a tight loop over an array. A partly written last page is ignored, so
+ a file can be scanned while it is still being written.
+
+ <p>Typical use:
+ <pre>
+ StatsScanner scanner = new StatsScanner("stats.dat");
+ scanner.scan();
+ ... scanner.getMeanScore(), scanner.getMeanHoles() ...
+ scanner.close();
+ </pre>
+ or run it to print the summary:
+ <pre>
+ java tetris.StatsScanner stats.dat
+ </pre>
+*/
+public class StatsScanner {
+	// pages mapped at a time
+	private static final int MAP_PAGES = 1024;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	// one column of a page, copied out of the file
+	private byte[] bytes = new byte[0];
+	private short[] shorts = new short[0];
+	private int[] ints = new int[0];
+	private long[] longs = new long[0];
+
+	// piece totals
+	private long pieces;
+	private long[] clears = new long[5];	// by rows cleared, 4 for 4 or more
+	private long holes;
+	private long heights;
+	private int maxHeight;
+	private long decisionNanos;
+	private long maxDecisionNanos;
+
+	// game totals
+	private long games;
+	private long gamesOver;
+	private long gamePieces;
+	private long score;
+	private int maxScore;
+	private long rowsCleared;
+	private long gameNanos;
+
+	/**
+	 Opens the file, checking its header.
+	*/
+	public StatsScanner(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, StatsWriter.FILE_HEADER);
+		if (header.getInt(0) != StatsWriter.MAGIC) throw new IOException("not a stats file");
+		if (header.getInt(4) != StatsWriter.VERSION) throw new IOException("unknown stats version");
+		if (header.getInt(8) != StatsWriter.PAGE_SIZE) throw new IOException("unknown stats page size");
+	}
+
+	/**
+	 Returns the number of whole pages in the file.
+	*/
+	public long getPageCount() throws IOException {
+		return (channel.size() - StatsWriter.FILE_HEADER) / StatsWriter.PAGE_SIZE;
+	}
+
+	/**
+	 Reads every whole page in the file and sums it up, replacing the
+	 totals of any earlier scan.
+	*/
+	public void scan() throws IOException {
+		pieces = holes = heights = decisionNanos = maxDecisionNanos = 0;
+		maxHeight = 0;
+		Arrays.fill(clears, 0);
+		games = gamesOver = gamePieces = score = rowsCleared = gameNanos = 0;
+		maxScore = 0;
+
+		final long pageCount = getPageCount();
+		for (long first = 0; first < pageCount; first += MAP_PAGES) {
+			int count = (int) Math.min(MAP_PAGES, pageCount - first);
+			long start = StatsWriter.FILE_HEADER + first * StatsWriter.PAGE_SIZE;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+				(long) count * StatsWriter.PAGE_SIZE);
+			for (int i = 0; i < count; i++) {
+				int page = i * StatsWriter.PAGE_SIZE;
+				int table = buffer.getInt(page);
+				int rows = buffer.getInt(page + 4);
+				if (table == StatsWriter.PIECES) {
+					scanPieces(buffer, page, rows);
+				} else if (table == StatsWriter.GAMES) {
+					scanGames(buffer, page, rows);
+				} else {
+					throw new IOException("bad table " + table + " in page " + (first + i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds up a page of PIECES, one column at a time, each copied out
+	 * in bulk first.
+	 */
+	private void scanPieces(MappedByteBuffer buffer, int page, int rows) {
+		pieces += rows;
+		ensureColumns(rows);
+
+		column(buffer, page, StatsWriter.PIECES, StatsWriter.PIECE_ROWS_CLEARED).get(bytes, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			clears[Math.min(bytes[row], 4)]++;
+		}
+
+		column(buffer, page, StatsWriter.PIECES, StatsWriter.PIECE_MAX_HEIGHT).asShortBuffer().get(shorts, 0, rows);
+		int top = maxHeight;
+		long sum = 0;
+		for (int row = 0; row < rows; row++) {
+			int height = shorts[row];
+			sum += height;
+			if (height > top) top = height;
+		}
+		heights += sum;
+		maxHeight = top;
+
+		column(buffer, page, StatsWriter.PIECES, StatsWriter.PIECE_HOLES).asShortBuffer().get(shorts, 0, rows);
+		sum = 0;
+		for (int row = 0; row < rows; row++) {
+			sum += shorts[row];
+		}
+		holes += sum;
+
+		column(buffer, page, StatsWriter.PIECES, StatsWriter.PIECE_DECISION_NANOS).asIntBuffer().get(ints, 0, rows);
+		long slowest = maxDecisionNanos;
+		sum = 0;
+		for (int row = 0; row < rows; row++) {
+			int nanos = ints[row];
+			sum += nanos;
+			if (nanos > slowest) slowest = nanos;
+		}
+		decisionNanos += sum;
+		maxDecisionNanos = slowest;
+	}
+
+	/**
+	 * Adds up a page of GAMES, one column at a time.
+	 */
+	private void scanGames(MappedByteBuffer buffer, int page, int rows) {
+		games += rows;
+		ensureColumns(rows);
+
+		column(buffer, page, StatsWriter.GAMES, StatsWriter.GAME_PIECES).asIntBuffer().get(ints, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			gamePieces += ints[row];
+		}
+
+		column(buffer, page, StatsWriter.GAMES, StatsWriter.GAME_SCORE).asIntBuffer().get(ints, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			score += ints[row];
+			if (ints[row] > maxScore) maxScore = ints[row];
+		}
+
+		column(buffer, page, StatsWriter.GAMES, StatsWriter.GAME_ROWS_CLEARED).asIntBuffer().get(ints, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			rowsCleared += ints[row];
+		}
+
+		column(buffer, page, StatsWriter.GAMES, StatsWriter.GAME_OVER).get(bytes, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			gamesOver += bytes[row];
+		}
+
+		column(buffer, page, StatsWriter.GAMES, StatsWriter.GAME_NANOS).asLongBuffer().get(longs, 0, rows);
+		for (int row = 0; row < rows; row++) {
+			gameNanos += longs[row];
+		}
+	}
+
+	/**
+	 * Returns the buffer positioned at the start of the column in the page.
+	 */
+	private static ByteBuffer column(MappedByteBuffer buffer, int page, int table, int column) {
+		buffer.position(page + StatsWriter.getColumnStart(table, column));
+		return buffer;
+	}
+
+	/**
+	 * Makes sure the column arrays hold the given number of rows.
+	 */
+	private void ensureColumns(int rows) {
+		if (bytes.length < rows) {
+			bytes = new byte[rows];
+			shorts = new short[rows];
+			ints = new int[rows];
+			longs = new long[rows];
+		}
+	}
+
+	/**
+	 Returns the number of pieces recorded.
+	*/
+	public long getPieces() {
+		return pieces;
+	}
+
+	/**
+	 Returns how many pieces cleared the given number of rows, 0 to 4;
+	 4 counts 4 or more.
+	*/
+	public long getClears(int rows) {
+		return clears[rows];
+	}
+
+	/**
+	 Returns the mean holes in the board after each piece.
+	*/
+	public double getMeanHoles() {
+		return (pieces == 0) ? 0 : holes / (double) pieces;
+	}
+
+	/**
+	 Returns the mean max height of the board after each piece.
+	*/
+	public double getMeanMaxHeight() {
+		return (pieces == 0) ? 0 : heights / (double) pieces;
+	}
+
+	/**
+	 Returns the highest max height the board reached after any piece.
+	*/
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 Returns the mean time the brain took per move, in microseconds.
+	*/
+	public double getMeanDecisionMicros() {
+		return (pieces == 0) ? 0 : decisionNanos / (pieces * 1e3);
+	}
+
+	/**
+	 Returns the longest time the brain took over a move, in microseconds.
+	*/
+	public double getMaxDecisionMicros() {
+		return maxDecisionNanos / 1e3;
+	}
+
+	/**
+	 Returns the number of games recorded.
+	*/
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 Returns the number of recorded games that were played until lost.
+	*/
+	public long getGamesOver() {
+		return gamesOver;
+	}
+
+	/**
+	 Returns the mean pieces played per game.
+	*/
+	public double getMeanPieces() {
+		return (games == 0) ? 0 : gamePieces / (double) games;
+	}
+
+	/**
+	 Returns the mean score per game.
+	*/
+	public double getMeanScore() {
+		return (games == 0) ? 0 : score / (double) games;
+	}
+
+	/**
+	 Returns the best score of any game.
+	*/
+	public int getMaxScore() {
+		return maxScore;
+	}
+
+	/**
+	 Returns the total rows cleared over all the games.
+	*/
+	public long getRowsCleared() {
+		return rowsCleared;
+	}
+
+	/**
+	 Returns the mean time per game, in milliseconds.
+	*/
+	public double getMeanGameMillis() {
+		return (games == 0) ? 0 : gameNanos / (games * 1e6);
+	}
+
+	/**
+	 Closes the file.
+	*/
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	/**
+	 Prints the summary of a stats file.
+	*/
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.out.println("usage: java tetris.StatsScanner <stats file>");
+			return;
+		}
+		StatsScanner scanner = new StatsScanner(args[0]);
+		long start = System.nanoTime();
+		scanner.scan();
+		long nanos = System.nanoTime() - start;
+		System.out.println(String.format("pages %d, scanned in %.1f ms", scanner.getPageCount(), nanos / 1e6));
+		System.out.println(String.format("games %d (%d lost), mean score %.1f, max %d, mean pieces %.1f, mean %.2f ms",
+			scanner.getGames(), scanner.getGamesOver(), scanner.getMeanScore(), scanner.getMaxScore(),
+			scanner.getMeanPieces(), scanner.getMeanGameMillis()));
+		System.out.println(String.format("pieces %d, clears of 1-4 rows %d %d %d %d, rows cleared %d",
+			scanner.getPieces(), scanner.getClears(1), scanner.getClears(2), scanner.getClears(3),
+			scanner.getClears(4), scanner.getRowsCleared()));
+		System.out.println(String.format("mean holes %.2f, mean max height %.2f, max height %d",
+			scanner.getMeanHoles(), scanner.getMeanMaxHeight(), scanner.getMaxHeight()));
+		System.out.println(String.format("decision mean %.1f us, max %.1f us",
+			scanner.getMeanDecisionMicros(), scanner.getMaxDecisionMicros()));
+		scanner.close();
+	}
+}
@@ -0,0 +1,149 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.*;
+
+/*
+ Unit test for StatsWriter and StatsScanner.
+ */
+public class StatsTest {
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("stats", ".dat");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	// The scan adds up to what the games themselves counted, over
+	// several recorders and many pages.
+	@Test
+	public void testScanMatchesGames() throws Exception {
+		StatsWriter writer = new StatsWriter(file.getPath(), 4);
+		StatsWriter.Recorder[] recorders = {writer.newRecorder(), writer.newRecorder()};
+		long pieces = 0;
+		long score = 0;
+		long rows = 0;
+		int games = 0;
+		int maxScore = 0;
+		int over = 0;
+		for (int i = 0; i < 6; i++) {
+			TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, i));
+			game.setStats(recorders[i % 2]);
+			game.play(2000);
+			pieces += recordedPieces(game);
+			score += game.getScore();
+			rows += game.getRowsCleared();
+			maxScore = Math.max(maxScore, game.getScore());
+			if (!game.isGameOn()) over++;
+			game.restart();
+			games++;
+		}
+		// a game stopped early
+		TetrisGame stopped = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 9));
+		stopped.setStats(recorders[1]);
+		stopped.play(50);
+		assertTrue(stopped.isGameOn());
+		pieces += recordedPieces(stopped);
+		score += stopped.getScore();
+		rows += stopped.getRowsCleared();
+		stopped.restart();
+		games++;
+		// a game lost early
+		TetrisGame bad = new TetrisGame(new BadBrain(), new UniformGenerator(7, 1));
+		bad.setStats(recorders[0]);
+		bad.play(1000);
+		assertFalse(bad.isGameOn());
+		pieces += recordedPieces(bad);
+		score += bad.getScore();
+		rows += bad.getRowsCleared();
+		games++;
+		over++;
+		writer.close();
+		assertTrue(writer.getPagesWritten() > 2);
+
+		StatsScanner scanner = new StatsScanner(file.getPath());
+		scanner.scan();
+		assertEquals(writer.getPagesWritten(), scanner.getPageCount());
+		assertEquals(games, scanner.getGames());
+		assertEquals(over, scanner.getGamesOver());
+		assertTrue(over < games);
+		assertEquals(pieces, scanner.getPieces());
+		assertEquals(score / (double) games, scanner.getMeanScore(), 1e-9);
+		assertEquals(maxScore, scanner.getMaxScore());
+		assertEquals(rows, scanner.getRowsCleared());
+		long clearedByPiece = 0;
+		for (int n = 1; n <= 4; n++) {
+			clearedByPiece += n * scanner.getClears(n);
+		}
+		assertEquals(rows, clearedByPiece);
+		assertTrue(scanner.getMaxHeight() > 0);
+		assertTrue(scanner.getMeanMaxHeight() <= scanner.getMaxHeight());
+		assertTrue(scanner.getMeanDecisionMicros() > 0);
+
+		// scanning again gives the same totals
+		scanner.scan();
+		assertEquals(pieces, scanner.getPieces());
+		scanner.close();
+	}
+
+	// A game lost because its last piece did not fit has no row for it.
+	private static int recordedPieces(TetrisGame game) {
+		Board board = game.getBoard();
+		boolean unplaced = !game.isGameOn()
+			&& board.getMaxHeight() <= board.getHeight() - TetrisGame.TOP_SPACE;
+		return unplaced ? game.getCount() - 1 : game.getCount();
+	}
+
+	// A partly written last page is left out of the scan.
+	@Test
+	public void testTornPage() throws Exception {
+		StatsWriter writer = new StatsWriter(file.getPath(), 2);
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 2));
+		game.setStats(writer.newRecorder());
+		game.play(100);
+		game.restart();
+		writer.close();
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.setLength(raw.length() - 100);
+		raw.close();
+
+		StatsScanner scanner = new StatsScanner(file.getPath());
+		scanner.scan();
+		assertEquals(1, scanner.getPageCount());
+		assertEquals(100, scanner.getPieces());
+		assertEquals(0, scanner.getGames());
+		scanner.close();
+	}
+
+	@Test
+	public void testHoles() {
+		Board board = new Board(4, 10);
+		Piece[] pieces = Piece.getPieces();
+		board.place(pieces[Piece.SQUARE], 0, 1);
+		board.commit();
+		board.place(pieces[Piece.STICK], 3, 0);
+		board.commit();
+		assertEquals(2, StatsWriter.countHoles(board));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPoolTooSmall() throws Exception {
+		StatsWriter writer = new StatsWriter(file.getPath(), 3);
+		try {
+			writer.newRecorder();
+			writer.newRecorder();
+		} finally {
+			writer.close();
+		}
+	}
+}
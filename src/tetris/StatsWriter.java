@@ -0,0 +1,380 @@
+// StatsWriter.java
+package tetris;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ Streams per-piece and per-game statistics to a columnar binary file,
+ for StatsScanner to aggregate later. Each playing thread records into
+ its own Recorder, which fills fixed-size pages in memory; full pages go
+ to a writer thread that appends them to the file, so the games never
+ wait on the disk. Pages come from a fixed pool and are reused, so
+ recording allocates nothing. If the disk falls a whole pool behind,
+ recording blocks until a page is free.
+
+ <p>The file layout, all big-endian:
+ <pre>
+ file header   int MAGIC, int VERSION, int PAGE_SIZE, padded to FILE_HEADER
+ page[i]       int table, int rowCount, int source, padded to PAGE_HEADER,
+               then each of the table's columns in turn, capacity values
+               long, where capacity is how many rows fit in the page
+ </pre>
+ Every page is PAGE_SIZE bytes, so page i starts at FILE_HEADER +
+ i * PAGE_SIZE, and a scan reads each column as one run of values.
+ The tables and their columns:
+ <pre>
+ PIECES  int game, byte piece, byte rowsCleared, short maxHeight, short holes, int decisionNanos
+ GAMES   int game, int pieces, int score, int rowsCleared, byte over, long nanos
+ </pre>
+ piece is the index of the piece in Piece.getPieces(); maxHeight and
+ holes are measured after rows clear; decisionNanos is the time the
+ brain took over the move. Games are numbered from 0 within the source,
+ the Recorder that played them, and over is 0 for a game that was
+ stopped rather than lost.
+*/
+public class StatsWriter {
+	public static final int MAGIC = 0x54535431;	// "TST1"
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER = 16;
+	public static final int PAGE_SIZE = 64 * 1024;
+	public static final int PAGE_HEADER = 16;
+
+	public static final int PIECES = 0;
+	public static final int GAMES = 1;
+
+	// the byte width of each column, by table
+	private static final int[][] COLUMN_BYTES = {
+		{4, 1, 1, 2, 2, 4},
+		{4, 4, 4, 4, 1, 8},
+	};
+
+	// the columns of PIECES
+	public static final int PIECE_GAME = 0;
+	public static final int PIECE_TYPE = 1;
+	public static final int PIECE_ROWS_CLEARED = 2;
+	public static final int PIECE_MAX_HEIGHT = 3;
+	public static final int PIECE_HOLES = 4;
+	public static final int PIECE_DECISION_NANOS = 5;
+
+	// the columns of GAMES
+	public static final int GAME_ID = 0;
+	public static final int GAME_PIECES = 1;
+	public static final int GAME_SCORE = 2;
+	public static final int GAME_ROWS_CLEARED = 3;
+	public static final int GAME_OVER = 4;
+	public static final int GAME_NANOS = 5;
+
+	private final FileOutputStream out;
+	private final FileChannel channel;
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> full;
+	private final List<Recorder> recorders = new ArrayList<Recorder>();
+	private final int poolPages;
+	private final Thread writer;
+	private volatile IOException failure;
+	private volatile long pagesWritten;
+
+	// handed to the writer thread to stop it
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 Creates (or overwrites) the file, with a pool of the given number of
+	 pages shared by the recorders. Each recorder holds two pages while
+	 it records, and the rest are in flight to the disk.
+	*/
+	public StatsWriter(String fileName, int poolPages) throws IOException {
+		if (poolPages < 1) throw new IllegalArgumentException("need at least one page");
+		out = new FileOutputStream(fileName);
+		channel = out.getChannel();
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(PAGE_SIZE);
+		header.clear();
+		writeFully(header);
+
+		this.poolPages = poolPages;
+		free = new ArrayBlockingQueue<ByteBuffer>(poolPages);
+		full = new ArrayBlockingQueue<ByteBuffer>(poolPages + 1);
+		for (int i = 0; i < poolPages; i++) {
+			free.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+		}
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writePages();
+			}
+		}, "stats-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 Returns how many rows of the table fit in one page.
+	*/
+	public static int getCapacity(int table) {
+		int rowBytes = 0;
+		for (int bytes: COLUMN_BYTES[table]) {
+			rowBytes += bytes;
+		}
+		return (PAGE_SIZE - PAGE_HEADER) / rowBytes;
+	}
+
+	/**
+	 Returns the number of columns in the table.
+	*/
+	public static int getColumnCount(int table) {
+		return COLUMN_BYTES[table].length;
+	}
+
+	/**
+	 Returns the byte width of one value of the column.
+	*/
+	public static int getColumnBytes(int table, int column) {
+		return COLUMN_BYTES[table][column];
+	}
+
+	/**
+	 Returns where in a page of the table the column's values start.
+	*/
+	public static int getColumnStart(int table, int column) {
+		int capacity = getCapacity(table);
+		int start = PAGE_HEADER;
+		for (int c = 0; c < column; c++) {
+			start += capacity * COLUMN_BYTES[table][c];
+		}
+		return start;
+	}
+
+	/**
+	 Returns a new recorder, to be used by one thread at a time. Its
+	 page headers name it as source number getSource(). The pool must
+	 have two pages for each recorder, since a recorder can hold a
+	 part-full page of each table indefinitely.
+	*/
+	public synchronized Recorder newRecorder() {
+		if (2 * (recorders.size() + 1) > poolPages) {
+			throw new IllegalStateException("stats page pool too small for another recorder");
+		}
+		Recorder recorder = new Recorder(recorders.size());
+		recorders.add(recorder);
+		return recorder;
+	}
+
+	/**
+	 Returns the number of pages written to the file so far.
+	*/
+	public long getPagesWritten() {
+		return pagesWritten;
+	}
+
+	/**
+	 Writes out every recorder's part-full pages, waits for the writer
+	 thread to finish and closes the file. The recorders must no longer
+	 be in use. Throws the first error the writer thread hit, if any.
+	*/
+	public void close() throws IOException, InterruptedException {
+		synchronized (this) {
+			for (Recorder recorder: recorders) {
+				recorder.flush();
+			}
+		}
+		full.put(END);
+		writer.join();
+		channel.force(false);
+		out.close();
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * The writer thread: appends each full page to the file and returns
+	 * it to the pool. After an error, pages are only recycled, and the
+	 * error is thrown by close().
+	 */
+	private void writePages() {
+		try {
+			while (true) {
+				ByteBuffer page = full.take();
+				if (page == END) return;
+				if (failure == null) {
+					try {
+						page.clear();
+						writeFully(page);
+						pagesWritten++;
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+				free.put(page);
+			}
+		} catch (InterruptedException e) {
+			failure = new IOException("stats writer interrupted");
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Takes a page from the pool, waiting for the writer if it is empty,
+	 * and starts it as an empty page of the table.
+	 */
+	private ByteBuffer takePage(int table, int source) {
+		ByteBuffer page;
+		try {
+			page = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted waiting for a stats page", e);
+		}
+		page.putInt(0, table);
+		page.putInt(4, 0);
+		page.putInt(8, source);
+		return page;
+	}
+
+	/**
+	 * Hands a page with rows in it to the writer thread.
+	 */
+	private void sendPage(ByteBuffer page, int rows) {
+		page.putInt(4, rows);
+		try {
+			full.put(page);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted sending a stats page", e);
+		}
+	}
+
+
+	/**
+	 One thread's stream of statistics: a page being filled for each
+	 table, sent to the writer thread as soon as it is full.
+	*/
+	public class Recorder {
+		private final int source;
+		private final int[] pieceColumns = new int[COLUMN_BYTES[PIECES].length];
+		private final int[] gameColumns = new int[COLUMN_BYTES[GAMES].length];
+		private final int pieceCapacity = getCapacity(PIECES);
+		private final int gameCapacity = getCapacity(GAMES);
+		private ByteBuffer pieces;
+		private ByteBuffer games;
+		private int pieceRows;
+		private int gameRows;
+
+		// the game being played
+		private int game;
+		private int gamePieces;
+		private long gameStart;
+
+		private Recorder(int source) {
+			this.source = source;
+			for (int c = 0; c < pieceColumns.length; c++) {
+				pieceColumns[c] = getColumnStart(PIECES, c);
+			}
+			for (int c = 0; c < gameColumns.length; c++) {
+				gameColumns[c] = getColumnStart(GAMES, c);
+			}
+		}
+
+		/**
+		 Returns the source number this recorder writes in its pages.
+		*/
+		public int getSource() {
+			return source;
+		}
+
+		/**
+		 Returns the number of the game being recorded, counting from 0.
+		*/
+		public int getGame() {
+			return game;
+		}
+
+		/**
+		 Records one piece of the current game: which piece it was, the
+		 rows it cleared, the committed board after them, and how long the
+		 brain took to choose the move.
+		*/
+		public void piece(int pieceIndex, int rowsCleared, Board board, long decisionNanos) {
+			if (gamePieces == 0) gameStart = System.nanoTime();
+			gamePieces++;
+			if (pieces == null) pieces = takePage(PIECES, source);
+			final int row = pieceRows;
+			pieces.putInt(pieceColumns[PIECE_GAME] + 4 * row, game);
+			pieces.put(pieceColumns[PIECE_TYPE] + row, (byte) pieceIndex);
+			pieces.put(pieceColumns[PIECE_ROWS_CLEARED] + row, (byte) rowsCleared);
+			pieces.putShort(pieceColumns[PIECE_MAX_HEIGHT] + 2 * row, (short) board.getMaxHeight());
+			pieces.putShort(pieceColumns[PIECE_HOLES] + 2 * row, (short) countHoles(board));
+			pieces.putInt(pieceColumns[PIECE_DECISION_NANOS] + 4 * row,
+				(int) Math.min(decisionNanos, Integer.MAX_VALUE));
+			if (++pieceRows == pieceCapacity) {
+				sendPage(pieces, pieceRows);
+				pieces = null;
+				pieceRows = 0;
+			}
+		}
+
+		/**
+		 Records the end of the current game, with its totals, and starts
+		 the next one. over is false for a game stopped before it was lost.
+		*/
+		public void game(int pieceCount, int score, int rowsCleared, boolean over) {
+			long nanos = (gamePieces == 0) ? 0 : System.nanoTime() - gameStart;
+			if (games == null) games = takePage(GAMES, source);
+			final int row = gameRows;
+			games.putInt(gameColumns[GAME_ID] + 4 * row, game);
+			games.putInt(gameColumns[GAME_PIECES] + 4 * row, pieceCount);
+			games.putInt(gameColumns[GAME_SCORE] + 4 * row, score);
+			games.putInt(gameColumns[GAME_ROWS_CLEARED] + 4 * row, rowsCleared);
+			games.put(gameColumns[GAME_OVER] + row, (byte) (over ? 1 : 0));
+			games.putLong(gameColumns[GAME_NANOS] + 8 * row, nanos);
+			if (++gameRows == gameCapacity) {
+				sendPage(games, gameRows);
+				games = null;
+				gameRows = 0;
+			}
+			game++;
+			gamePieces = 0;
+		}
+
+		/**
+		 * Sends the part-full pages to the writer thread.
+		 */
+		private void flush() {
+			if (pieces != null) sendPage(pieces, pieceRows);
+			if (games != null) sendPage(games, gameRows);
+			pieces = null;
+			games = null;
+			pieceRows = 0;
+			gameRows = 0;
+		}
+	}
+
+
+	/**
+	 Returns the number of holes in the board: empty blocks with a
+	 filled block somewhere above them in the same column.
+	*/
+	public static int countHoles(Board board) {
+		int holes = 0;
+		final int width = board.getWidth();
+		for (int x = 0; x < width; x++) {
+			final int top = board.getColumnHeight(x) - 1;
+			for (int y = 0; y < top; y++) {
+				if (!board.getGrid(x, y)) holes++;
+			}
+		}
+		return holes;
+	}
+}
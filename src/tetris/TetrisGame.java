@@ -0,0 +1,263 @@
+// TetrisGame.java
+package tetris;
+
+/**
+ A game of tetris played by a brain, with no GUI and no animation.
+ Each step() spawns the next piece from the generator and places it
+ straight where the brain wants it, following the same row clearing,
+ scoring and game-over rules as JTetris. Used to run many games
+ quickly, e.g. to compare or tune brains.
+*/
+public class TetrisGame {
+	public static final int WIDTH = JTetris.WIDTH;
+	public static final int HEIGHT = JTetris.HEIGHT;
+	public static final int TOP_SPACE = JTetris.TOP_SPACE;
+
+	private Brain brain;
+	private PieceGenerator generator;
+	private Piece[] pieces;
+	private Board board;
+	private Brain.Move move = new Brain.Move();
+	
+	// Upcoming piece indexes, generated in bulk: upcoming[next..filled-1]
+	// The first one is the next piece to play; the rest are the preview.
+	private int[] upcoming;
+	private int next;
+	private int filled;
+	private Piece[] preview;
+	private int previewLength;
+	
+	// how many pieces to generate at a time for the queue
+	private static final int QUEUE_BATCH = 64;
+
+	private int count;		// how many pieces played so far
+	private int score;
+	private int rowsCleared;
+	private boolean gameOn;
+	private StatsWriter.Recorder stats;	// or null
+
+	/**
+	 Creates a game on a standard size board, ready to play.
+	*/
+	public TetrisGame(Brain brain, PieceGenerator generator) {
+		this.brain = brain;
+		this.generator = generator;
+		pieces = Piece.getPieces();
+		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		gameOn = true;
+		setPreviewLength(0);
+	}
+	
+	
+	/**
+	 Starts a new game on this object, reusing the board and the piece
+	 queue, so a thread can play any number of games one after another
+	 without allocating. The generator carries on with its sequence.
+	*/
+	public void restart() {
+		if (stats != null && gameOn && count > 0) {
+			stats.game(count, score, rowsCleared, false);
+		}
+		board.reset();
+		next = 0;
+		filled = 0;
+		count = 0;
+		score = 0;
+		rowsCleared = 0;
+		gameOn = true;
+	}
+	
+	/**
+	 Starts a new game like restart(), taking pieces from the given
+	 generator from now on.
+	*/
+	public void restart(PieceGenerator generator) {
+		this.generator = generator;
+		restart();
+	}
+	
+	
+	/**
+	 Records every piece and game from now on into the given recorder,
+	 or stops recording if null. A game stopped at a piece limit is
+	 recorded as not over when the game is restarted.
+	*/
+	public void setStats(StatsWriter.Recorder stats) {
+		this.stats = stats;
+	}
+	
+	
+	/**
+	 Sets how many pieces past the current one a LookaheadBrain is shown.
+	*/
+	public void setPreviewLength(int length) {
+		previewLength = length;
+		preview = new Piece[length];
+		int[] queue = new int[length + 1 + QUEUE_BATCH];
+		if (upcoming != null) {
+			int kept = Math.min(filled - next, queue.length);
+			System.arraycopy(upcoming, next, queue, 0, kept);
+			filled = kept;
+		}
+		upcoming = queue;
+		next = 0;
+	}
+
+
+	/**
+	 Returns copies of the board after each of the first count pieces
+	 DefaultBrain plays, as test and benchmark positions. The first game
+	 is seeded with seed; when a game ends, the next starts with seed + i,
+	 where i is the index of its first position.
+	*/
+	public static Board[] samplePositions(int count, long seed) {
+		Board[] boards = new Board[count];
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, seed));
+		for (int i = 0; i < count; i++) {
+			if (!game.isGameOn()) game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, seed + i));
+			game.step();
+			boards[i] = new Board(game.getBoard());
+		}
+		return boards;
+	}
+
+
+	/**
+	 Returns the points for clearing the given number of rows at once:
+	 5, 10, 20, 40 for 1-4 rows, and 50 for more.
+	*/
+	public static int scoreForRows(int cleared) {
+		switch (cleared) {
+			case 0: return 0;
+			case 1: return 5;
+			case 2: return 10;
+			case 3: return 20;
+			case 4: return 40;
+			default: return 50;  // could happen with non-standard pieces
+		}
+	}
+
+
+	/**
+	 Plays one piece. Returns false once the game is over.
+	*/
+	public boolean step() {
+		if (!gameOn) return false;
+		count++;
+		score++;
+		
+		// The TOP_SPACE rows are always free while the game is on,
+		// so the new piece always fits at the top; no need to place it there.
+		Piece piece = nextPiece();
+		int x = (board.getWidth() - piece.getWidth())/2;
+		
+		if (previewLength > 0 && brain instanceof LookaheadBrain) {
+			for (int i = 0; i < previewLength; i++) {
+				preview[i] = pieces[upcoming[next+i]];
+			}
+			((LookaheadBrain) brain).setPreview(preview, previewLength);
+		}
+		
+		long decisionStart = (stats != null) ? System.nanoTime() : 0;
+		Brain.Move best = brain.bestMove(board, piece, board.getHeight(), move);
+		long decisionNanos = (stats != null) ? System.nanoTime() - decisionStart : 0;
+		if (best != null) {
+			piece = best.piece;
+			x = best.x;
+		}
+		int y = board.dropHeight(piece, x);
+		int result = board.place(piece, x, y);
+		if (result > Board.PLACE_ROW_FILLED) {
+			board.undo();
+			gameOn = false;
+			if (stats != null) stats.game(count, score, rowsCleared, true);
+			return false;
+		}
+		
+		int cleared = board.clearRows();
+		rowsCleared += cleared;
+		score += scoreForRows(cleared);
+		board.commit();
+		
+		// if the board is too tall, we've lost
+		if (board.getMaxHeight() > board.getHeight() - TOP_SPACE) {
+			gameOn = false;
+		}
+		if (stats != null) {
+			stats.piece(piece.getIndex(), cleared, board, decisionNanos);
+			if (!gameOn) stats.game(count, score, rowsCleared, true);
+		}
+		return gameOn;
+	}
+
+
+	/**
+	 Takes the next piece off the queue, topping the queue up in bulk
+	 from the generator so the preview is always full.
+	*/
+	private Piece nextPiece() {
+		// with no preview, draw straight from the generator, so its
+		// getOdds() still describes the next piece
+		if (previewLength == 0 && next == filled) {
+			return pieces[generator.next()];
+		}
+		if (filled - next < previewLength + 1) {
+			System.arraycopy(upcoming, next, upcoming, 0, filled - next);
+			filled -= next;
+			next = 0;
+			generator.fill(upcoming, filled, upcoming.length - filled);
+			filled = upcoming.length;
+		}
+		Piece piece = pieces[upcoming[next]];
+		next++;
+		return piece;
+	}
+
+
+	/**
+	 Plays until the game is over or pieceLimit pieces have been played.
+	 Returns the score.
+	*/
+	public int play(int pieceLimit) {
+		while (count < pieceLimit) {
+			if (!step()) break;
+		}
+		return score;
+	}
+
+
+	/**
+	 Returns the board the game is played on.
+	*/
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 Returns the number of pieces played so far.
+	*/
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 Returns the score so far.
+	*/
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 Returns the total number of rows cleared so far.
+	*/
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+
+	/**
+	 Returns true while the game is still going.
+	*/
+	public boolean isGameOn() {
+		return gameOn;
+	}
+}
@@ -0,0 +1,57 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.*;
+
+/*
+ Unit test for TetrisGame, restarting games on one object.
+ */
+public class TetrisGameTest {
+	// A restarted game plays exactly like a new one.
+	@Test
+	public void testRestartMatchesNewGame() {
+		TetrisGame reused = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 1));
+		reused.setPreviewLength(2);
+		reused.play(500);
+		for (int seed = 2; seed < 5; seed++) {
+			reused.restart(new UniformGenerator(7, seed));
+			TetrisGame fresh = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, seed));
+			fresh.setPreviewLength(2);
+			assertEquals(fresh.play(300), reused.play(300));
+			assertEquals(fresh.getCount(), reused.getCount());
+			assertEquals(fresh.getRowsCleared(), reused.getRowsCleared());
+			assertEquals(fresh.getBoard().toString(), reused.getBoard().toString());
+		}
+	}
+
+	// Once warmed up, a thread playing game after game allocates nothing.
+	// Needs a JVM that counts allocated bytes per thread, as HotSpot does.
+	@Test
+	public void testRestartAllocatesNothing() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+		long thread = Thread.currentThread().getId();
+
+		assertFalse("sanityCheck() allocates", Board.DEBUG);
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 1));
+		for (int i = 0; i < 200; i++) {
+			game.restart();
+			game.play(100);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		int pieces = 0;
+		for (int i = 0; i < 200; i++) {
+			game.restart();
+			game.play(100);
+			pieces += game.getCount();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue(pieces > 1000);
+		assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+	}
+}
@@ -0,0 +1,413 @@
+// Tournament.java
+package tetris;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ A round-robin tournament between brains over a fixed list of seeds.
+ Tetris is a one-player game, so a match between two brains on a seed
+ is each of them playing that seed's pieces alone, the higher score
+ winning. Every entrant therefore plays every seed exactly once, and
+ all the pairings are scored from those games.
+
+ <p>Games are handed out dynamically: each worker takes the next
+ unplayed game from a shared counter, so a few long games never leave
+ the other cores idle. A game's result depends only on the entrant and
+ the seed -- each game gets a fresh brain from its Entrant -- so the
+ results are the same whatever the number of threads.
+
+ <p>With a checkpoint file, every finished game is appended to it as
+ it completes. A run that is killed and started again with the same
+ entrants, seeds and piece limit reads the file back and plays only
+ the games still missing.
+
+ <p>Run with:
+ <pre>
+ java tetris.Tournament [checkpoint file or -] [seeds] [threads] [piece limit]
+ </pre>
+*/
+public class Tournament {
+	public static final int DEFAULT_PIECE_LIMIT = 2000;
+	private static final String HEADER = "# tetris tournament ";
+
+	/**
+	 One player in the tournament.
+	*/
+	public interface Entrant {
+		/**
+		 Returns the name shown in the standings and kept in the checkpoint.
+		*/
+		public String getName();
+
+		/**
+		 Returns a brain to play one game with. It may be a shared
+		 instance if the brain is thread safe and keeps no state between
+		 moves, like DefaultBrain; otherwise it should be a new one.
+		*/
+		public Brain newBrain();
+	}
+
+	private Entrant[] entrants;
+	private long[] seeds;
+	private int pieceLimit = DEFAULT_PIECE_LIMIT;
+	private File checkpoint;
+
+	// scores[entrant][seed], -1 until played
+	private int[][] scores;
+	private int resumed;
+	private AtomicInteger played = new AtomicInteger();
+	private Writer log;
+
+	/**
+	 Creates a tournament in which every entrant plays every seed.
+	*/
+	public Tournament(Entrant[] entrants, long[] seeds) {
+		if (entrants.length < 2) throw new IllegalArgumentException("need at least two entrants");
+		for (Entrant entrant: entrants) {
+			if (entrant.getName().matches(".*\\s.*")) {
+				throw new IllegalArgumentException("entrant names cannot contain spaces: " + entrant.getName());
+			}
+		}
+		this.entrants = entrants;
+		this.seeds = seeds;
+		scores = new int[entrants.length][seeds.length];
+		for (int[] row: scores) Arrays.fill(row, -1);
+	}
+
+	/**
+	 Returns an entrant that plays every game with the given brain,
+	 which must be safe to share between threads.
+	*/
+	public static Entrant shared(final String name, final Brain brain) {
+		return new Entrant() {
+			public String getName() {
+				return name;
+			}
+			public Brain newBrain() {
+				return brain;
+			}
+		};
+	}
+
+	/**
+	 Returns count seeds drawn from one master seed.
+	*/
+	public static long[] seeds(long seed, int count) {
+		FastRandom random = new FastRandom(seed);
+		long[] seeds = new long[count];
+		for (int i = 0; i < count; i++) {
+			seeds[i] = random.nextLong();
+		}
+		return seeds;
+	}
+
+	/**
+	 Sets the most pieces a game is played for.
+	*/
+	public void setPieceLimit(int pieceLimit) {
+		this.pieceLimit = pieceLimit;
+	}
+
+	/**
+	 Sets the file progress is saved to and resumed from.
+	*/
+	public void setCheckpoint(File checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 Plays every game not yet played, on the given number of workers
+	 submitted to the executor. Returns when all the games are done.
+	 Throws IOException if the checkpoint file belongs to a different
+	 tournament or cannot be written.
+	*/
+	public void run(ExecutorService executor, int workers) throws IOException, InterruptedException {
+		if (checkpoint != null) openCheckpoint();
+		try {
+			// seed-major order, so every entrant's results fill in evenly
+			final int games = entrants.length * seeds.length;
+			final AtomicInteger next = new AtomicInteger();
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int w = 0; w < workers; w++) {
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						int game;
+						while ((game = next.getAndIncrement()) < games) {
+							int seed = game / entrants.length;
+							int entrant = game % entrants.length;
+							if (scores[entrant][seed] < 0) play(entrant, seed);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> result: results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					next.set(games);	// stop the other workers
+					if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+					throw new RuntimeException("game failed", e.getCause());
+				}
+			}
+		} finally {
+			if (log != null) {
+				log.close();
+				log = null;
+			}
+		}
+	}
+
+	/**
+	 Returns the score of the entrant on the seed, or -1 if not played.
+	*/
+	public int getScore(int entrant, int seed) {
+		return scores[entrant][seed];
+	}
+
+	/**
+	 Returns the number of seeds on which entrant a scored more than b.
+	*/
+	public int getWins(int a, int b) {
+		int wins = 0;
+		for (int s = 0; s < seeds.length; s++) {
+			if (scores[a][s] > scores[b][s]) wins++;
+		}
+		return wins;
+	}
+
+	/**
+	 Returns the entrant's tournament points: one for each match won
+	 against another entrant on a seed, and a half for each tie.
+	*/
+	public double getPoints(int entrant) {
+		double points = 0;
+		for (int other = 0; other < entrants.length; other++) {
+			if (other == entrant) continue;
+			for (int s = 0; s < seeds.length; s++) {
+				int mine = scores[entrant][s];
+				int theirs = scores[other][s];
+				if (mine > theirs) points += 1;
+				else if (mine == theirs) points += 0.5;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 Returns the entrant's mean score over the seeds played.
+	*/
+	public double getMeanScore(int entrant) {
+		long total = 0;
+		int count = 0;
+		for (int score: scores[entrant]) {
+			if (score >= 0) {
+				total += score;
+				count++;
+			}
+		}
+		return (count == 0) ? 0 : (double) total / count;
+	}
+
+	/**
+	 Returns the number of games read back from the checkpoint.
+	*/
+	public int getResumedGames() {
+		return resumed;
+	}
+
+	/**
+	 Returns the number of games played by run() in this process.
+	*/
+	public int getPlayedGames() {
+		return played.get();
+	}
+
+	/**
+	 Prints the entrants by points, best first, with each one's mean
+	 score and wins against every other.
+	*/
+	public void printStandings(PrintStream out) {
+		Integer[] order = new Integer[entrants.length];
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int byPoints = Double.compare(getPoints(b), getPoints(a));
+				return (byPoints != 0) ? byPoints : a - b;
+			}
+		});
+		StringBuilder line = new StringBuilder(String.format("%-16s %9s %10s ", "entrant", "points", "mean"));
+		for (int j = 0; j < order.length; j++) line.append(String.format(" %5s", "vs" + (j + 1)));
+		out.println(line);
+		for (int i = 0; i < order.length; i++) {
+			int e = order[i];
+			line = new StringBuilder(String.format("%-16s %9.1f %10.1f ",
+				(i + 1) + " " + entrants[e].getName(), getPoints(e), getMeanScore(e)));
+			for (int j = 0; j < order.length; j++) {
+				line.append((i == j) ? "     -" : String.format(" %5d", getWins(e, order[j])));
+			}
+			out.println(line);
+		}
+	}
+
+	/**
+	 * Plays one game and records it, in the table and the checkpoint.
+	 */
+	private void play(int entrant, int seed) throws IOException {
+		TetrisGame game = new TetrisGame(entrants[entrant].newBrain(),
+			new UniformGenerator(Piece.getPieces().length, seeds[seed]));
+		int score = game.play(pieceLimit);
+		scores[entrant][seed] = score;
+		played.incrementAndGet();
+		if (log != null) {
+			synchronized (log) {
+				log.write(entrant + " " + seed + " " + score + "\n");
+				log.flush();
+			}
+		}
+	}
+
+	/**
+	 * Reads back the games in the checkpoint file, if there is one, then
+	 * rewrites it with just the complete records, dropping a line cut off
+	 * by a kill, and leaves it open for appending.
+	 */
+	private void openCheckpoint() throws IOException {
+		String header = HEADER + fingerprint();
+		List<String> records = new ArrayList<String>();
+		if (checkpoint.exists()) {
+			List<String> lines = readWholeLines(checkpoint);
+			if (!lines.isEmpty() && !lines.get(0).equals(header)) {
+				throw new IOException(checkpoint + " is the checkpoint of a different tournament");
+			}
+			for (int i = 1; i < lines.size(); i++) {
+				if (readRecord(lines.get(i))) records.add(lines.get(i));
+			}
+		}
+		resumed = records.size();
+
+		File temp = new File(checkpoint.getPath() + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+		try {
+			out.write(header + "\n");
+			for (String record: records) out.write(record + "\n");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(checkpoint)) {
+			checkpoint.delete();
+			if (!temp.renameTo(checkpoint)) throw new IOException("could not replace " + checkpoint);
+		}
+		log = new OutputStreamWriter(new FileOutputStream(checkpoint, true), "UTF-8");
+	}
+
+	/**
+	 * Returns the lines of the file that end in a newline. A last line
+	 * without one was cut off by a kill, and may still parse, as a
+	 * shorter score, so it is left out.
+	 */
+	private static List<String> readWholeLines(File file) throws IOException {
+		StringBuilder text = new StringBuilder();
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) text.append(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		List<String> lines = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = text.indexOf("\n", start)) != -1) {
+			lines.add(text.substring(start, end));
+			start = end + 1;
+		}
+		return lines;
+	}
+
+	/**
+	 * Stores one "entrant seed score" record in the table.
+	 * @return false if the line is not a whole, valid record
+	 */
+	private boolean readRecord(String line) {
+		String[] fields = line.split(" ");
+		if (fields.length != 3) return false;
+		try {
+			int entrant = Integer.parseInt(fields[0]);
+			int seed = Integer.parseInt(fields[1]);
+			int score = Integer.parseInt(fields[2]);
+			if (entrant < 0 || entrant >= entrants.length || seed < 0 || seed >= seeds.length || score < 0) return false;
+			if (scores[entrant][seed] >= 0) return false;	// already have it
+			scores[entrant][seed] = score;
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a 64-bit FNV-1a hash of the entrant names, seeds and piece
+	 * limit, as hex, so a checkpoint is only resumed by the same tournament.
+	 */
+	private String fingerprint() {
+		StringBuilder key = new StringBuilder();
+		for (Entrant entrant: entrants) key.append(entrant.getName()).append(',');
+		for (long seed: seeds) key.append(seed).append(',');
+		key.append(pieceLimit);
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return Long.toHexString(hash);
+	}
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = (args.length > 0 && !args[0].equals("-")) ? new File(args[0]) : null;
+		int seedCount = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int pieceLimit = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_PIECE_LIMIT;
+
+		Entrant[] entrants = {
+			shared("DefaultBrain", new DefaultBrain()),
+			shared("Weighted", new WeightedBrain(WeightedBrain.DEFAULT_WEIGHTS)),
+			shared("linear", EvaluatorBrain.fromWeights(WeightedBrain.DEFAULT_WEIGHTS, TetrisGame.WIDTH)),
+			shared("mlp16", EvaluatorBrain.random(TetrisGame.WIDTH, 16, 1)),
+		};
+		Tournament tournament = new Tournament(entrants, seeds(0, seedCount));
+		tournament.setPieceLimit(pieceLimit);
+		tournament.setCheckpoint(file);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long start = System.nanoTime();
+			tournament.run(executor, threads);
+			double elapsed = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("%d games resumed, %d played in %.1f s on %d threads",
+				tournament.getResumedGames(), tournament.getPlayedGames(), elapsed, threads));
+			tournament.printStandings(System.out);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+
+/*
+ Unit test for Tournament.
+ */
+public class TournamentTest {
+	private static final int SEEDS = 12;
+
+	private ExecutorService executor;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		executor = Executors.newFixedThreadPool(4);
+		file = File.createTempFile("tournament", ".txt");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		file.delete();
+	}
+
+	private Tournament newTournament() {
+		Tournament.Entrant[] entrants = {
+			Tournament.shared("default", new DefaultBrain()),
+			Tournament.shared("holes", new WeightedBrain(new double[] {8, 40, 10, 2})),
+			new Tournament.Entrant() {
+				public String getName() {
+					return "beam";
+				}
+				public Brain newBrain() {
+					return new BeamSearchBrain(4, 1);	// not thread safe, so one per game
+				}
+			},
+		};
+		Tournament tournament = new Tournament(entrants, Tournament.seeds(5, SEEDS));
+		tournament.setPieceLimit(150);
+		return tournament;
+	}
+
+	// One worker or four, the results are the same.
+	@Test
+	public void testThreadCountIndependent() throws Exception {
+		Tournament one = newTournament();
+		one.run(executor, 1);
+		Tournament four = newTournament();
+		four.run(executor, 4);
+		assertEquals(3 * SEEDS, four.getPlayedGames());
+		for (int e = 0; e < 3; e++) {
+			for (int s = 0; s < SEEDS; s++) {
+				assertTrue(one.getScore(e, s) > 0);
+				assertEquals(one.getScore(e, s), four.getScore(e, s));
+			}
+			assertEquals(one.getPoints(e), four.getPoints(e), 0);
+		}
+		// every pairing on every seed hands out one point in all
+		double total = one.getPoints(0) + one.getPoints(1) + one.getPoints(2);
+		assertEquals(3 * SEEDS, total, 0);
+	}
+
+	// A run killed part way, even mid-line, resumes with only the missing games.
+	@Test
+	public void testResume() throws Exception {
+		Tournament full = newTournament();
+		full.setCheckpoint(file);
+		full.run(executor, 3);
+		assertEquals(0, full.getResumedGames());
+
+		// keep the header and ten records, then half a record
+		List<String> lines = readLines(file);
+		assertEquals(1 + 3 * SEEDS, lines.size());
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for (int i = 0; i <= 10; i++) out.write(lines.get(i) + "\n");
+		out.write(lines.get(11).substring(0, 2));
+		out.close();
+
+		Tournament resumed = newTournament();
+		resumed.setCheckpoint(file);
+		resumed.run(executor, 2);
+		assertEquals(10, resumed.getResumedGames());
+		assertEquals(3 * SEEDS - 10, resumed.getPlayedGames());
+		for (int e = 0; e < 3; e++) {
+			for (int s = 0; s < SEEDS; s++) {
+				assertEquals(full.getScore(e, s), resumed.getScore(e, s));
+			}
+		}
+		assertEquals(1 + 3 * SEEDS, readLines(file).size());
+
+		// and a finished run has nothing left to play
+		Tournament again = newTournament();
+		again.setCheckpoint(file);
+		again.run(executor, 2);
+		assertEquals(0, again.getPlayedGames());
+	}
+
+	// A record cut off inside its score is dropped, not read as a lower score.
+	@Test
+	public void testResumeCutInScore() throws Exception {
+		Tournament full = newTournament();
+		full.setCheckpoint(file);
+		full.run(executor, 2);
+
+		List<String> lines = readLines(file);
+		String last = lines.get(lines.size() - 1);
+		assertTrue(last, last.length() - last.lastIndexOf(' ') > 2);	// at least two digits
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for (int i = 0; i < lines.size() - 1; i++) out.write(lines.get(i) + "\n");
+		out.write(last.substring(0, last.length() - 1));
+		out.close();
+
+		Tournament resumed = newTournament();
+		resumed.setCheckpoint(file);
+		resumed.run(executor, 2);
+		assertEquals(3 * SEEDS - 1, resumed.getResumedGames());
+		assertEquals(1, resumed.getPlayedGames());
+		for (int e = 0; e < 3; e++) {
+			for (int s = 0; s < SEEDS; s++) {
+				assertEquals(full.getScore(e, s), resumed.getScore(e, s));
+			}
+		}
+		assertEquals(lines, readLines(file));
+	}
+
+	// A checkpoint is only resumed by the tournament that wrote it.
+	@Test(expected = IOException.class)
+	public void testOtherCheckpoint() throws Exception {
+		Tournament first = newTournament();
+		first.setCheckpoint(file);
+		first.run(executor, 2);
+		Tournament other = newTournament();
+		other.setPieceLimit(151);
+		other.setCheckpoint(file);
+		other.run(executor, 2);
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) lines.add(line);
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+}
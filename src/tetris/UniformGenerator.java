@@ -0,0 +1,44 @@
+// UniformGenerator.java
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ The classic generator -- every piece is equally likely every time,
+ independent of what came before.
+*/
+public class UniformGenerator implements PieceGenerator {
+	private int pieceCount;
+	private FastRandom random;
+
+	/**
+	 Creates a generator over pieceCount pieces, seeded for a
+	 reproducible sequence.
+	*/
+	public UniformGenerator(int pieceCount, long seed) {
+		this(pieceCount, new FastRandom(seed));
+	}
+
+	private UniformGenerator(int pieceCount, FastRandom random) {
+		this.pieceCount = pieceCount;
+		this.random = random;
+	}
+
+	public int next() {
+		return random.nextInt(pieceCount);
+	}
+
+	public void fill(int[] queue, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			queue[i] = random.nextInt(pieceCount);
+		}
+	}
+
+	public void getOdds(double[] odds) {
+		Arrays.fill(odds, 0, pieceCount, 1.0 / pieceCount);
+	}
+
+	public PieceGenerator split() {
+		return new UniformGenerator(pieceCount, random.split());
+	}
+}
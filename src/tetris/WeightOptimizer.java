@@ -0,0 +1,276 @@
+// WeightOptimizer.java
+package tetris;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ Tunes the WeightedBrain weights with the cross-entropy method.
+ Each generation samples a population of weight vectors around the
+ current mean, scores each one by playing a batch of seeded headless
+ games, and moves the mean toward the best (elite) candidates.
+ 
+ <p>Games run in parallel on all cores. Every candidate in a generation
+ plays the same seeds, so they are compared on the same pieces. Games
+ are played in two rounds, and candidates that are clearly losing after
+ the first round do not play the second.
+ 
+ <p>Run with:
+ <pre>
+ java tetris.WeightOptimizer [weights file] [generations]
+ </pre>
+ The best weights found are written to the weights file (default
+ "weights.properties"), ready for WeightedBrain.load().
+*/
+public class WeightOptimizer {
+	private int population = 40;
+	private int eliteCount = 8;
+	private int gamesPerCandidate = 16;
+	private int pieceLimit = 1000;
+	
+	// fraction of the games played in the first round
+	private static final double FIRST_ROUND = 0.25;
+	// candidates scoring below this fraction of the elite cutoff after the first round are dropped
+	private static final double EARLY_CUT = 0.5;
+	// keeps the search from collapsing onto one point too early
+	private static final double MIN_SIGMA = 0.05;
+	
+	private ExecutorService executor;
+	private FastRandom random;
+	private double[] mean;
+	private double[] sigma;
+	
+	private double[] bestWeights;
+	private double bestScore = -1;
+	private long gamesPlayed;
+
+	/**
+	 Creates an optimizer starting from DefaultBrain's weights, running
+	 games on the given executor. The seed fixes every random choice,
+	 so a run is reproducible.
+	*/
+	public WeightOptimizer(ExecutorService executor, long seed) {
+		this.executor = executor;
+		random = new FastRandom(seed);
+		mean = WeightedBrain.DEFAULT_WEIGHTS.clone();
+		sigma = new double[mean.length];
+		for (int i = 0; i < mean.length; i++) {
+			sigma[i] = Math.abs(mean[i]) / 2 + 1;
+		}
+	}
+	
+	/**
+	 Sets the size of each generation and how many of the best candidates
+	 the next generation is drawn around.
+	*/
+	public void setPopulation(int population, int eliteCount) {
+		if (eliteCount < 1 || eliteCount > population) {
+			throw new IllegalArgumentException("elite count must be between 1 and the population");
+		}
+		this.population = population;
+		this.eliteCount = eliteCount;
+	}
+	
+	/**
+	 Sets how many games each candidate plays and the piece limit per game.
+	*/
+	public void setGames(int gamesPerCandidate, int pieceLimit) {
+		this.gamesPerCandidate = gamesPerCandidate;
+		this.pieceLimit = pieceLimit;
+	}
+	
+	/**
+	 Runs one generation. Returns the mean score of the best candidate.
+	*/
+	public double step() throws InterruptedException {
+		double[][] candidates = new double[population][];
+		for (int c = 0; c < population; c++) {
+			candidates[c] = sample();
+		}
+		long[] seeds = new long[gamesPerCandidate];
+		for (int g = 0; g < seeds.length; g++) {
+			seeds[g] = random.nextLong();
+		}
+		
+		// first round: everyone plays a few games
+		int firstGames = Math.max(1, (int) (gamesPerCandidate * FIRST_ROUND));
+		long[] totals = new long[population];
+		int[] played = new int[population];
+		boolean[] alive = new boolean[population];
+		Arrays.fill(alive, true);
+		playRound(candidates, alive, seeds, 0, firstGames, totals, played);
+		
+		// drop the clear losers, then the rest play out their games
+		double cutoff = eliteCutoff(totals, played) * EARLY_CUT;
+		for (int c = 0; c < population; c++) {
+			alive[c] = ((double) totals[c] / played[c]) >= cutoff;
+		}
+		playRound(candidates, alive, seeds, firstGames, gamesPerCandidate, totals, played);
+		
+		// pick the elite by mean score and refit the distribution to them
+		Integer[] order = new Integer[population];
+		final double[] scores = new double[population];
+		for (int c = 0; c < population; c++) {
+			order[c] = c;
+			scores[c] = (double) totals[c] / played[c];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(scores[b], scores[a]);
+			}
+		});
+		refit(candidates, order);
+		
+		int best = order[0];
+		if (played[best] == gamesPerCandidate && scores[best] > bestScore) {
+			bestScore = scores[best];
+			bestWeights = candidates[best];
+		}
+		return scores[best];
+	}
+	
+	/**
+	 Returns the best weights found so far, or DefaultBrain's weights
+	 before the first generation.
+	*/
+	public double[] getBestWeights() {
+		return (bestWeights == null) ? WeightedBrain.DEFAULT_WEIGHTS.clone() : bestWeights.clone();
+	}
+	
+	/**
+	 Returns the mean score of the best weights found so far.
+	*/
+	public double getBestScore() {
+		return bestScore;
+	}
+	
+	/**
+	 Returns the total number of games played so far.
+	*/
+	public long getGamesPlayed() {
+		return gamesPlayed;
+	}
+	
+	/**
+	 * Plays games fromGame..toGame-1 for every live candidate, spreading
+	 * the games over the executor, and adds the scores to totals.
+	 */
+	private void playRound(double[][] candidates, boolean[] alive, long[] seeds,
+			int fromGame, int toGame, long[] totals, int[] played) throws InterruptedException {
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		List<Integer> owners = new ArrayList<Integer>();
+		for (int c = 0; c < candidates.length; c++) {
+			if (!alive[c]) continue;
+			final Brain brain = new WeightedBrain(candidates[c]);
+			for (int g = fromGame; g < toGame; g++) {
+				final long seed = seeds[g];
+				tasks.add(new Callable<Integer>() {
+					public Integer call() {
+						TetrisGame game = new TetrisGame(brain, new UniformGenerator(Piece.getPieces().length, seed));
+						return game.play(pieceLimit);
+					}
+				});
+				owners.add(c);
+			}
+		}
+		
+		List<Future<Integer>> results = executor.invokeAll(tasks);
+		for (int i = 0; i < results.size(); i++) {
+			int c = owners.get(i);
+			try {
+				totals[c] += results.get(i).get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("game failed", e.getCause());
+			}
+			played[c]++;
+		}
+		gamesPlayed += tasks.size();
+	}
+	
+	/**
+	 * Returns the mean score of the eliteCount-th best candidate so far.
+	 */
+	private double eliteCutoff(long[] totals, int[] played) {
+		double[] means = new double[totals.length];
+		for (int c = 0; c < totals.length; c++) {
+			means[c] = (double) totals[c] / played[c];
+		}
+		Arrays.sort(means);
+		return means[means.length - eliteCount];
+	}
+	
+	/**
+	 * Moves the mean and spread of the sampling distribution to
+	 * those of the elite candidates.
+	 * @param candidates this generation's weight vectors
+	 * @param order candidate indexes, best first
+	 */
+	private void refit(double[][] candidates, Integer[] order) {
+		for (int i = 0; i < mean.length; i++) {
+			double sum = 0;
+			for (int e = 0; e < eliteCount; e++) {
+				sum += candidates[order[e]][i];
+			}
+			double m = sum / eliteCount;
+			double var = 0;
+			for (int e = 0; e < eliteCount; e++) {
+				double d = candidates[order[e]][i] - m;
+				var += d * d;
+			}
+			mean[i] = m;
+			sigma[i] = Math.max(Math.sqrt(var / eliteCount), MIN_SIGMA);
+		}
+	}
+	
+	/**
+	 * Draws a weight vector from the current normal distribution.
+	 * Weights are kept non-negative, since every feature is a bad thing.
+	 */
+	private double[] sample() {
+		double[] weights = new double[mean.length];
+		for (int i = 0; i < mean.length; i++) {
+			weights[i] = Math.max(0, mean[i] + sigma[i] * gaussian());
+		}
+		return weights;
+	}
+	
+	// Box-Muller, one value per call
+	private double gaussian() {
+		double u = 1 - random.nextDouble();	// in (0, 1]
+		double v = random.nextDouble();
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+	}
+	
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String fileName = (args.length > 0) ? args[0] : "weights.properties";
+		int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		int threads = Runtime.getRuntime().availableProcessors();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			WeightOptimizer optimizer = new WeightOptimizer(executor, 0);
+			long start = System.nanoTime();
+			for (int gen = 1; gen <= generations; gen++) {
+				double score = optimizer.step();
+				double elapsed = (System.nanoTime() - start) / 1e9;
+				System.out.println(String.format("generation %d: best %.1f, overall best %.1f, %.1f games/sec on %d threads",
+					gen, score, optimizer.getBestScore(), optimizer.getGamesPlayed() / elapsed, threads));
+			}
+			
+			WeightedBrain brain = new WeightedBrain(optimizer.getBestWeights());
+			brain.save(fileName, "WeightOptimizer best, mean score " + optimizer.getBestScore());
+			System.out.println("wrote " + fileName + " " + Arrays.toString(brain.getWeights()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
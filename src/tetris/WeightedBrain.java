@@ -0,0 +1,147 @@
+// WeightedBrain.java
+package tetris;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ A DefaultBrain whose rateBoard() weights are parameters instead of
+ made up numbers. Rates a board as a weighted sum of its max height,
+ average height, holes and bumpiness (the sum of the height differences
+ between neighboring columns). With the default weights it plays
+ exactly like DefaultBrain.
+ 
+ <p>Weights can be saved to and loaded from a small properties file,
+ e.g. one written by WeightOptimizer:
+ <pre>
+ maxHeight=8.0
+ avgHeight=40.0
+ holes=1.25
+ bumpiness=0.0
+ </pre>
+*/
+public class WeightedBrain extends DefaultBrain {
+	// Indexes of the weights in the weights array
+	public static final int MAX_HEIGHT = 0;
+	public static final int AVG_HEIGHT = 1;
+	public static final int HOLES = 2;
+	public static final int BUMPINESS = 3;
+	public static final int WEIGHT_COUNT = 4;
+	
+	// The property names for the weights, in index order
+	public static final String[] WEIGHT_NAMES = {"maxHeight", "avgHeight", "holes", "bumpiness"};
+	
+	// DefaultBrain's weights
+	public static final double[] DEFAULT_WEIGHTS = {8, 40, 1.25, 0};
+	
+	private double[] weights;
+
+	/**
+	 Creates a brain with DefaultBrain's weights.
+	*/
+	public WeightedBrain() {
+		this(DEFAULT_WEIGHTS);
+	}
+	
+	/**
+	 Creates a brain with the given weights, indexed by MAX_HEIGHT etc.
+	 Makes its own copy of the array.
+	*/
+	public WeightedBrain(double[] weights) {
+		if (weights.length != WEIGHT_COUNT) {
+			throw new IllegalArgumentException("expected " + WEIGHT_COUNT + " weights");
+		}
+		this.weights = weights.clone();
+	}
+	
+	/**
+	 Returns a copy of this brain's weights.
+	*/
+	public double[] getWeights() {
+		return weights.clone();
+	}
+	
+	/**
+	 Rates the board like DefaultBrain, but with this brain's weights,
+	 plus bumpiness.
+	*/
+	public double rateBoard(Board board) {
+		final int width = board.getWidth();
+		final int maxHeight = board.getMaxHeight();
+		
+		int sumHeight = 0;
+		int holes = 0;
+		int bumpiness = 0;
+		int lastHeight = board.getColumnHeight(0);
+		
+		// Count the holes, and sum up the heights
+		for (int x=0; x<width; x++) {
+			final int colHeight = board.getColumnHeight(x);
+			sumHeight += colHeight;
+			bumpiness += Math.abs(colHeight - lastHeight);
+			lastHeight = colHeight;
+			
+			int y = colHeight - 2;	// addr of first possible hole
+			
+			while (y>=0) {
+				if  (!board.getGrid(x,y)) {
+					holes++;
+				}
+				y--;
+			}
+		}
+		
+		double avgHeight = ((double)sumHeight)/width;
+		
+		return (weights[MAX_HEIGHT]*maxHeight + weights[AVG_HEIGHT]*avgHeight
+			+ weights[HOLES]*holes + weights[BUMPINESS]*bumpiness);
+	}
+	
+	/**
+	 Loads a brain from a weights file. Weights missing from the
+	 file keep DefaultBrain's values.
+	*/
+	public static WeightedBrain load(String fileName) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(fileName);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		
+		double[] weights = DEFAULT_WEIGHTS.clone();
+		for (int i = 0; i < WEIGHT_COUNT; i++) {
+			String value = props.getProperty(WEIGHT_NAMES[i]);
+			if (value != null) {
+				try {
+					weights[i] = Double.parseDouble(value.trim());
+				}
+				catch (NumberFormatException e) {
+					throw new IOException("Bad weight for " + WEIGHT_NAMES[i] + ": " + value);
+				}
+			}
+		}
+		return new WeightedBrain(weights);
+	}
+	
+	/**
+	 Saves this brain's weights to a file that load() can read.
+	*/
+	public void save(String fileName, String comment) throws IOException {
+		Properties props = new Properties();
+		for (int i = 0; i < WEIGHT_COUNT; i++) {
+			props.setProperty(WEIGHT_NAMES[i], Double.toString(weights[i]));
+		}
+		OutputStream out = new FileOutputStream(fileName);
+		try {
+			props.store(out, comment);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package tetris;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.*;
+
+/*
+ Unit test for WeightedBrain and the headless TetrisGame it is tuned with.
+ */
+public class WeightedBrainTest {
+	
+	// With the default weights, a whole game matches DefaultBrain move for move.
+	@Test
+	public void testDefaultWeightsMatchDefaultBrain() {
+		TetrisGame a = new TetrisGame(new DefaultBrain(), new UniformGenerator(7, 5));
+		TetrisGame b = new TetrisGame(new WeightedBrain(), new UniformGenerator(7, 5));
+		while (a.getCount() < 300 && a.isGameOn()) {
+			assertEquals(a.step(), b.step());
+			assertEquals(a.getBoard().toString(), b.getBoard().toString());
+		}
+		assertEquals(a.getScore(), b.getScore());
+		assertEquals(a.getRowsCleared(), b.getRowsCleared());
+	}
+	
+	// Scoring follows JTetris: 1 per piece plus the row bonuses.
+	@Test
+	public void testScoring() {
+		assertEquals(0, TetrisGame.scoreForRows(0));
+		assertEquals(5, TetrisGame.scoreForRows(1));
+		assertEquals(40, TetrisGame.scoreForRows(4));
+		
+		// each row is worth 5 (singles) up to 10 (four at once)
+		TetrisGame game = new TetrisGame(new DefaultBrain(), new BagGenerator(7, 1));
+		game.play(200);
+		int bonus = game.getScore() - game.getCount();
+		assertTrue(game.getRowsCleared() > 0);
+		assertTrue(bonus >= 5 * game.getRowsCleared());
+		assertTrue(bonus <= 10 * game.getRowsCleared());
+	}
+	
+	// A bad brain loses quickly and the game stops.
+	@Test
+	public void testGameOver() {
+		TetrisGame game = new TetrisGame(new BadBrain(), new UniformGenerator(7, 2));
+		game.play(10000);
+		assertFalse(game.isGameOn());
+		assertFalse(game.step());
+		assertTrue(game.getCount() < 10000);
+	}
+	
+	// Weights survive a save and load.
+	@Test
+	public void testSaveLoad() throws Exception {
+		double[] weights = {1.5, 2.5, 3.5, 4.5};
+		File file = File.createTempFile("weights", ".properties");
+		try {
+			new WeightedBrain(weights).save(file.getPath(), "test");
+			double[] loaded = WeightedBrain.load(file.getPath()).getWeights();
+			for (int i = 0; i < weights.length; i++) {
+				assertEquals(weights[i], loaded[i], 0);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}